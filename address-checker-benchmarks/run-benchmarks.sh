@@ -0,0 +1,24 @@
+#!/usr/bin/env bash
+# Runs the JMH benchmarks against the in-process stub NZ Post server. JMH arguments are passed through, e.g.
+#   ./run-benchmarks.sh SuggestBenchmark -prof gc
+# The forked benchmark JVMs inherit these variables, and start the stub on the port of the URLs.
+set -euo pipefail
+
+STUB_PORT="${STUB_PORT:-18181}"
+export NZ_POST_ADDRESS_CHECKER_SUGGEST_API_URL="http://localhost:${STUB_PORT}/suggest"
+export NZ_POST_API_OAUTH_TOKEN_URL="http://localhost:${STUB_PORT}/oauth/token"
+export NZ_POST_API_CLIENT_ID="benchmark-client"
+export NZ_POST_API_CLIENT_SECRET="benchmark-secret"
+export PRIMING_MODE="${PRIMING_MODE:-off}"
+export LOG_LEVEL="${LOG_LEVEL:-warn}"
+export METRICS_EMF_ENABLED="${METRICS_EMF_ENABLED:-false}"
+# Measure the request path rather than the NZ Post rate limit and the background details prefetches
+export UPSTREAM_RATE_LIMIT_PER_SECOND="${UPSTREAM_RATE_LIMIT_PER_SECOND:-1000000}"
+export DETAILS_PREFETCH_DEPTH="${DETAILS_PREFETCH_DEPTH:-0}"
+
+cd "$(dirname "$0")"
+if [ ! -f target/benchmarks.jar ]; then
+    (cd ../address-checker-lambda && mvn -B -q install -DskipTests)
+    mvn -B -q package
+fi
+exec java -jar target/benchmarks.jar "$@"
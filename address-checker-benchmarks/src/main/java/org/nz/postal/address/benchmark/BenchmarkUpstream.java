@@ -0,0 +1,73 @@
+/*
+ * Copyright 2025 Samitha Chathuranga
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.nz.postal.address.benchmark;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import org.nz.postal.address.auth.TokenManager;
+import org.nz.postal.address.secrets.EnvironmentSecretsProvider;
+import org.nz.postal.address.upstream.StubUpstreamServer;
+
+/**
+ * Starts the {@link StubUpstreamServer} the benchmarks run against. The handler reads the NZ Post URLs and client
+ * credentials from the environment, which a forked benchmark JVM inherits but cannot change, so the stub is started on
+ * the port of the configured URLs. run-benchmarks.sh sets the environment.
+ */
+final class BenchmarkUpstream {
+    static final String SUGGEST_URL_ENV_VAR = "NZ_POST_ADDRESS_CHECKER_SUGGEST_API_URL";
+
+    private BenchmarkUpstream() {
+    }
+
+    static StubUpstreamServer start(long latencyMillis, int addressCount) throws IOException {
+        String suggestUrl = requireEnv(SUGGEST_URL_ENV_VAR);
+        String tokenUrl = requireEnv(TokenManager.NZ_POST_API_OAUTH_TOKEN_URL_ENV_VAR);
+        requireEnv(EnvironmentSecretsProvider.CLIENT_ID_ENV_VAR);
+        requireEnv(EnvironmentSecretsProvider.CLIENT_SECRET_ENV_VAR);
+
+        StubUpstreamServer stub = new StubUpstreamServer(URI.create(suggestUrl).getPort());
+        if (!stub.getSuggestUrl().equals(suggestUrl) || !stub.getTokenUrl().equals(tokenUrl)) {
+            stub.close();
+            throw new IllegalStateException("The NZ Post URLs must point to the stub at " + stub.getBaseUrl()
+                    + ". Run the benchmarks with run-benchmarks.sh");
+        }
+        stub.setLatencyMillis(latencyMillis).setAddressCount(addressCount);
+        return stub;
+    }
+
+    static APIGatewayProxyRequestEvent suggestRequest(String query, int max) {
+        Map<String, String> queryParams = new HashMap<>();
+        queryParams.put("q", query);
+        queryParams.put("max", String.valueOf(max));
+        APIGatewayProxyRequestEvent event = new APIGatewayProxyRequestEvent();
+        event.setHttpMethod("GET");
+        event.setQueryStringParameters(queryParams);
+        return event;
+    }
+
+    private static String requireEnv(String name) {
+        String value = System.getenv(name);
+        if (value == null || value.isEmpty()) {
+            throw new IllegalStateException(name + " is not set. Run the benchmarks with run-benchmarks.sh");
+        }
+        return value;
+    }
+}
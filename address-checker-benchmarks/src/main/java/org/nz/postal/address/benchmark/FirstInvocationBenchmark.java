@@ -0,0 +1,75 @@
+/*
+ * Copyright 2025 Samitha Chathuranga
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.nz.postal.address.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+import org.nz.postal.address.NZPostAddressCheckerLambda;
+import org.nz.postal.address.upstream.StubUpstreamServer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of the first invocation in a fresh JVM: loading and initializing the handler classes, loading the secrets,
+ * fetching the token, opening the upstream connection and serving the first request. Each fork measures one
+ * invocation, so the score is the average over the forks. Set PRIMING_MODE to compare the priming modes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@Fork(10)
+public class FirstInvocationBenchmark {
+
+    @Param({"0"})
+    public long latencyMillis;
+
+    @Param({"5"})
+    public int addressCount;
+
+    private StubUpstreamServer stub;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        // Only the stub is started here, the handler classes must not be loaded before the measurement
+        stub = BenchmarkUpstream.start(latencyMillis, addressCount);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        stub.close();
+    }
+
+    @Benchmark
+    public APIGatewayProxyResponseEvent firstInvocation() {
+        NZPostAddressCheckerLambda handler = new NZPostAddressCheckerLambda();
+        return handler.handleRequest(BenchmarkUpstream.suggestRequest("1 Queen Street", addressCount), null);
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2025 Samitha Chathuranga
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.nz.postal.address.benchmark;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+import org.nz.postal.address.NZPostAddressCheckerLambda;
+import org.nz.postal.address.upstream.StubUpstreamServer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Warm throughput of {@code handleRequest}, for requests which go all the way to the (stub) suggest API and for
+ * requests served from the suggestion cache. Run with {@code -prof gc} for the allocation rate per request
+ * ({@code gc.alloc.rate.norm}), and with {@code -t} for concurrent requests as in server mode.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class SuggestBenchmark {
+
+    @Param({"0", "20"})
+    public long latencyMillis;
+
+    @Param({"5", "50"})
+    public int addressCount;
+
+    private StubUpstreamServer stub;
+    private NZPostAddressCheckerLambda handler;
+    private APIGatewayProxyRequestEvent cachedRequest;
+    private final AtomicLong queries = new AtomicLong();
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        stub = BenchmarkUpstream.start(latencyMillis, addressCount);
+        handler = new NZPostAddressCheckerLambda();
+        cachedRequest = BenchmarkUpstream.suggestRequest("1 Queen Street", addressCount);
+        APIGatewayProxyResponseEvent response = handler.handleRequest(cachedRequest, null);
+        if (response.getStatusCode() != 200) {
+            throw new IllegalStateException("Stub request failed with " + response.getStatusCode() + ": "
+                    + response.getBody());
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        stub.close();
+    }
+
+    /**
+     * Every query is new, and max equals the number of stub addresses so results are never complete enough for prefix
+     * narrowing, so each request calls the suggest API.
+     */
+    @Benchmark
+    public APIGatewayProxyResponseEvent upstreamCall() {
+        String query = "Benchmark Road " + queries.incrementAndGet();
+        return handler.handleRequest(BenchmarkUpstream.suggestRequest(query, addressCount), null);
+    }
+
+    @Benchmark
+    public APIGatewayProxyResponseEvent cacheHit() {
+        return handler.handleRequest(cachedRequest, null);
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2025 Samitha Chathuranga
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.nz.postal.address.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.nz.postal.address.auth.TokenManager;
+import org.nz.postal.address.upstream.StubUpstreamServer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Token refresh path: every operation rejects the current token, as after a 401 from the suggest API, so the
+ * {@link TokenManager} fetches a new one from the (stub) token endpoint and reschedules its background refresh.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class TokenRefreshBenchmark {
+
+    @Param({"0", "20"})
+    public long latencyMillis;
+
+    private StubUpstreamServer stub;
+    private TokenManager tokenManager;
+    private String token;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        stub = BenchmarkUpstream.start(latencyMillis, 5);
+        tokenManager = TokenManager.fromEnvironment();
+        token = tokenManager.getToken();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        tokenManager.shutdown();
+        stub.close();
+    }
+
+    @Benchmark
+    public String refreshAfterRejection() throws Exception {
+        token = tokenManager.refreshAfterRejection(token);
+        return token;
+    }
+}
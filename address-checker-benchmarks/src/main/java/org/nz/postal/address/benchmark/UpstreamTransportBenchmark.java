@@ -0,0 +1,108 @@
+/*
+ * Copyright 2025 Samitha Chathuranga
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.nz.postal.address.benchmark;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.nz.postal.address.upstream.ApacheUpstreamTransport;
+import org.nz.postal.address.upstream.Http2UpstreamTransport;
+import org.nz.postal.address.upstream.StubUpstreamServer;
+import org.nz.postal.address.upstream.UpstreamConfig;
+import org.nz.postal.address.upstream.UpstreamResponse;
+import org.nz.postal.address.upstream.UpstreamTransport;
+
+/**
+ * Compares latency and throughput of the upstream transports against a local {@link StubUpstreamServer}. It is a
+ * plain main rather than a JMH benchmark, as it measures per request latency percentiles under concurrent load.
+ * Usage: {@code UpstreamTransportBenchmark [requests] [concurrency] [stubLatencyMillis] [addressCount]}
+ */
+public class UpstreamTransportBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int requests = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int concurrency = args.length > 1 ? Integer.parseInt(args[1]) : 16;
+        long latencyMillis = args.length > 2 ? Long.parseLong(args[2]) : 20;
+        int addressCount = args.length > 3 ? Integer.parseInt(args[3]) : 5;
+
+        try (StubUpstreamServer stub = new StubUpstreamServer()) {
+            stub.setLatencyMillis(latencyMillis).setAddressCount(addressCount);
+            URI suggestUri = URI.create(stub.getSuggestUrl() + "?q=1+Queen+St&max=5");
+            UpstreamConfig config = new UpstreamConfig()
+                    .setMaxConnTotal(concurrency)
+                    .setMaxConnPerRoute(concurrency)
+                    .setPrewarmUris(List.of(suggestUri));
+
+            try (CloseableHttpClient httpClient = ApacheUpstreamTransport.buildHttpClient(config)) {
+                run("apache (current)", new ApacheUpstreamTransport(() -> httpClient), suggestUri, requests,
+                        concurrency);
+            }
+            run("http2 (jdk)", new Http2UpstreamTransport(config), suggestUri, requests, concurrency);
+        }
+    }
+
+    private static void run(String name, UpstreamTransport transport, URI uri, int requests, int concurrency)
+            throws Exception {
+        transport.prewarm(List.of(uri));
+        // Warm up the JIT before measuring
+        measure(transport, uri, Math.min(requests, 200), concurrency);
+        long start = System.nanoTime();
+        List<Long> latencies = new ArrayList<>(measure(transport, uri, requests, concurrency));
+        double seconds = (System.nanoTime() - start) / 1e9;
+        Collections.sort(latencies);
+        System.out.printf("%-18s requests=%d concurrency=%d throughput=%.0f req/s p50=%.2f ms p99=%.2f ms%n", name,
+                requests, concurrency, requests / seconds, percentile(latencies, 0.50) / 1e6,
+                percentile(latencies, 0.99) / 1e6);
+        transport.close();
+    }
+
+    private static List<Long> measure(UpstreamTransport transport, URI uri, int requests, int concurrency)
+            throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(concurrency);
+        try {
+            List<Future<Long>> futures = new ArrayList<>(requests);
+            for (int i = 0; i < requests; i++) {
+                futures.add(executor.submit(() -> {
+                    long start = System.nanoTime();
+                    UpstreamResponse response = transport.get(uri, Map.of());
+                    if (response.getStatusCode() != 200) {
+                        throw new IllegalStateException("Unexpected status code " + response.getStatusCode());
+                    }
+                    return System.nanoTime() - start;
+                }));
+            }
+            List<Long> latencies = new ArrayList<>(requests);
+            for (Future<Long> future : futures) {
+                latencies.add(future.get());
+            }
+            return latencies;
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static long percentile(List<Long> sorted, double percentile) {
+        return sorted.get((int) Math.min(sorted.size() - 1, Math.ceil(percentile * sorted.size()) - 1));
+    }
+}
@@ -0,0 +1,200 @@
+/*
+ * Copyright 2025 Samitha Chathuranga
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.nz.postal.address;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeoutException;
+
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.databind.util.RawValue;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.nz.postal.address.exception.BadRequestException;
+import org.nz.postal.address.exception.UpstreamServerException;
+import org.nz.postal.address.upstream.Deadline;
+
+import static java.net.HttpURLConnection.*;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.nz.postal.address.Constants.HTTP_TOO_MANY_REQUESTS;
+
+/**
+ * Handles batch suggest requests, which carry many queries in one POST body to the {@code /batch} path, e.g.
+ * <pre>
+ * {"max": 5, "queries": ["1 Queen St", {"q": "12 Que", "max": 3}]}
+ * </pre>
+ * The queries are fanned out to the suggest API with bounded parallelism over the shared connection pool, and the
+ * results are returned in request order in one response, with an error recorded per failed item. All queries share
+ * the deadline of the request, and those without a result when it runs out are reported with a 504.
+ */
+class BatchSuggestHandler {
+    static final String BATCH_CONCURRENCY_ENV_VAR = "BATCH_SUGGEST_CONCURRENCY";
+    static final String BATCH_MAX_QUERIES_ENV_VAR = "BATCH_SUGGEST_MAX_QUERIES";
+    private static final int DEFAULT_CONCURRENCY = 8;
+    private static final int DEFAULT_MAX_QUERIES = 100;
+    private static final String QUERIES = "queries";
+    private static final String Q = "q";
+    private static final String MAX = "max";
+    private static final ObjectMapper mapper = new ObjectMapper();
+    private static final ObjectReader reader = mapper.reader();
+    private static final Logger log = LogManager.getLogger(BatchSuggestHandler.class);
+    private static final int maxQueries = (int) Utils.getEnvAsLong(BATCH_MAX_QUERIES_ENV_VAR, DEFAULT_MAX_QUERIES);
+    // Shared by all batches, so the total upstream concurrency stays within the HTTP client's per route limit
+    private static final ExecutorService executor = Executors.newFixedThreadPool(
+            (int) Utils.getEnvAsLong(BATCH_CONCURRENCY_ENV_VAR, DEFAULT_CONCURRENCY), runnable -> {
+                Thread thread = new Thread(runnable, "batch-suggest");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    private final NZPostAddressCheckerLambda handler;
+
+    BatchSuggestHandler(NZPostAddressCheckerLambda handler) {
+        this.handler = handler;
+    }
+
+    /**
+     * Runs all queries of the batch request body and returns their results in one response.
+     *
+     * @param body     the batch request body
+     * @param deadline the time budget of the request, shared by all queries
+     * @return response with a result or an error for each query
+     * @throws BadRequestException if the body is not a valid batch request
+     */
+    APIGatewayProxyResponseEvent handle(String body, Deadline deadline) throws BadRequestException {
+        ObjectNode response = mapper.createObjectNode();
+        ArrayNode results = response.putArray("results");
+        List<ObjectNode> items = parse(body);
+        List<Future<ObjectNode>> futures = submitAll(items, deadline);
+        for (int i = 0; i < items.size(); i++) {
+            Future<ObjectNode> result = futures.get(i);
+            try {
+                results.add(result.get(deadline.remainingMillis(), MILLISECONDS));
+            } catch (TimeoutException e) {
+                // Do not let a query still queued behind the concurrency limit call the upstream after the deadline
+                result.cancel(true);
+                results.add(timedOut(items.get(i).deepCopy()));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for batch results", e);
+            } catch (ExecutionException e) {
+                // suggestItem records its own errors, so this is not expected
+                throw new IllegalStateException(e.getCause());
+            }
+        }
+        return Utils.buildOkResponse(response.toString());
+    }
+
+    private List<Future<ObjectNode>> submitAll(List<ObjectNode> items, Deadline deadline) {
+        List<Future<ObjectNode>> results = new ArrayList<>(items.size());
+        for (ObjectNode item : items) {
+            results.add(executor.submit(() -> suggestItem(item, deadline)));
+        }
+        return results;
+    }
+
+    /**
+     * Runs one query of the batch. The result is written to a copy of the item, as the item itself is read to report
+     * the query as timed out if the deadline runs out while it is running.
+     */
+    private ObjectNode suggestItem(ObjectNode query, Deadline deadline) {
+        ObjectNode item = query.deepCopy();
+        if (deadline.isExpired()) {
+            return timedOut(item);
+        }
+        String q = item.get(Q).asText();
+        String max = item.get(MAX).asText();
+        try {
+            NZPostAddressCheckerLambda.SuggestResult result = handler.suggest(q, max, deadline);
+            item.put("status", HTTP_OK);
+            item.put("cache", result.cacheStatus);
+            item.putRawValue("result", new RawValue(result.body));
+        } catch (UpstreamServerException e) {
+            if (e.getStatusCode() == HTTP_GATEWAY_TIMEOUT) {
+                timedOut(item);
+            } else if (e.getStatusCode() == HTTP_TOO_MANY_REQUESTS) {
+                item.put("status", HTTP_TOO_MANY_REQUESTS);
+                item.put("error", "Too many requests to upstream services");
+            } else {
+                item.put("status", HTTP_BAD_GATEWAY);
+                item.put("error", "Error in upstream services");
+            }
+        } catch (BadRequestException e) {
+            item.put("status", HTTP_BAD_REQUEST);
+            item.put("error", e.getMessage());
+        } catch (Exception e) {
+            log.error("Error processing batch query '{}': {}", q, e.getMessage());
+            item.put("status", HTTP_INTERNAL_ERROR);
+            item.put("error", String.valueOf(e.getMessage()));
+        }
+        return item;
+    }
+
+    private static ObjectNode timedOut(ObjectNode item) {
+        item.put("status", HTTP_GATEWAY_TIMEOUT);
+        item.put("error", "Upstream services did not respond in time");
+        return item;
+    }
+
+    /**
+     * Parses the batch request body into one {"q", "max"} node per query.
+     */
+    private static List<ObjectNode> parse(String body) throws BadRequestException {
+        if (body == null || body.isBlank()) {
+            Utils.handleBadRequestError("Missing batch request body.", HTTP_BAD_REQUEST);
+        }
+        JsonNode root;
+        try {
+            root = reader.readTree(body);
+        } catch (Exception e) {
+            Utils.handleBadRequestError("Batch request body is not valid JSON.", HTTP_BAD_REQUEST);
+            return null;
+        }
+        JsonNode queries = root.get(QUERIES);
+        if (queries == null || !queries.isArray() || queries.isEmpty()) {
+            Utils.handleBadRequestError("Batch request must contain a non empty '" + QUERIES + "' array.",
+                    HTTP_BAD_REQUEST);
+        }
+        if (queries.size() > maxQueries) {
+            Utils.handleBadRequestError("Batch request can contain at most " + maxQueries + " queries.",
+                    HTTP_BAD_REQUEST);
+        }
+        String defaultMax = root.path(MAX).asText(NZPostAddressCheckerLambda.DEFAULT_MAX);
+        List<ObjectNode> items = new ArrayList<>(queries.size());
+        for (JsonNode query : queries) {
+            JsonNode q = query.isObject() ? query.get(Q) : query;
+            if (q == null || !q.isValueNode() || q.asText().isBlank()) {
+                Utils.handleBadRequestError("Each batch query must have a non empty '" + Q + "' value.",
+                        HTTP_BAD_REQUEST);
+            }
+            ObjectNode item = mapper.createObjectNode();
+            item.put(Q, q.asText());
+            item.put(MAX, query.path(MAX).asText(defaultMax));
+            items.add(item);
+        }
+        return items;
+    }
+}
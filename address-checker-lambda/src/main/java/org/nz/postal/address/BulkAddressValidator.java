@@ -0,0 +1,354 @@
+/*
+ * Copyright 2025 Samitha Chathuranga
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.nz.postal.address;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.databind.util.RawValue;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.nz.postal.address.exception.UpstreamServerException;
+import org.nz.postal.address.query.QueryNormalizer;
+
+import static java.net.HttpURLConnection.*;
+import static org.nz.postal.address.Constants.CACHE_MISS;
+
+/**
+ * Command line entry point which validates a large CSV (with a header row) or JSONL file of addresses against the NZ
+ * Post suggest API, reusing the handler's suggest call, token caching and secrets code.
+ * <ul>
+ *     <li>The input is streamed line by line and never loaded fully into memory.</li>
+ *     <li>Queries are normalized, and duplicates in flight share one upstream call, while earlier duplicates are served
+ *     from the suggestion cache. Each output line still carries the query of its own row.</li>
+ *     <li>Upstream calls are pipelined over a bounded window, so reading blocks when the upstream falls behind.</li>
+ *     <li>Results are written incrementally, in input order, as one JSON line per input row.</li>
+ *     <li>Progress is checkpointed next to the output file, so a crashed run resumes where it stopped.</li>
+ * </ul>
+ * Usage: {@code BulkAddressValidator <input.csv|input.jsonl> <output.jsonl> [column] [concurrency]}
+ */
+public class BulkAddressValidator {
+    private static final String DEFAULT_COLUMN = "address";
+    private static final int DEFAULT_CONCURRENCY = 8;
+    private static final int CHECKPOINT_INTERVAL = 1000;
+    private static final String CHECKPOINT_SUFFIX = ".checkpoint";
+    private static final String CHECKPOINT_LINE = "line";
+    private static final String CHECKPOINT_OFFSET = "offset";
+    private static final ObjectMapper mapper = new ObjectMapper();
+    private static final ObjectReader reader = mapper.reader();
+    private static final Logger log = LogManager.getLogger(BulkAddressValidator.class);
+    private static final QueryNormalizer queryNormalizer = QueryNormalizer.fromEnvironment();
+
+    private final NZPostAddressCheckerLambda handler;
+    private final int concurrency;
+    private final int checkpointInterval;
+
+    /**
+     * Counts of a validation run.
+     */
+    public static final class Summary {
+        private long rows;
+        private long upstreamCalls;
+        private long duplicates;
+        private long errors;
+
+        public long getRows() {
+            return rows;
+        }
+
+        public long getUpstreamCalls() {
+            return upstreamCalls;
+        }
+
+        public long getDuplicates() {
+            return duplicates;
+        }
+
+        public long getErrors() {
+            return errors;
+        }
+
+        @Override
+        public String toString() {
+            return "rows=" + rows + ", upstreamCalls=" + upstreamCalls + ", duplicates=" + duplicates
+                    + ", errors=" + errors;
+        }
+    }
+
+    private static final class PendingRow {
+        private final long line;
+        private final String query;
+        private final String key;
+        private final Future<ObjectNode> result;
+        private final boolean duplicate;
+
+        private PendingRow(long line, String query, String key, Future<ObjectNode> result, boolean duplicate) {
+            this.line = line;
+            this.query = query;
+            this.key = key;
+            this.result = result;
+            this.duplicate = duplicate;
+        }
+    }
+
+    public BulkAddressValidator(NZPostAddressCheckerLambda handler, int concurrency, int checkpointInterval) {
+        this.handler = handler;
+        this.concurrency = concurrency;
+        this.checkpointInterval = checkpointInterval;
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("Usage: BulkAddressValidator <input.csv|input.jsonl> <output.jsonl> [column] "
+                    + "[concurrency]");
+            System.exit(1);
+        }
+        String column = args.length > 2 ? args[2] : DEFAULT_COLUMN;
+        int concurrency = args.length > 3 ? Integer.parseInt(args[3]) : DEFAULT_CONCURRENCY;
+        BulkAddressValidator validator = new BulkAddressValidator(new NZPostAddressCheckerLambda(), concurrency,
+                CHECKPOINT_INTERVAL);
+        Summary summary = validator.run(Paths.get(args[0]), Paths.get(args[1]), column);
+        System.out.println("Bulk validation completed. " + summary);
+    }
+
+    /**
+     * Validates every row of the input file and writes the results to the output file, resuming from the checkpoint of
+     * an earlier run if there is one. The checkpoint is removed when the run completes.
+     *
+     * @param input  CSV file with a header row, or JSONL file (.jsonl/.json extension)
+     * @param output JSONL file to write the results to
+     * @param column CSV column or JSON field holding the address query
+     * @return counts of the rows processed in this run
+     * @throws IOException if the input cannot be read or the output cannot be written
+     */
+    public Summary run(Path input, Path output, String column) throws IOException {
+        boolean jsonLines = input.getFileName().toString().toLowerCase(Locale.ROOT).matches(".*\\.jsonl?$");
+        Path checkpoint = Paths.get(output + CHECKPOINT_SUFFIX);
+        Properties resumeFrom = readCheckpoint(checkpoint);
+        long resumeLine = Long.parseLong(resumeFrom.getProperty(CHECKPOINT_LINE, "0"));
+        long resumeOffset = Long.parseLong(resumeFrom.getProperty(CHECKPOINT_OFFSET, "0"));
+        if (resumeLine > 0) {
+            log.info("Resuming bulk validation of " + input + " after line " + resumeLine);
+        }
+
+        Summary summary = new Summary();
+        ExecutorService executor = Executors.newFixedThreadPool(concurrency);
+        try (BufferedReader reader = Files.newBufferedReader(input, StandardCharsets.UTF_8);
+             FileOutputStream outputStream = new FileOutputStream(output.toFile(), resumeLine > 0)) {
+            // Drop anything written after the last checkpoint, those rows are processed again
+            outputStream.getChannel().truncate(resumeOffset);
+            BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8));
+
+            int columnIndex = -1;
+            long lineNumber = 0;
+            if (!jsonLines) {
+                String header = reader.readLine();
+                lineNumber++;
+                columnIndex = header == null ? -1 : parseCsvLine(header).indexOf(column);
+                if (columnIndex < 0) {
+                    throw new IOException("Column '" + column + "' not found in the CSV header of " + input);
+                }
+            }
+
+            ArrayDeque<PendingRow> window = new ArrayDeque<>();
+            Map<String, Future<ObjectNode>> inFlight = new HashMap<>();
+            int maxInFlight = concurrency * 4;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (lineNumber <= resumeLine || line.isBlank()) {
+                    continue;
+                }
+                String query = jsonLines ? readJsonField(line, column) : readCsvField(line, columnIndex);
+                // Queries which normalize to the same canonical query share one upstream call
+                String key = queryNormalizer.normalizeQuery(query);
+                Future<ObjectNode> result = inFlight.get(key);
+                boolean duplicate = result != null;
+                if (duplicate) {
+                    summary.duplicates++;
+                } else {
+                    result = executor.submit(() -> validate(key));
+                    inFlight.put(key, result);
+                }
+                window.add(new PendingRow(lineNumber, query, key, result, duplicate));
+                // Backpressure: wait for the oldest row before reading further
+                while (window.size() >= maxInFlight) {
+                    writeOldest(window, inFlight, writer, outputStream, checkpoint, summary);
+                }
+            }
+            while (!window.isEmpty()) {
+                writeOldest(window, inFlight, writer, outputStream, checkpoint, summary);
+            }
+            writer.flush();
+        } finally {
+            executor.shutdownNow();
+        }
+        Files.deleteIfExists(checkpoint);
+        return summary;
+    }
+
+    private void writeOldest(ArrayDeque<PendingRow> window, Map<String, Future<ObjectNode>> inFlight,
+                             BufferedWriter writer, FileOutputStream outputStream, Path checkpoint, Summary summary)
+            throws IOException {
+        PendingRow row = window.poll();
+        ObjectNode result;
+        try {
+            result = row.result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for a validation result", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Validation of line " + row.line + " failed", e.getCause());
+        }
+        inFlight.remove(row.key, row.result);
+
+        // The result may be shared with duplicate rows, which each get their own query and line
+        ObjectNode outputLine = mapper.createObjectNode();
+        outputLine.put("q", row.query);
+        outputLine.setAll(result);
+        outputLine.put("line", row.line);
+        writer.write(outputLine.toString());
+        writer.newLine();
+
+        summary.rows++;
+        if (outputLine.get("status").asInt() != HTTP_OK) {
+            summary.errors++;
+        } else if (!row.duplicate && CACHE_MISS.equals(outputLine.path("cache").asText())) {
+            summary.upstreamCalls++;
+        }
+        if (summary.rows % checkpointInterval == 0) {
+            writer.flush();
+            writeCheckpoint(checkpoint, row.line, outputStream.getChannel().position());
+        }
+    }
+
+    private ObjectNode validate(String query) {
+        ObjectNode result = mapper.createObjectNode();
+        if (query.isEmpty()) {
+            result.put("status", HTTP_BAD_REQUEST);
+            result.put("error", "Empty or unreadable address");
+            return result;
+        }
+        try {
+            NZPostAddressCheckerLambda.SuggestResult suggestResult =
+                    handler.suggest(query, NZPostAddressCheckerLambda.DEFAULT_MAX);
+            result.put("status", HTTP_OK);
+            result.put("cache", suggestResult.cacheStatus);
+            result.putRawValue("result", new RawValue(suggestResult.body));
+        } catch (UpstreamServerException e) {
+            result.put("status", HTTP_BAD_GATEWAY);
+            result.put("error", "Error in upstream services");
+        } catch (Exception e) {
+            result.put("status", HTTP_INTERNAL_ERROR);
+            result.put("error", String.valueOf(e.getMessage()));
+        }
+        return result;
+    }
+
+    private static Properties readCheckpoint(Path checkpoint) throws IOException {
+        Properties properties = new Properties();
+        if (Files.exists(checkpoint)) {
+            try (BufferedReader reader = Files.newBufferedReader(checkpoint, StandardCharsets.UTF_8)) {
+                properties.load(reader);
+            }
+        }
+        return properties;
+    }
+
+    /**
+     * Writes the checkpoint to a temporary file first and moves it in place, so a crash never leaves a partial
+     * checkpoint behind.
+     */
+    private static void writeCheckpoint(Path checkpoint, long line, long offset) throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty(CHECKPOINT_LINE, String.valueOf(line));
+        properties.setProperty(CHECKPOINT_OFFSET, String.valueOf(offset));
+        Path temporary = Paths.get(checkpoint + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(temporary, StandardCharsets.UTF_8)) {
+            properties.store(writer, null);
+        }
+        Files.move(temporary, checkpoint, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static String readJsonField(String line, String field) {
+        try {
+            JsonNode value = reader.readTree(line).get(field);
+            return value == null ? "" : value.asText();
+        } catch (IOException e) {
+            return "";
+        }
+    }
+
+    private static String readCsvField(String line, int index) {
+        List<String> fields = parseCsvLine(line);
+        return index < fields.size() ? fields.get(index) : "";
+    }
+
+    /**
+     * Splits a CSV line into fields, supporting quoted fields with embedded commas and doubled quotes.
+     */
+    static List<String> parseCsvLine(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+}
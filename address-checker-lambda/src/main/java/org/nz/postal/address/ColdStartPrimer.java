@@ -0,0 +1,152 @@
+/*
+ * Copyright 2025 Samitha Chathuranga
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.nz.postal.address;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.crac.Context;
+import org.crac.Core;
+import org.crac.Resource;
+import org.nz.postal.address.cache.PrefixIndex;
+import org.nz.postal.address.upstream.UriTemplate;
+
+/**
+ * Moves the work a cold start would otherwise do on the first user request to the init phase of the function.
+ * The priming mode is read from the PRIMING_MODE environment variable:
+ * <ul>
+ *     <li>off - nothing is primed</li>
+ *     <li>local - the upstream transport is created, and Jackson/HttpClient classes are warmed with a synthetic suggest
+ *     request and response, without any network calls</li>
+ *     <li>full - local priming, plus loading the secrets, fetching the OAuth token and sending a synthetic suggest
+ *     request to the real NZ Post API. The request goes around the handler, so it is not cached and does not show up
+ *     in the metrics, but it is a real call on the NZ Post quota on every cold start, so it has to be opted into.</li>
+ * </ul>
+ * It defaults to local when running in Lambda and to off elsewhere.
+ * <p>
+ * The primer is also registered as a CRaC resource, so that with Lambda SnapStart the pooled connections are closed
+ * before the snapshot and pre-warmed again, along with a token validity check, after the restore.
+ */
+public class ColdStartPrimer implements Resource {
+    public static final String PRIMING_MODE_ENV_VAR = "PRIMING_MODE";
+    public static final String PRIMING_QUERY_ENV_VAR = "PRIMING_QUERY";
+    public static final String MODE_OFF = "off";
+    public static final String MODE_LOCAL = "local";
+    public static final String MODE_FULL = "full";
+    private static final String LAMBDA_FUNCTION_NAME_ENV_VAR = "AWS_LAMBDA_FUNCTION_NAME";
+    private static final String DEFAULT_PRIMING_QUERY = "1 Queen Street";
+    private static final String SYNTHETIC_SUGGEST_RESPONSE = "{\"success\":true,\"addresses\":["
+            + "{\"DPID\":0,\"FullAddress\":\"1 Queen Street, Auckland Central, Auckland 1010\"}],"
+            + "\"status\":\"success\"}";
+    private static final Logger log = LogManager.getLogger(ColdStartPrimer.class);
+
+    private final String mode;
+    private final AtomicBoolean primed = new AtomicBoolean();
+
+    public ColdStartPrimer(String mode) {
+        this.mode = mode;
+    }
+
+    /**
+     * Creates a primer with the mode configured in the environment and registers it for CRaC checkpoint/restore
+     * notifications.
+     *
+     * @return ColdStartPrimer instance
+     */
+    public static ColdStartPrimer fromEnvironment() {
+        String defaultMode = System.getenv(LAMBDA_FUNCTION_NAME_ENV_VAR) != null ? MODE_LOCAL : MODE_OFF;
+        String mode = System.getenv().getOrDefault(PRIMING_MODE_ENV_VAR, defaultMode).toLowerCase(Locale.ROOT);
+        ColdStartPrimer primer = new ColdStartPrimer(mode);
+        // CRaC keeps weak references to resources, the handler keeps the strong one
+        Core.getGlobalContext().register(primer);
+        return primer;
+    }
+
+    public String getMode() {
+        return mode;
+    }
+
+    /**
+     * Primes the function once per JVM. Priming failures are logged and do not fail the init phase, as the same work
+     * is retried lazily on the request path.
+     */
+    public void primeOnce() {
+        if (MODE_OFF.equals(mode) || !primed.compareAndSet(false, true)) {
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            primeLocal();
+            if (MODE_FULL.equals(mode)) {
+                primeUpstream();
+            }
+            log.info("Priming (" + mode + ") completed in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+        } catch (Exception e) {
+            log.warn("Priming (" + mode + ") failed after " + (System.nanoTime() - start) / 1_000_000 + " ms: "
+                    + e.getMessage());
+        }
+    }
+
+    /**
+     * Creates the HTTP client and warms the Jackson and URI classes used on the request path, without any network
+     * calls.
+     */
+    private static void primeLocal() throws Exception {
+        Utils.getUpstreamTransport();
+
+        new UriTemplate("https://localhost/suggest", "q", "max").expand(DEFAULT_PRIMING_QUERY, "5");
+
+        JsonNode response = new ObjectMapper().readTree(SYNTHETIC_SUGGEST_RESPONSE);
+        response.toString();
+
+        PrefixIndex prefixIndex = new PrefixIndex(1, 1000);
+        prefixIndex.record("1 Queen", "5", SYNTHETIC_SUGGEST_RESPONSE);
+        prefixIndex.narrow("1 Queen St", "5");
+    }
+
+    /**
+     * Loads the secrets, fetches the token and sends a synthetic suggest request to NZ Post, which also opens a pooled
+     * connection.
+     */
+    private static void primeUpstream() throws Exception {
+        Utils.loadSecrets();
+        NZPostAddressCheckerLambda.getTokenManager().getToken();
+
+        int statusCode = NZPostAddressCheckerLambda.sendPrimingRequest(
+                System.getenv().getOrDefault(PRIMING_QUERY_ENV_VAR, DEFAULT_PRIMING_QUERY));
+        log.debug("Synthetic priming request completed with status code: " + statusCode);
+    }
+
+    @Override
+    public void beforeCheckpoint(Context<? extends Resource> context) {
+        log.info("Closing pooled connections before checkpoint");
+        Utils.closeUpstreamConnections();
+        NZPostAddressCheckerLambda.getTieredCache().closeSharedConnections();
+    }
+
+    @Override
+    public void afterRestore(Context<? extends Resource> context) throws Exception {
+        long start = System.nanoTime();
+        Utils.getUpstreamTransport().prewarm(Utils.getUpstreamConfig().getPrewarmUris());
+        NZPostAddressCheckerLambda.getTokenManager().revalidate();
+        log.info("Restored from snapshot in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+    }
+}
@@ -20,5 +20,16 @@ public class Constants {
     public static final String APPLICATION_JSON = "application/json";
     public static final String CLIENT_CREDENTIALS = "client_credentials";
     public static final String ACCESS_CONTROL_ALLOW_ORIGIN = "Access-Control-Allow-Origin";
+    public static final String HTTP_METHOD_GET = "GET";
+    public static final String HTTP_METHOD_POST = "POST";
+    public static final int HTTP_TOO_MANY_REQUESTS = 429;
+    public static final String RETRY_AFTER = "Retry-After";
+    public static final String X_CACHE = "X-Cache";
+    public static final String CACHE_HIT = "HIT";
+    public static final String CACHE_SHARED_HIT = "SHARED_HIT";
+    public static final String CACHE_MISS = "MISS";
+    public static final String CACHE_NARROWED = "NARROWED";
+    public static final String CACHE_STALE = "STALE";
+    public static final String CACHE_LOCAL = "LOCAL";
     public static final String APPLICATION_X_WWW_FORM_URLENCODED = "application/x-www-form-urlencoded";
 }
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2025 Samitha Chathuranga
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.nz.postal.address;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+
+/**
+ * Measures time-to-first-response of the handler on a plain local JVM, simulating a Lambda cold start.
+ * Run it once per priming mode in a fresh JVM and compare the results, e.g.
+ * <pre>
+ * PRIMING_MODE=off  java -cp NZPostAddressCheckerLambda.jar org.nz.postal.address.FirstResponseTimer "1 Queen St"
+ * PRIMING_MODE=full java -cp NZPostAddressCheckerLambda.jar org.nz.postal.address.FirstResponseTimer "1 Queen St"
+ * </pre>
+ * The init time is the Lambda init phase (free with SnapStart or provisioned concurrency), while the first response
+ * time is what the first user waits for.
+ * <p>
+ * With {@code --await-upstream}, it first waits for the host of the configured suggest API URL to accept connections,
+ * for when the stub NZ Post server from the test sources has just been started next to it, so that startup can be
+ * measured offline and the run can be used as the training run of the AppCDS archive of the fast-startup build
+ * profile. See startup-benchmark.sh.
+ */
+public class FirstResponseTimer {
+    private static final String AWAIT_UPSTREAM_OPTION = "--await-upstream";
+    private static final long AWAIT_UPSTREAM_MILLIS = 30000;
+
+    public static void main(String[] args) throws Exception {
+        List<String> arguments = new ArrayList<>(Arrays.asList(args));
+        if (arguments.remove(AWAIT_UPSTREAM_OPTION)) {
+            awaitUpstream();
+        }
+        String query = arguments.isEmpty() ? "1 Queen Street" : arguments.get(0);
+        long initStart = System.nanoTime();
+        NZPostAddressCheckerLambda handler = new NZPostAddressCheckerLambda();
+        long initMillis = (System.nanoTime() - initStart) / 1_000_000;
+
+        Map<String, String> queryParams = new HashMap<>();
+        queryParams.put("q", query);
+        queryParams.put("max", "5");
+        APIGatewayProxyRequestEvent event = new APIGatewayProxyRequestEvent();
+        event.setQueryStringParameters(queryParams);
+
+        long requestStart = System.nanoTime();
+        APIGatewayProxyResponseEvent response = handler.handleRequest(event, null);
+        long firstResponseMillis = (System.nanoTime() - requestStart) / 1_000_000;
+
+        System.out.println("Priming mode: " + System.getenv().getOrDefault(ColdStartPrimer.PRIMING_MODE_ENV_VAR, "off")
+                + ", JVM uptime: " + ManagementFactory.getRuntimeMXBean().getUptime() + " ms"
+                + ", Init: " + initMillis + " ms"
+                + ", First response: " + firstResponseMillis + " ms"
+                + ", Loaded classes: " + ManagementFactory.getClassLoadingMXBean().getTotalLoadedClassCount()
+                + ", Status code: " + response.getStatusCode());
+    }
+
+    private static void awaitUpstream() throws InterruptedException {
+        String suggestUrl = System.getenv(NZPostAddressCheckerLambda.ADDRESS_SUGGEST_API_URL_ENV_VAR);
+        if (suggestUrl == null) {
+            throw new IllegalStateException(NZPostAddressCheckerLambda.ADDRESS_SUGGEST_API_URL_ENV_VAR
+                    + " must point to the upstream to wait for");
+        }
+        URI uri = URI.create(suggestUrl);
+        InetSocketAddress address = new InetSocketAddress(uri.getHost(), uri.getPort());
+        long giveUpAt = System.currentTimeMillis() + AWAIT_UPSTREAM_MILLIS;
+        while (true) {
+            try (Socket socket = new Socket()) {
+                socket.connect(address, 1000);
+                return;
+            } catch (IOException e) {
+                if (System.currentTimeMillis() > giveUpAt) {
+                    throw new IllegalStateException("No upstream listening on " + address, e);
+                }
+                Thread.sleep(100);
+            }
+        }
+    }
+}
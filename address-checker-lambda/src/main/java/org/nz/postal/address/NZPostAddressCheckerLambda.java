@@ -21,73 +21,188 @@ import com.amazonaws.services.lambda.runtime.RequestHandler;
 import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
 import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
 
+import java.lang.management.ManagementFactory;
+import java.net.URI;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
 
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import org.apache.http.client.methods.CloseableHttpResponse;
-import org.apache.http.client.methods.HttpPost;
-import org.apache.http.client.utils.URIBuilder;
-import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.util.EntityUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
-import org.apache.http.client.methods.HttpGet;
 import org.apache.http.HttpHeaders;
+import org.nz.postal.address.auth.TokenManager;
+import org.nz.postal.address.cache.PrefixIndex;
+import org.nz.postal.address.cache.SuggestionCache;
+import org.nz.postal.address.cache.TieredSuggestionCache;
+import org.nz.postal.address.details.AddressDetailsService;
 import org.nz.postal.address.exception.BadRequestException;
 import org.nz.postal.address.exception.UpstreamServerException;
+import org.nz.postal.address.metrics.MetricsRegistry;
+import org.nz.postal.address.query.QueryNormalizer;
+import org.nz.postal.address.response.ResponseCompressor;
+import org.nz.postal.address.response.SuggestResponseProjector;
+import org.nz.postal.address.upstream.CircuitBreaker;
+import org.nz.postal.address.upstream.Deadline;
+import org.nz.postal.address.upstream.HedgedCaller;
+import org.nz.postal.address.upstream.RateLimiter;
+import org.nz.postal.address.upstream.BodyReader;
+import org.nz.postal.address.upstream.UpstreamResponse;
+import org.nz.postal.address.upstream.UriTemplate;
 
 import static java.net.HttpURLConnection.*;
 import static org.nz.postal.address.Constants.*;
+import static org.nz.postal.address.metrics.MetricNames.*;
 
 /**
  * Lambda function to check NZ Post addresses using the NZ Post Address Checker API.
  * It retrieves an OAuth token and uses it to call the address suggestion API.
  */
-public class NZPostAddressCheckerLambda implements RequestHandler<APIGatewayProxyRequestEvent, APIGatewayProxyResponseEvent> {
-    private static final String ADDRESS_SUGGEST_API_URL_ENV_VAR = "NZ_POST_ADDRESS_CHECKER_SUGGEST_API_URL";
-    private static final String NZ_POST_API_OAUTH_TOKEN_URL_ENV_VAR = "NZ_POST_API_OAUTH_TOKEN_URL";
-    private static String cachedToken = null;
-    private static long tokenExpiry = 0;
+public class NZPostAddressCheckerLambda
+        implements RequestHandler<APIGatewayProxyRequestEvent, APIGatewayProxyResponseEvent> {
+    static final String ADDRESS_SUGGEST_API_URL_ENV_VAR = "NZ_POST_ADDRESS_CHECKER_SUGGEST_API_URL";
+    static final String ADDRESS_DETAILS_API_URL_ENV_VAR = "NZ_POST_ADDRESS_CHECKER_DETAILS_API_URL";
+    private static final TokenManager tokenManager = TokenManager.fromEnvironment();
+    private static final SuggestionCache suggestionCache = SuggestionCache.fromEnvironment();
+    private static final TieredSuggestionCache tieredCache = TieredSuggestionCache.fromEnvironment(suggestionCache);
+    private static final PrefixIndex prefixIndex = PrefixIndex.fromEnvironment();
+    private static final HedgedCaller hedgedCaller = HedgedCaller.fromEnvironment();
+    private static final CircuitBreaker circuitBreaker = CircuitBreaker.fromEnvironment("NZ Post");
+    private static final RateLimiter rateLimiter = RateLimiter.fromEnvironment();
+    private static final SuggestResponseProjector responseProjector = SuggestResponseProjector.fromEnvironment();
+    private static final ResponseCompressor responseCompressor = ResponseCompressor.fromEnvironment();
+    private static final QueryNormalizer queryNormalizer = QueryNormalizer.fromEnvironment();
+    private static final AddressDetailsService detailsService = AddressDetailsService.fromEnvironment(
+            NZPostAddressCheckerLambda::fetchDetails,
+            () -> circuitBreaker.getState() == CircuitBreaker.State.CLOSED && !rateLimiter.isThrottled());
     private static final Logger log = LogManager.getLogger(NZPostAddressCheckerLambda.class);
-    private CloseableHttpClient httpClient;
     private static final String QUERY_PARAM_Q = "q";
     private static final String QUERY_PARAM_MAX = "max";
+    private static final String QUERY_PARAM_DPID = "dpid";
+    private static final String DETAILS_PATH = "/details";
+    private static final String BATCH_PATH = "/batch";
+    static final String DEFAULT_MAX = QueryNormalizer.DEFAULT_MAX;
+    private static final String EMPTY_SUGGEST_RESPONSE = "{\"success\":true,\"addresses\":[],\"status\":\"success\"}";
+    private static final AtomicBoolean firstResponseSent = new AtomicBoolean();
+    private static final AtomicBoolean coldStart = new AtomicBoolean(true);
+    private static final MetricsRegistry metrics = Utils.getMetrics();
+    private static final ColdStartPrimer primer = ColdStartPrimer.fromEnvironment();
+    private static final UriTemplate suggestUri = new UriTemplate(System.getenv(ADDRESS_SUGGEST_API_URL_ENV_VAR),
+            QUERY_PARAM_Q, QUERY_PARAM_MAX);
+    private static final UriTemplate detailsUri = new UriTemplate(detailsApiUrl(), QUERY_PARAM_DPID);
+    // Responses, request headers and metric names are shared between requests, so the hot path does not rebuild them
+    private static final Map<String, Map<String, String>> responseHeaders = new ConcurrentHashMap<>();
+    private static final Map<String, String> cacheMetricNames = new ConcurrentHashMap<>();
+    private static final String[] statusMetricNames = new String[600];
+    private static volatile UpstreamHeaders upstreamHeaders;
+    private final BatchSuggestHandler batchSuggestHandler = new BatchSuggestHandler(this);
+
+    /**
+     * Suggest API response body together with the X-Cache status it was served with.
+     */
+    static final class SuggestResult {
+        final String body;
+        final String cacheStatus;
+
+        SuggestResult(String body, String cacheStatus) {
+            this.body = body;
+            this.cacheStatus = cacheStatus;
+        }
+    }
+
+    /**
+     * Request headers of the NZ Post API calls, reused while the token and client id stay the same.
+     */
+    private static final class UpstreamHeaders {
+        final String token;
+        final String clientId;
+        final Map<String, String> headers;
+
+        UpstreamHeaders(String token, String clientId) {
+            this.token = token;
+            this.clientId = clientId;
+            this.headers = Map.of(HttpHeaders.AUTHORIZATION, "Bearer " + token, "client_id", clientId,
+                    HttpHeaders.ACCEPT, APPLICATION_JSON);
+        }
+    }
+
+    public NZPostAddressCheckerLambda() {
+        primer.primeOnce();
+    }
 
     /**
      * Entry point for your AWS Lambda function which processes incoming API Gateway requests
      */
     @Override
     public APIGatewayProxyResponseEvent handleRequest(APIGatewayProxyRequestEvent event, Context context) {
+        long start = System.nanoTime();
+        metrics.increment(coldStart.getAndSet(false) ? COLD_STARTS : WARM_STARTS);
+        try {
+            return handle(event, context);
+        } finally {
+            metrics.recordTimeSince(REQUEST_TIME, start);
+            metrics.flush();
+        }
+    }
 
+    /**
+     * Handles a single or batch suggest request or an address details request, and maps errors to error responses.
+     * Batches are POSTed to the batch path, and everything else is a GET.
+     */
+    private APIGatewayProxyResponseEvent handle(APIGatewayProxyRequestEvent event, Context context) {
         APIGatewayProxyResponseEvent response = new APIGatewayProxyResponseEvent();
+        String acceptEncoding = Utils.getHeader(event.getHeaders(), ResponseCompressor.ACCEPT_ENCODING);
         try {
-            Map<String, String> queryParams = event.getQueryStringParameters();
-            if (queryParams == null || !queryParams.containsKey(QUERY_PARAM_Q)) {
-                Utils.handleBadRequestError("Missing " + QUERY_PARAM_Q + "query parameter.", HTTP_BAD_REQUEST);
+            boolean post = HTTP_METHOD_POST.equalsIgnoreCase(event.getHttpMethod());
+            if (event.getPath() != null && event.getPath().endsWith(BATCH_PATH)) {
+                if (!post) {
+                    return Utils.buildMethodNotAllowedResponse("Batch requests must be POSTed", HTTP_METHOD_POST);
+                }
+                return responseCompressor.compress(
+                        batchSuggestHandler.handle(event.getBody(), Deadline.forRequest(context)), acceptEncoding);
+            }
+            if (post) {
+                return Utils.buildMethodNotAllowedResponse("Only batch requests can be POSTed", HTTP_METHOD_GET);
             }
 
-            String query = queryParams.get(QUERY_PARAM_Q);
-            String max = queryParams.getOrDefault(QUERY_PARAM_MAX, "5");
+            Map<String, String> queryParams = event.getQueryStringParameters();
+            SuggestResult result;
+            if (event.getPath() != null && event.getPath().endsWith(DETAILS_PATH)) {
+                result = details(queryParams == null ? null : queryParams.get(QUERY_PARAM_DPID),
+                        Deadline.forRequest(context));
+            } else {
+                if (queryParams == null || !queryParams.containsKey(QUERY_PARAM_Q)) {
+                    Utils.handleBadRequestError("Missing " + QUERY_PARAM_Q + "query parameter.", HTTP_BAD_REQUEST);
+                }
 
-            if (log.isDebugEnabled()) {
-                log.debug("Received request to check NZ Post Address. Query: " + query + ", Max: " + max);
-            }
+                String query = queryParams.get(QUERY_PARAM_Q);
+                String max = queryParams.getOrDefault(QUERY_PARAM_MAX, DEFAULT_MAX);
 
-            // Get valid OAuth token
-            String token = getAuthToken();
-            // Call NZ Post suggest API
-            String apiResponse = callNZPostSuggestAPI(query, max, token);
-            log.trace("NZPostSuggest API response: " + apiResponse);
+                log.debug("Received request to check NZ Post Address. Query: {}, Max: {}", query, max);
+
+                result = suggest(query, max, Deadline.forRequest(context));
+                log.trace("NZPostSuggest API response: {}", result.body);
+                if (isNewToContainer(result.cacheStatus)) {
+                    // Fetch the details of the top suggestions before the user picks one
+                    detailsService.prefetch(result.body);
+                }
+            }
+            long buildStart = System.nanoTime();
             response.setStatusCode(HTTP_OK);
-            Map<String, String> headers = new HashMap<>();
-            headers.put(HttpHeaders.CONTENT_TYPE, APPLICATION_JSON);
-            //TODO: In production, change 'Access-Control-Allow-Origin' to the specific domain that the web app is hosted
-            headers.put(ACCESS_CONTROL_ALLOW_ORIGIN, "*");
-            response.setHeaders(headers);
-            response.setBody(apiResponse);
+            response.setHeaders(responseHeaders.computeIfAbsent(result.cacheStatus,
+                    NZPostAddressCheckerLambda::buildResponseHeaders));
+            response.setBody(result.body);
+            responseCompressor.compress(response, acceptEncoding);
+            metrics.recordTimeSince(RESPONSE_BUILD_TIME, buildStart);
+            logFirstResponse();
         } catch (UpstreamServerException e) {
+            if (e.getStatusCode() == HTTP_GATEWAY_TIMEOUT) {
+                return Utils.buildGatewayTimeoutResponse("Upstream services did not respond in time");
+            }
+            if (e.getStatusCode() == HTTP_TOO_MANY_REQUESTS) {
+                return Utils.buildTooManyRequestsResponse("Too many requests to upstream services",
+                        rateLimiter.getRetryAfterSeconds());
+            }
             return Utils.buildBadGatewayResponse("Error in upstream services");
         } catch (BadRequestException e) {
             return Utils.buildBadRequestResponse(e.getMessage());
@@ -98,85 +213,338 @@ public class NZPostAddressCheckerLambda implements RequestHandler<APIGatewayProx
     }
 
     /**
-     * Retrieves an OAuth token from the NZ Post API.
-     * Caches the token and its expiry time to avoid unnecessary requests.
+     * Returns the details of the address with the given DPID, from the details cache, where they are usually
+     * prefetched when the address was suggested, or from the NZ Post details API.
      *
-     * @return OAuth token as a String
-     * @throws Exception if there is an error fetching the token
+     * @param dpid DPID of the address
+     * @param deadline the time budget of the request
+     * @return the address details together with where they were served from
+     * @throws BadRequestException if the DPID is missing or not a number
+     * @throws Exception if there is an error calling the API
      */
-    private String getAuthToken() throws Exception {
-        long now = System.currentTimeMillis() / 1000;
+    SuggestResult details(String dpid, Deadline deadline) throws Exception {
+        if (dpid == null || dpid.isEmpty() || !dpid.chars().allMatch(Character::isDigit)) {
+            Utils.handleBadRequestError("Missing or invalid " + QUERY_PARAM_DPID + " query parameter.",
+                    HTTP_BAD_REQUEST);
+        }
+        String body = detailsService.getCached(dpid);
+        String cacheStatus = CACHE_HIT;
+        if (body == null) {
+            body = detailsService.fetch(dpid, deadline);
+            cacheStatus = CACHE_MISS;
+        }
+        log.debug("Address details {}. {}", cacheStatus, detailsService);
+        return new SuggestResult(body, cacheStatus);
+    }
+
+    SuggestResult suggest(String query, String max) throws Exception {
+        return suggest(query, max, Deadline.forRequest(null));
+    }
 
-        if (cachedToken != null && tokenExpiry > now) {
-            if (log.isDebugEnabled()) {
-                log.debug("Using cached token. This cached token expires at: " + tokenExpiry);
+    /**
+     * Returns address suggestions for the query, from the suggestion cache, from a cached shorter prefix or from the
+     * NZ Post suggest API, in that order. If the API cannot be called, because it failed or its circuit is open, the
+     * last known good response for the query is returned marked as stale, when there is one.
+     * The query and max are normalized first, and queries too short to be useful are answered locally with no
+     * suggestions.
+     *
+     * @param rawQuery the search query as typed
+     * @param rawMax   the maximum number of suggestions to return
+     * @param deadline the time budget for upstream calls
+     * @return the suggestions together with where they were served from
+     * @throws BadRequestException if max is not a number
+     * @throws Exception if there is an error calling the API
+     */
+    SuggestResult suggest(String rawQuery, String rawMax, Deadline deadline) throws Exception {
+        String query = queryNormalizer.normalizeQuery(rawQuery);
+        String max = queryNormalizer.normalizeMax(rawMax);
+        if (queryNormalizer.isTooShort(query)) {
+            metrics.increment(cacheMetricName(CACHE_LOCAL));
+            return new SuggestResult(EMPTY_SUGGEST_RESPONSE, CACHE_LOCAL);
+        }
+        TieredSuggestionCache.Hit hit = tieredCache.get(query, max);
+        String apiResponse = hit == null ? null : hit.getBody();
+        String cacheStatus = hit != null && hit.isShared() ? CACHE_SHARED_HIT : CACHE_HIT;
+        if (apiResponse == null) {
+            // Answer from a complete result of a shorter prefix, if one is available
+            apiResponse = prefixIndex.narrow(query, max);
+            cacheStatus = CACHE_NARROWED;
+        }
+        if (apiResponse == null && rateLimiter.isThrottled()) {
+            // Prefer the last known good response to queueing for the NZ Post rate limit
+            apiResponse = tieredCache.getStale(query, max);
+            cacheStatus = CACHE_STALE;
+        }
+        if (apiResponse == null) {
+            cacheStatus = CACHE_MISS;
+            try {
+                // Get valid OAuth token and call NZ Post suggest API
+                apiResponse = circuitBreaker.call(
+                        () -> callNZPostSuggestAPI(query, max, tokenManager.getToken(), deadline, true));
+                prefixIndex.record(query, max, apiResponse);
+            } catch (Exception e) {
+                apiResponse = tieredCache.getStale(query, max);
+                if (apiResponse == null) {
+                    throw e;
+                }
+                cacheStatus = CACHE_STALE;
+                if (circuitBreaker.getState() == CircuitBreaker.State.OPEN) {
+                    metrics.increment(STALE_WHILE_CIRCUIT_OPEN);
+                }
+                log.warn("Serving stale suggestions as the NZ Post suggest API is unavailable: {}", e.getMessage());
             }
-            return cachedToken;
         }
+        metrics.increment(cacheMetricName(cacheStatus));
+        if (CACHE_MISS.equals(cacheStatus) || CACHE_NARROWED.equals(cacheStatus)) {
+            tieredCache.put(query, max, apiResponse);
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("Suggestion cache " + cacheStatus + ". Cache stats: " + tieredCache
+                    + ", Upstream calls saved by prefix narrowing: " + prefixIndex.getSavedUpstreamCalls()
+                    + ", Hedges sent/won: " + hedgedCaller.getHedgesSent() + "/" + hedgedCaller.getHedgeWins()
+                    + ", Deadlines exceeded: " + hedgedCaller.getDeadlinesExceeded() + ", " + circuitBreaker
+                    + ", " + rateLimiter);
+        }
+        return new SuggestResult(apiResponse, cacheStatus);
+    }
 
-        String tokenEPurl = System.getenv(NZ_POST_API_OAUTH_TOKEN_URL_ENV_VAR);
-        httpClient = Utils.getHttpClient();
-
-        URIBuilder uriBuilder = new URIBuilder(tokenEPurl);
-        uriBuilder.addParameter("grant_type", CLIENT_CREDENTIALS);
-        uriBuilder.addParameter("client_id", Utils.getClientId());
-        uriBuilder.addParameter("client_secret", Utils.getClientSecret());
+    /**
+     * Logs the time from JVM start to the first successful response, once per JVM, so that the effect of priming on
+     * time-to-first-response can be compared.
+     */
+    private static void logFirstResponse() {
+        if (firstResponseSent.compareAndSet(false, true)) {
+            log.info("First response sent {} ms after JVM start. Priming mode: {}",
+                    ManagementFactory.getRuntimeMXBean().getUptime(), primer.getMode());
+        }
+    }
 
-        HttpPost getTokenHttpRequest = new HttpPost(uriBuilder.build());
-        getTokenHttpRequest.addHeader(HttpHeaders.CONTENT_TYPE, APPLICATION_X_WWW_FORM_URLENCODED);
+    /**
+     * Whether a response was not served from this container's suggestion cache, so the details of its suggestions
+     * have not been prefetched yet.
+     */
+    private static boolean isNewToContainer(String cacheStatus) {
+        return CACHE_MISS.equals(cacheStatus) || CACHE_SHARED_HIT.equals(cacheStatus)
+                || CACHE_NARROWED.equals(cacheStatus);
+    }
 
-        try (CloseableHttpResponse response = httpClient.execute(getTokenHttpRequest)) {
-            if (response.getStatusLine().getStatusCode() == HTTP_OK) {
-                String responseContent = EntityUtils.toString(response.getEntity());
-                ObjectMapper mapper = new ObjectMapper();
-                JsonNode jsonNode = mapper.readTree(responseContent);
+    private static Map<String, String> buildResponseHeaders(String cacheStatus) {
+        Map<String, String> headers = new HashMap<>();
+        headers.put(HttpHeaders.CONTENT_TYPE, APPLICATION_JSON);
+        //TODO: In production, change 'Access-Control-Allow-Origin' to the specific domain that the web app is hosted
+        headers.put(ACCESS_CONTROL_ALLOW_ORIGIN, "*");
+        headers.put(X_CACHE, cacheStatus);
+        if (responseCompressor.isEnabled()) {
+            headers.put(ResponseCompressor.VARY, ResponseCompressor.ACCEPT_ENCODING);
+        }
+        return Map.copyOf(headers);
+    }
 
-                String accessToken = jsonNode.get("access_token").asText();
-                String expiresInStr = jsonNode.get("expires_in").asText();
+    private static String cacheMetricName(String cacheStatus) {
+        return cacheMetricNames.computeIfAbsent(cacheStatus, status -> CACHE_PREFIX + status);
+    }
 
-                long expiresIn = Long.parseLong(expiresInStr);
-                cachedToken = accessToken;
-                tokenExpiry = now + expiresIn - 60; // refresh 1 min earlier
-                log.info("Fetched new token with expiry time " + tokenExpiry);
-            } else {
-                String errorMessage = "Error fetching access token. " +
-                        response.getStatusLine().getReasonPhrase();
-                Utils.handleUpstreamServerError(errorMessage, response.getStatusLine().getStatusCode());
-            }
+    private static String statusMetricName(int statusCode) {
+        if (statusCode < 0 || statusCode >= statusMetricNames.length) {
+            return UPSTREAM_STATUS_PREFIX + statusCode;
         }
-        return cachedToken;
+        String name = statusMetricNames[statusCode];
+        if (name == null) {
+            name = UPSTREAM_STATUS_PREFIX + statusCode;
+            statusMetricNames[statusCode] = name;
+        }
+        return name;
+    }
+
+    /**
+     * Returns the container wide token manager.
+     *
+     * @return TokenManager instance
+     */
+    static TokenManager getTokenManager() {
+        return tokenManager;
+    }
+
+    /**
+     * Returns the container wide hedged caller, so that its deadline and hedge counters can be inspected.
+     *
+     * @return HedgedCaller instance
+     */
+    public static HedgedCaller getHedgedCaller() {
+        return hedgedCaller;
+    }
+
+    /**
+     * Returns the container wide circuit breaker of the NZ Post API, so that its state can be inspected.
+     *
+     * @return CircuitBreaker instance
+     */
+    public static CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    /**
+     * Returns the container wide rate limiter of the NZ Post API, so that its state can be inspected.
+     *
+     * @return RateLimiter instance
+     */
+    public static RateLimiter getRateLimiter() {
+        return rateLimiter;
+    }
+
+    /**
+     * Returns the container wide suggestion cache, so that its hit/miss/eviction counters can be inspected.
+     *
+     * @return SuggestionCache instance
+     */
+    public static SuggestionCache getSuggestionCache() {
+        return suggestionCache;
+    }
+
+    /**
+     * Returns the container wide two level suggestion cache, so that its shared cache counters can be inspected.
+     *
+     * @return TieredSuggestionCache instance
+     */
+    public static TieredSuggestionCache getTieredCache() {
+        return tieredCache;
+    }
+
+    /**
+     * Returns the container wide address details service, so that its prefetch counters can be inspected.
+     *
+     * @return AddressDetailsService instance
+     */
+    public static AddressDetailsService getDetailsService() {
+        return detailsService;
+    }
+
+    /**
+     * Returns the container wide prefix index, so that the number of upstream calls it saved can be inspected.
+     *
+     * @return PrefixIndex instance
+     */
+    public static PrefixIndex getPrefixIndex() {
+        return prefixIndex;
     }
 
     /**
      * Calls the NZ Post Address Checker Suggest API with the provided query and max value.
      *
-     * @param queryValue The search query for address suggestions
-     * @param maxValue   The maximum number of suggestions to return
-     * @param token      The OAuth token for authentication
+     * @param queryValue           The search query for address suggestions
+     * @param maxValue             The maximum number of suggestions to return
+     * @param token                The OAuth token for authentication
+     * @param deadline             The time budget for the call, slow attempts are hedged within it
+     * @param retryOnUnauthorized  Whether to refresh the token and retry once if the token is rejected
      * @return JSON response from the NZ-Post-Suggest API
      * @throws Exception if there is an error calling the API
      */
-    private String callNZPostSuggestAPI(String queryValue, String maxValue, String token) throws Exception {
-        String nzPostAddressCheckerSuggestApiUrl = System.getenv(ADDRESS_SUGGEST_API_URL_ENV_VAR);
-        URIBuilder uriBuilder = new URIBuilder(nzPostAddressCheckerSuggestApiUrl);
-        uriBuilder.addParameter(QUERY_PARAM_Q, queryValue);
-        uriBuilder.addParameter(QUERY_PARAM_MAX, maxValue);
-
-        HttpGet nzPostSuggestAPIRequest = new HttpGet(uriBuilder.build());
-        nzPostSuggestAPIRequest.addHeader(HttpHeaders.AUTHORIZATION, "Bearer " + token);
-        nzPostSuggestAPIRequest.addHeader("client_id", Utils.getClientId());
-        nzPostSuggestAPIRequest.addHeader(HttpHeaders.ACCEPT, APPLICATION_JSON);
-
-        try (CloseableHttpResponse response = httpClient.execute(nzPostSuggestAPIRequest)) {
-            if (response.getStatusLine().getStatusCode() == HTTP_OK) {
-                log.debug("NZPostSuggest API returned success response. status code: " + HTTP_OK);
-                return EntityUtils.toString(response.getEntity());
-            } else {
-                String errorMessage = "Error occurred while calling NZPostSuggest API: " +
-                        response.getStatusLine().getReasonPhrase();
-                Utils.handleUpstreamServerError(errorMessage, response.getStatusLine().getStatusCode());
-            }
+    private String callNZPostSuggestAPI(String queryValue, String maxValue, String token, Deadline deadline,
+                                        boolean retryOnUnauthorized) throws Exception {
+        // Project the response down to the fields the web app uses while it is read from the connection
+        return callNZPostAPI(suggestUri.expand(queryValue, maxValue), responseProjector, UPSTREAM_SUGGEST_TIME, token,
+                deadline, retryOnUnauthorized);
+    }
+
+    /**
+     * Sends a suggest request straight to NZ Post, around the caches, metrics, rate limit and circuit breaker, so that
+     * priming opens a pooled connection and warms the upstream path without being counted as user traffic.
+     *
+     * @param query the synthetic query
+     * @return status code of the response
+     * @throws Exception if there is an error calling the API
+     */
+    static int sendPrimingRequest(String query) throws Exception {
+        URI uri = suggestUri.expand(queryNormalizer.normalizeQuery(query), DEFAULT_MAX);
+        return Utils.getUpstreamTransport().get(uri, upstreamHeaders(tokenManager.getToken()), responseProjector)
+                .getStatusCode();
+    }
+
+    /**
+     * Fetches the details of an address from the NZ Post Address Checker Details API, through the circuit breaker.
+     *
+     * @param dpid     DPID of the address
+     * @param deadline The time budget for the call
+     * @return JSON response from the NZ-Post-Details API
+     * @throws Exception if there is an error calling the API
+     */
+    private static String fetchDetails(String dpid, Deadline deadline) throws Exception {
+        URI uri = detailsUri.expand(dpid);
+        return circuitBreaker.call(() -> callNZPostAPI(uri, BodyReader.STRING, UPSTREAM_DETAILS_TIME,
+                tokenManager.getToken(), deadline, true));
+    }
+
+    /**
+     * Returns the URL of the NZ Post Address Checker Details API, which defaults to the suggest API URL with /suggest
+     * replaced by /details.
+     */
+    private static String detailsApiUrl() {
+        String detailsApiUrl = System.getenv(ADDRESS_DETAILS_API_URL_ENV_VAR);
+        String suggestApiUrl = System.getenv(ADDRESS_SUGGEST_API_URL_ENV_VAR);
+        if (detailsApiUrl == null && suggestApiUrl != null) {
+            detailsApiUrl = suggestApiUrl.replaceFirst("/suggest$", DETAILS_PATH);
+        }
+        return detailsApiUrl;
+    }
+
+    /**
+     * Returns the request headers for an NZ Post API call with the given token.
+     */
+    private static Map<String, String> upstreamHeaders(String token) throws Exception {
+        String clientId = Utils.getClientId();
+        UpstreamHeaders cached = upstreamHeaders;
+        if (cached == null || !cached.token.equals(token) || !cached.clientId.equals(clientId)) {
+            cached = new UpstreamHeaders(token, clientId);
+            upstreamHeaders = cached;
+        }
+        return cached.headers;
+    }
+
+    /**
+     * Calls an NZ Post Address Checker API resource, within the rate limit and with slow attempts hedged.
+     * If the API rejects the token with 401, the token is refreshed and the call is retried once.
+     *
+     * @param uri                  The resource URI, with its query parameters
+     * @param bodyReader           Reads the body of a successful response
+     * @param timeMetric           Name of the timer the call duration is recorded with
+     * @param token                The OAuth token for authentication
+     * @param deadline             The time budget for the call, slow attempts are hedged within it
+     * @param retryOnUnauthorized  Whether to refresh the token and retry once if the token is rejected
+     * @return JSON response body
+     * @throws Exception if there is an error calling the API
+     */
+    private static String callNZPostAPI(URI uri, BodyReader bodyReader, String timeMetric, String token,
+                                        Deadline deadline, boolean retryOnUnauthorized) throws Exception {
+        Map<String, String> headers = upstreamHeaders(token);
+
+        rateLimiter.acquire(deadline);
+        long start = System.nanoTime();
+        UpstreamResponse response;
+        try {
+            // A hedge is one more call to NZ Post, so it needs its own rate limit token
+            response = hedgedCaller.call(abort -> Utils.getUpstreamTransport().get(uri, headers, bodyReader, abort),
+                    deadline, rateLimiter::tryAcquire);
+        } catch (Exception e) {
+            metrics.increment(UPSTREAM_ERRORS);
+            throw e;
+        }
+        metrics.recordTimeSince(timeMetric, start);
+        int statusCode = response.getStatusCode();
+        metrics.increment(statusMetricName(statusCode));
+        if (statusCode == HTTP_OK) {
+            log.debug("NZ Post API {} returned success response", uri.getRawPath());
+            return response.getBody();
+        }
+        if (statusCode == HTTP_TOO_MANY_REQUESTS) {
+            rateLimiter.onThrottled(response.getHeader(RETRY_AFTER));
+        }
+        if (statusCode != HTTP_UNAUTHORIZED || !retryOnUnauthorized) {
+            String errorMessage = "Error occurred while calling NZ Post API " + uri.getPath() + ": "
+                    + response.getReasonPhrase();
+            Utils.handleUpstreamServerError(errorMessage, statusCode);
         }
-        return null;
+        // Token was rejected. Retry once with a fresh token
+        return callNZPostAPI(uri, bodyReader, timeMetric, tokenManager.refreshAfterRejection(token), deadline,
+                false);
     }
 }
@@ -21,66 +21,85 @@ import java.util.HashMap;
 import java.util.Map;
 
 import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
-import com.fasterxml.jackson.core.JsonParseException;
-import com.fasterxml.jackson.databind.JsonMappingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.nz.postal.address.exception.BadRequestException;
 import org.nz.postal.address.exception.UpstreamServerException;
-import software.amazon.awssdk.regions.Region;
-import software.amazon.awssdk.services.secretsmanager.SecretsManagerClient;
-import software.amazon.awssdk.services.secretsmanager.model.GetSecretValueRequest;
-import software.amazon.awssdk.services.secretsmanager.model.GetSecretValueResponse;
+import org.nz.postal.address.metrics.MetricsRegistry;
+import org.nz.postal.address.secrets.SecretsCache;
+import org.nz.postal.address.secrets.SecretsProvider;
+import org.apache.http.HttpHeaders;
 import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClients;
+import org.nz.postal.address.upstream.ApacheUpstreamTransport;
+import org.nz.postal.address.upstream.Http2UpstreamTransport;
+import org.nz.postal.address.upstream.UpstreamConfig;
+import org.nz.postal.address.upstream.UpstreamTransport;
 
 import static java.net.HttpURLConnection.*;
 import static org.nz.postal.address.Constants.ACCESS_CONTROL_ALLOW_ORIGIN;
+import static org.nz.postal.address.Constants.APPLICATION_JSON;
+import static org.nz.postal.address.Constants.HTTP_TOO_MANY_REQUESTS;
+import static org.nz.postal.address.Constants.RETRY_AFTER;
 
 /**
- * Utility class for managing AWS Secrets Manager secrets and HTTP client configurations.
+ * Utility class for accessing the NZ Post API client credentials and managing HTTP client configurations.
  */
 public class Utils {
-    private static Map<String, String> cachedSecrets;
-    private static CloseableHttpClient httpClient;
     private static final Logger log = LogManager.getLogger(Utils.class);
+    private static final MetricsRegistry metrics = MetricsRegistry.fromEnvironment();
+    private static volatile SecretsCache secretsCache;
+    private static volatile CloseableHttpClient httpClient;
+    private static final UpstreamConfig upstreamConfig = UpstreamConfig.fromEnvironment();
+    private static volatile UpstreamTransport upstreamTransport;
+    //TODO: change 'Access-Control-Allow-Origin' to specific domain in production
+    private static final Map<String, String> OK_RESPONSE_HEADERS = Map.of(HttpHeaders.CONTENT_TYPE, APPLICATION_JSON,
+            ACCESS_CONTROL_ALLOW_ORIGIN, "*");
+    private static final Map<String, String> ERROR_RESPONSE_HEADERS = Map.of(ACCESS_CONTROL_ALLOW_ORIGIN, "*");
 
     /**
-     * Loads secrets (client_id and client_secret related to NZ Post AddressChecker API invocation) from AWS Secrets
-     * Manager and caches them.
+     * Loads the secrets (client_id and client_secret related to NZ Post AddressChecker API invocation) if they have not
+     * been loaded yet, or their TTL has passed.
      *
      * @throws Exception if there is an error retrieving or parsing the secret
      */
     public static void loadSecrets() throws Exception {
-        if (cachedSecrets != null) {
-            log.debug("Secrets are already available in cache");
-            return; // Secrets already loaded
-        }
-        String secretName = System.getenv("NZ_POST_API_CLIENT_SECRET_NAME");
-        Region region = Region.of(System.getenv("AWS_REGION"));
-
-        // Create a Secrets Manager client
-        try (SecretsManagerClient client = SecretsManagerClient.builder()
-                .region(region)
-                .build()) {
-            GetSecretValueRequest getSecretValueRequest = GetSecretValueRequest.builder()
-                    .secretId(secretName)
-                    .build();
-            GetSecretValueResponse getSecretValueResponse = client.getSecretValue(getSecretValueRequest);
-            String secretString = getSecretValueResponse.secretString();
-            log.debug("Retrieved secret values related to NZ Post AddressChecker API invocation");
-            ObjectMapper mapper = new ObjectMapper();
-            cachedSecrets = mapper.readValue(secretString, Map.class);
-        } catch (JsonMappingException e) {
-            log.error("Error mapping secret JSON to Map: " + e.getMessage());
-            throw e;
-        } catch (JsonParseException e) {
-            throw e;
-        } catch (IOException e) {
-            log.error("Error parsing JSON to Map: " + e.getMessage());
-            throw e;
+        getSecretsCache().get();
+    }
+
+    /**
+     * Fetches the secrets again immediately, e.g. after the token endpoint rejected the client credentials.
+     *
+     * @return true if the client credentials changed
+     * @throws Exception if there is an error retrieving or parsing the secret
+     */
+    public static boolean refreshSecrets() throws Exception {
+        return getSecretsCache().refresh();
+    }
+
+    /**
+     * Returns the container wide secrets cache, creating it with the provider configured in the environment on first
+     * use.
+     *
+     * @return SecretsCache instance
+     */
+    public static SecretsCache getSecretsCache() {
+        if (secretsCache == null) {
+            synchronized (Utils.class) {
+                if (secretsCache == null) {
+                    secretsCache = SecretsCache.fromEnvironment();
+                }
+            }
         }
+        return secretsCache;
+    }
+
+    /**
+     * Returns the container wide metrics registry.
+     *
+     * @return MetricsRegistry instance
+     */
+    public static MetricsRegistry getMetrics() {
+        return metrics;
     }
 
     /**
@@ -90,8 +109,7 @@ public class Utils {
      * @throws Exception if secrets are not loaded or if there is an error retrieving the client ID
      */
     public static String getClientId() throws Exception {
-        loadSecrets();
-        return cachedSecrets.get("client_id");
+        return getSecretsCache().get(SecretsProvider.CLIENT_ID);
     }
 
     /**
@@ -101,33 +119,102 @@ public class Utils {
      * @throws Exception if secrets are not loaded or if there is an error retrieving the client secret
      */
     public static String getClientSecret() throws Exception {
-        loadSecrets();
-        return cachedSecrets.get("client_secret");
+        return getSecretsCache().get(SecretsProvider.CLIENT_SECRET);
     }
 
     /**
-     * Sets the HTTP client with custom configurations.
+     * Sets the HTTP client with the connection, timeout and pool settings of the upstream configuration.
      */
-    public static void setHttpClient() {
-        httpClient = HttpClients.custom()
-                .setMaxConnTotal(100)
-                .setMaxConnPerRoute(10)
-                .build();
+    public static synchronized void setHttpClient() {
+        httpClient = ApacheUpstreamTransport.buildHttpClient(upstreamConfig);
         log.debug("New HTTP client initialized with custom configurations.");
     }
 
+    /**
+     * Closes the HTTP client, the upstream transport and their pooled connections. New ones are created on next use.
+     * Used before a snapshot is taken, as pooled connections do not survive a restore.
+     */
+    public static synchronized void closeUpstreamConnections() {
+        try {
+            if (upstreamTransport != null) {
+                upstreamTransport.close();
+            }
+            if (httpClient != null) {
+                httpClient.close();
+            }
+        } catch (IOException e) {
+            log.warn("Error closing upstream connections: " + e.getMessage());
+        }
+        upstreamTransport = null;
+        httpClient = null;
+        log.debug("Upstream connections closed.");
+    }
+
     /**
      * Returns the HTTP client.
      *
      * @return CloseableHttpClient instance
      */
     public static CloseableHttpClient getHttpClient() {
-        if (httpClient == null) {
-            setHttpClient();
+        CloseableHttpClient client = httpClient;
+        if (client == null) {
+            synchronized (Utils.class) {
+                if (httpClient == null) {
+                    setHttpClient();
+                }
+                client = httpClient;
+            }
         } else {
             log.debug("Using existing HTTP client instance.");
         }
-        return httpClient;
+        return client;
+    }
+
+    /**
+     * Returns the transport used to call the NZ Post APIs, selected with the UPSTREAM_TRANSPORT environment variable.
+     * The default "apache" transport sends requests with the pooled client of {@link #getHttpClient()}, while
+     * "http2" uses the non-blocking HTTP/2 capable JDK client.
+     *
+     * @return UpstreamTransport instance
+     */
+    public static UpstreamTransport getUpstreamTransport() {
+        UpstreamTransport transport = upstreamTransport;
+        if (transport == null) {
+            synchronized (Utils.class) {
+                if (upstreamTransport == null) {
+                    upstreamTransport = UpstreamConfig.TRANSPORT_HTTP2.equals(upstreamConfig.getTransport())
+                            ? new Http2UpstreamTransport(upstreamConfig)
+                            : new ApacheUpstreamTransport(Utils::getHttpClient);
+                    log.debug("Upstream transport initialized: " + upstreamConfig.getTransport());
+                }
+                transport = upstreamTransport;
+            }
+        }
+        return transport;
+    }
+
+    public static UpstreamConfig getUpstreamConfig() {
+        return upstreamConfig;
+    }
+
+    /**
+     * Reads a numeric environment variable, falling back to the given default when it is unset or invalid.
+     *
+     * @param name         name of the environment variable
+     * @param defaultValue value to use when the variable is unset or not a number
+     * @return the configured value or the default
+     */
+    public static long getEnvAsLong(String name, long defaultValue) {
+        String value = System.getenv(name);
+        if (value == null || value.isBlank()) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            log.warn("Invalid value for " + name + ": " + value + ". Using default: " + defaultValue);
+            return defaultValue;
+        }
     }
 
     public static void handleUpstreamServerError(String errorMessage, int statusCode) {
@@ -140,10 +227,59 @@ public class Utils {
         throw new BadRequestException(errorMessage, statusCode);
     }
 
+    /**
+     * Returns the value of a request header, matching its name case insensitively as HTTP header names are.
+     *
+     * @param headers request headers, may be null
+     * @param name    header name
+     * @return header value or null
+     */
+    public static String getHeader(Map<String, String> headers, String name) {
+        if (headers == null) {
+            return null;
+        }
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            if (name.equalsIgnoreCase(header.getKey())) {
+                return header.getValue();
+            }
+        }
+        return null;
+    }
+
+    public static APIGatewayProxyResponseEvent buildOkResponse(String body) {
+        APIGatewayProxyResponseEvent response = new APIGatewayProxyResponseEvent();
+        response.setStatusCode(HTTP_OK);
+        response.setHeaders(OK_RESPONSE_HEADERS);
+        response.setBody(body);
+        return response;
+    }
+
     public static APIGatewayProxyResponseEvent buildBadGatewayResponse(String errorDescription) {
         return createErrorResponse(HTTP_BAD_GATEWAY, errorDescription);
     }
 
+    public static APIGatewayProxyResponseEvent buildGatewayTimeoutResponse(String errorDescription) {
+        return createErrorResponse(HTTP_GATEWAY_TIMEOUT, errorDescription);
+    }
+
+    public static APIGatewayProxyResponseEvent buildTooManyRequestsResponse(String errorDescription,
+                                                                            long retryAfterSeconds) {
+        APIGatewayProxyResponseEvent response = createErrorResponse(HTTP_TOO_MANY_REQUESTS, errorDescription);
+        Map<String, String> headers = new HashMap<>(ERROR_RESPONSE_HEADERS);
+        headers.put(RETRY_AFTER, String.valueOf(retryAfterSeconds));
+        response.setHeaders(headers);
+        return response;
+    }
+
+    public static APIGatewayProxyResponseEvent buildMethodNotAllowedResponse(String errorDescription,
+                                                                             String allowedMethod) {
+        APIGatewayProxyResponseEvent response = createErrorResponse(HTTP_BAD_METHOD, errorDescription);
+        Map<String, String> headers = new HashMap<>(ERROR_RESPONSE_HEADERS);
+        headers.put(HttpHeaders.ALLOW, allowedMethod);
+        response.setHeaders(headers);
+        return response;
+    }
+
     public static APIGatewayProxyResponseEvent buildInternalServerErrorResponse(String errorDescription) {
         return createErrorResponse(HTTP_INTERNAL_ERROR, errorDescription);
     }
@@ -155,10 +291,7 @@ public class Utils {
     private static APIGatewayProxyResponseEvent createErrorResponse(int statusCode, String errorDescription) {
         APIGatewayProxyResponseEvent response = new APIGatewayProxyResponseEvent();
         response.setStatusCode(statusCode);
-        Map<String, String> headers = new HashMap<>();
-        //TODO: change 'Access-Control-Allow-Origin' to specific domain in production
-        headers.put(ACCESS_CONTROL_ALLOW_ORIGIN, "*");
-        response.setHeaders(headers);
+        response.setHeaders(ERROR_RESPONSE_HEADERS);
         response.setBody("{\"error\": \"" + errorDescription + "\"}");
         return response;
     }
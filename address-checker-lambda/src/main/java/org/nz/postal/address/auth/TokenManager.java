@@ -0,0 +1,323 @@
+/*
+ * Copyright 2025 Samitha Chathuranga
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.nz.postal.address.auth;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import org.apache.http.HttpHeaders;
+import org.apache.http.client.utils.URIBuilder;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.nz.postal.address.Utils;
+import org.nz.postal.address.metrics.MetricNames;
+import org.nz.postal.address.upstream.UpstreamResponse;
+
+import static java.net.HttpURLConnection.HTTP_BAD_REQUEST;
+import static java.net.HttpURLConnection.HTTP_OK;
+import static java.net.HttpURLConnection.HTTP_UNAUTHORIZED;
+import static org.nz.postal.address.Constants.APPLICATION_X_WWW_FORM_URLENCODED;
+import static org.nz.postal.address.Constants.CLIENT_CREDENTIALS;
+
+/**
+ * Thread safe manager of the NZ Post OAuth access token.
+ * <ul>
+ *     <li>Only one token refresh is in flight at a time. Concurrent callers wait for and share its result.</li>
+ *     <li>The token is refreshed in the background before it expires, so requests do not pay for the token
+ *     round-trip.</li>
+ *     <li>A token rejected by the upstream API can be invalidated, which triggers an immediate refresh.</li>
+ * </ul>
+ */
+public class TokenManager {
+    public static final String NZ_POST_API_OAUTH_TOKEN_URL_ENV_VAR = "NZ_POST_API_OAUTH_TOKEN_URL";
+    public static final String REFRESH_AHEAD_SECONDS_ENV_VAR = "TOKEN_REFRESH_AHEAD_SECONDS";
+    private static final long EXPIRY_MARGIN_MILLIS = 60_000; // stop using a token 1 min before it expires
+    private static final long DEFAULT_REFRESH_AHEAD_SECONDS = 300;
+    private static final long RETRY_DELAY_MILLIS = 30_000;
+    private static final long MIN_REFRESH_DELAY_MILLIS = 1_000;
+    private static final ObjectReader reader = new ObjectMapper().reader();
+    private static final Map<String, String> TOKEN_REQUEST_HEADERS = Map.of(HttpHeaders.CONTENT_TYPE,
+            APPLICATION_X_WWW_FORM_URLENCODED);
+    private static final Logger log = LogManager.getLogger(TokenManager.class);
+
+    private final TokenFetcher fetcher;
+    private final long expiryMarginMillis;
+    private final long refreshAheadMillis;
+    private final Object lock = new Object();
+    private volatile AccessToken currentToken;
+    private CompletableFuture<AccessToken> inFlightRefresh;
+    private ScheduledExecutorService scheduler;
+    private ScheduledFuture<?> scheduledRefresh;
+
+    /**
+     * Fetches a new access token from the token endpoint.
+     */
+    @FunctionalInterface
+    public interface TokenFetcher {
+        AccessToken fetch() throws Exception;
+    }
+
+    /**
+     * An access token together with the time (epoch millis) it expires at.
+     */
+    public static final class AccessToken {
+        private final String value;
+        private final long expiresAt;
+
+        public AccessToken(String value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+
+        public String getValue() {
+            return value;
+        }
+
+        public long getExpiresAt() {
+            return expiresAt;
+        }
+    }
+
+    public TokenManager(TokenFetcher fetcher, long expiryMarginMillis, long refreshAheadMillis) {
+        this.fetcher = fetcher;
+        this.expiryMarginMillis = expiryMarginMillis;
+        this.refreshAheadMillis = refreshAheadMillis;
+    }
+
+    /**
+     * Creates a token manager which fetches tokens from the NZ Post OAuth token endpoint with the client credentials
+     * loaded from the secrets manager.
+     *
+     * @return TokenManager instance
+     */
+    public static TokenManager fromEnvironment() {
+        long refreshAheadSeconds = Utils.getEnvAsLong(REFRESH_AHEAD_SECONDS_ENV_VAR, DEFAULT_REFRESH_AHEAD_SECONDS);
+        return new TokenManager(TokenManager::fetchFromTokenEndpoint, EXPIRY_MARGIN_MILLIS, refreshAheadSeconds * 1000);
+    }
+
+    /**
+     * Returns a valid access token, fetching a new one if there is no cached token or it is about to expire.
+     *
+     * @return OAuth token as a String
+     * @throws Exception if there is an error fetching the token
+     */
+    public String getToken() throws Exception {
+        AccessToken token = currentToken;
+        if (isUsable(token)) {
+            if (log.isDebugEnabled()) {
+                log.debug("Using cached token. This cached token expires at: " + token.expiresAt);
+            }
+            return token.value;
+        }
+        return refresh(token).value;
+    }
+
+    /**
+     * Invalidates a token rejected by the upstream API and returns a freshly fetched one. If another caller has
+     * already replaced the rejected token, the replacement is returned without fetching again.
+     *
+     * @param rejectedToken the token which was rejected
+     * @return a new OAuth token
+     * @throws Exception if there is an error fetching the token
+     */
+    public String refreshAfterRejection(String rejectedToken) throws Exception {
+        AccessToken token = currentToken;
+        if (token != null && !token.value.equals(rejectedToken) && isUsable(token)) {
+            return token.value;
+        }
+        log.info("Access token was rejected by the upstream API. Fetching a new token");
+        return refresh(token).value;
+    }
+
+    /**
+     * Returns true if a token is cached and is not within the expiry margin.
+     *
+     * @return whether a usable token is cached
+     */
+    public boolean hasUsableToken() {
+        return isUsable(currentToken);
+    }
+
+    /**
+     * Re-checks the cached token, e.g. after a snapshot restore where the wall clock has jumped forward and the
+     * scheduled background refresh no longer fires at the right time. Fetches a new token if the cached one is no
+     * longer usable, otherwise reschedules the background refresh.
+     *
+     * @throws Exception if there is an error fetching the token
+     */
+    public void revalidate() throws Exception {
+        AccessToken token = currentToken;
+        if (isUsable(token)) {
+            scheduleRefresh(refreshDelayMillis(token));
+        } else {
+            refresh(token);
+        }
+    }
+
+    /**
+     * Stops the background refresh, e.g. on server shutdown.
+     */
+    public void shutdown() {
+        synchronized (lock) {
+            if (scheduler != null) {
+                scheduler.shutdownNow();
+                scheduler = null;
+            }
+        }
+    }
+
+    private boolean isUsable(AccessToken token) {
+        return token != null && token.expiresAt - expiryMarginMillis > System.currentTimeMillis();
+    }
+
+    /**
+     * Replaces the given stale token. Only one fetch is in flight at a time, and callers arriving while it is in
+     * flight share its result.
+     */
+    private AccessToken refresh(AccessToken staleToken) throws Exception {
+        CompletableFuture<AccessToken> refreshFuture;
+        boolean owner = false;
+        synchronized (lock) {
+            AccessToken token = currentToken;
+            if (token != staleToken && isUsable(token)) {
+                return token;
+            }
+            refreshFuture = inFlightRefresh;
+            if (refreshFuture == null) {
+                refreshFuture = new CompletableFuture<>();
+                inFlightRefresh = refreshFuture;
+                owner = true;
+            }
+        }
+        if (owner) {
+            long start = System.nanoTime();
+            try {
+                AccessToken token = fetcher.fetch();
+                Utils.getMetrics().recordTimeSince(MetricNames.TOKEN_FETCH_TIME, start);
+                Utils.getMetrics().increment(MetricNames.TOKEN_REFRESHES);
+                currentToken = token;
+                log.info("Fetched new token with expiry time " + token.expiresAt);
+                scheduleRefresh(refreshDelayMillis(token));
+                refreshFuture.complete(token);
+            } catch (Throwable e) {
+                // Errors too, or the callers sharing this refresh would wait for it forever
+                Utils.getMetrics().increment(MetricNames.TOKEN_REFRESH_FAILURES);
+                refreshFuture.completeExceptionally(e);
+            } finally {
+                synchronized (lock) {
+                    inFlightRefresh = null;
+                }
+            }
+        }
+        try {
+            return refreshFuture.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception) {
+                throw (Exception) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the time until the background refresh of a token. The refresh-ahead time is capped at half the remaining
+     * lifetime of the token, and the delay is at least {@value #MIN_REFRESH_DELAY_MILLIS} ms, so that tokens which live
+     * shorter than the refresh-ahead time do not make the refresh reschedule itself in a tight loop.
+     */
+    private long refreshDelayMillis(AccessToken token) {
+        long remainingMillis = token.expiresAt - System.currentTimeMillis();
+        long refreshAhead = Math.min(refreshAheadMillis, remainingMillis / 2);
+        return Math.max(remainingMillis - refreshAhead, MIN_REFRESH_DELAY_MILLIS);
+    }
+
+    private void scheduleRefresh(long delayMillis) {
+        synchronized (lock) {
+            if (scheduledRefresh != null) {
+                scheduledRefresh.cancel(false);
+            }
+            if (scheduler == null) {
+                scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                    Thread thread = new Thread(runnable, "token-refresh");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+            }
+            scheduledRefresh = scheduler.schedule(this::backgroundRefresh, Math.max(delayMillis, 0),
+                    TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void backgroundRefresh() {
+        try {
+            log.debug("Refreshing access token in the background");
+            refresh(currentToken);
+        } catch (Exception e) {
+            log.warn("Background token refresh failed: " + e.getMessage());
+            if (isUsable(currentToken)) {
+                scheduleRefresh(RETRY_DELAY_MILLIS);
+            }
+        }
+    }
+
+    /**
+     * Retrieves an OAuth token from the NZ Post API with the client credentials grant. If the client credentials are
+     * rejected, the secrets are refreshed immediately, and the token is requested once more if they were rotated.
+     *
+     * @return the fetched token
+     * @throws Exception if there is an error fetching the token
+     */
+    private static AccessToken fetchFromTokenEndpoint() throws Exception {
+        long now = System.currentTimeMillis();
+        UpstreamResponse response = requestToken();
+        if (response.getStatusCode() == HTTP_UNAUTHORIZED || response.getStatusCode() == HTTP_BAD_REQUEST) {
+            log.info("Client credentials were rejected by the token endpoint. Refreshing secrets");
+            if (Utils.refreshSecrets()) {
+                response = requestToken();
+            }
+        }
+        if (response.getStatusCode() != HTTP_OK) {
+            String errorMessage = "Error fetching access token. " + response.getReasonPhrase();
+            Utils.handleUpstreamServerError(errorMessage, response.getStatusCode());
+        }
+        JsonNode jsonNode = reader.readTree(response.getBody());
+        String accessToken = jsonNode.get("access_token").asText();
+        long expiresIn = Long.parseLong(jsonNode.get("expires_in").asText());
+        return new AccessToken(accessToken, now + expiresIn * 1000);
+    }
+
+    private static UpstreamResponse requestToken() throws Exception {
+        String tokenEPurl = System.getenv(NZ_POST_API_OAUTH_TOKEN_URL_ENV_VAR);
+
+        URIBuilder uriBuilder = new URIBuilder(tokenEPurl);
+        uriBuilder.addParameter("grant_type", CLIENT_CREDENTIALS);
+        uriBuilder.addParameter("client_id", Utils.getClientId());
+        uriBuilder.addParameter("client_secret", Utils.getClientSecret());
+
+        return Utils.getUpstreamTransport().post(uriBuilder.build(), TOKEN_REQUEST_HEADERS);
+    }
+}
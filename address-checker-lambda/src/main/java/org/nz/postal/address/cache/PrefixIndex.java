@@ -0,0 +1,241 @@
+/*
+ * Copyright 2025 Samitha Chathuranga
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.nz.postal.address.cache;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.nz.postal.address.Utils;
+import org.nz.postal.address.query.QueryNormalizer;
+
+/**
+ * Index of recent suggest API responses which are known to be complete, i.e. they returned fewer suggestions than the
+ * requested max. Such a response already holds every address matching its query, so any longer query starting with
+ * that query can be answered by filtering it locally instead of calling NZ Post.
+ * <p>
+ * Each indexed prefix represents a typing session. The number of upstream calls saved by a session is logged when its
+ * entry leaves the index, and the total is exposed through {@link #getSavedUpstreamCalls()}.
+ */
+public class PrefixIndex {
+    public static final String MAX_ENTRIES_ENV_VAR = "PREFIX_INDEX_MAX_ENTRIES";
+    public static final String TTL_SECONDS_ENV_VAR = "PREFIX_INDEX_TTL_SECONDS";
+    private static final int DEFAULT_MAX_ENTRIES = 500;
+    private static final long DEFAULT_TTL_SECONDS = 300;
+    private static final String ADDRESSES = "addresses";
+    private static final String FULL_ADDRESS = "FullAddress";
+    private static final ObjectReader reader = new ObjectMapper().reader();
+    private static final Logger log = LogManager.getLogger(PrefixIndex.class);
+
+    private final int maxEntries;
+    private final long ttlMillis;
+    private final LongSupplier clock;
+    private final LinkedHashMap<String, Session> sessions = new LinkedHashMap<>(16, 0.75f, true);
+    private long savedUpstreamCalls;
+
+    public PrefixIndex(int maxEntries, long ttlMillis) {
+        this(maxEntries, ttlMillis, System::currentTimeMillis);
+    }
+
+    public PrefixIndex(int maxEntries, long ttlMillis, LongSupplier clock) {
+        if (maxEntries <= 0 || ttlMillis <= 0) {
+            throw new IllegalArgumentException("Index size and TTL must be positive");
+        }
+        this.maxEntries = maxEntries;
+        this.ttlMillis = ttlMillis;
+        this.clock = clock;
+    }
+
+    /**
+     * Creates an index sized from the PREFIX_INDEX_* environment variables, falling back to defaults when unset.
+     *
+     * @return PrefixIndex instance
+     */
+    public static PrefixIndex fromEnvironment() {
+        int maxEntries = (int) Utils.getEnvAsLong(MAX_ENTRIES_ENV_VAR, DEFAULT_MAX_ENTRIES);
+        long ttlSeconds = Utils.getEnvAsLong(TTL_SECONDS_ENV_VAR, DEFAULT_TTL_SECONDS);
+        return new PrefixIndex(maxEntries, ttlSeconds * 1000);
+    }
+
+    /**
+     * Indexes a suggest API response if it is complete for its query. Responses which are not valid JSON, have no
+     * addresses array or returned max suggestions are ignored.
+     *
+     * @param query the search query the response was returned for
+     * @param max   the maximum number of suggestions requested
+     * @param body  the suggest API response body
+     */
+    public void record(String query, String max, String body) {
+        int maxValue = parseMax(max);
+        if (body == null || maxValue <= 0) {
+            return;
+        }
+        JsonNode root;
+        try {
+            root = reader.readTree(body);
+        } catch (Exception e) {
+            log.debug("Suggest API response is not indexable: {}", e.getMessage());
+            return;
+        }
+        JsonNode addresses = root.get(ADDRESSES);
+        if (!root.isObject() || addresses == null || !addresses.isArray() || addresses.size() >= maxValue) {
+            return;
+        }
+        synchronized (this) {
+            String key = normalize(query);
+            Session previous = sessions.remove(key);
+            if (previous != null) {
+                endSession(key, previous);
+            }
+            sessions.put(key, new Session((ObjectNode) root, clock.getAsLong() + ttlMillis));
+            Iterator<Map.Entry<String, Session>> iterator = sessions.entrySet().iterator();
+            while (sessions.size() > maxEntries && iterator.hasNext()) {
+                Map.Entry<String, Session> eldest = iterator.next();
+                iterator.remove();
+                endSession(eldest.getKey(), eldest.getValue());
+            }
+        }
+    }
+
+    /**
+     * Answers the query from the longest indexed shorter prefix of it, if there is one. Indexed responses hold every
+     * address matching their prefix, so they can answer any max, including one larger than they were requested with.
+     *
+     * @param query the search query
+     * @param max   the maximum number of suggestions requested
+     * @return the locally filtered response body, or null if the query cannot be answered without NZ Post
+     */
+    public String narrow(String query, String max) {
+        int maxValue = parseMax(max);
+        if (maxValue <= 0) {
+            return null;
+        }
+        String normalizedQuery = normalize(query);
+        Session session = null;
+        synchronized (this) {
+            long now = clock.getAsLong();
+            for (int end = normalizedQuery.length() - 1; end > 0 && session == null; end--) {
+                String prefix = normalizedQuery.substring(0, end);
+                Session candidate = sessions.get(prefix);
+                if (candidate == null) {
+                    continue;
+                }
+                if (candidate.expiresAt <= now) {
+                    sessions.remove(prefix);
+                    endSession(prefix, candidate);
+                } else {
+                    session = candidate;
+                    session.savedCalls++;
+                    savedUpstreamCalls++;
+                }
+            }
+        }
+        if (session == null) {
+            return null;
+        }
+        return filter(session.response, normalizedQuery, maxValue);
+    }
+
+    public synchronized long getSavedUpstreamCalls() {
+        return savedUpstreamCalls;
+    }
+
+    public synchronized int size() {
+        return sessions.size();
+    }
+
+    /**
+     * Returns true if the given address matches the query, i.e. every word of the query is the start of a word in
+     * the address.
+     */
+    static boolean matches(String normalizedQuery, String address) {
+        String[] addressWords = normalize(address).split("[\\s,]+");
+        for (String queryWord : normalizedQuery.split("[\\s,]+")) {
+            if (queryWord.isEmpty()) {
+                continue;
+            }
+            boolean found = false;
+            for (String addressWord : addressWords) {
+                if (addressWord.startsWith(queryWord)) {
+                    found = true;
+                    break;
+                }
+            }
+            if (!found) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String filter(ObjectNode response, String normalizedQuery, int max) {
+        List<JsonNode> matched = new ArrayList<>();
+        for (JsonNode address : response.get(ADDRESSES)) {
+            JsonNode fullAddress = address.get(FULL_ADDRESS);
+            if (fullAddress != null && matches(normalizedQuery, fullAddress.asText())) {
+                matched.add(address);
+                if (matched.size() == max) {
+                    break;
+                }
+            }
+        }
+        ObjectNode narrowed = response.deepCopy();
+        ArrayNode addresses = narrowed.putArray(ADDRESSES);
+        addresses.addAll(matched);
+        return narrowed.toString();
+    }
+
+    private void endSession(String prefix, Session session) {
+        if (session.savedCalls > 0) {
+            log.info("Typing session starting at prefix '" + prefix + "' saved " + session.savedCalls
+                    + " NZ Post suggest API calls");
+        }
+    }
+
+    private static String normalize(String value) {
+        return QueryNormalizer.fold(value);
+    }
+
+    private static int parseMax(String max) {
+        try {
+            return Integer.parseInt(max);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static final class Session {
+        private final ObjectNode response;
+        private final long expiresAt;
+        private long savedCalls;
+
+        private Session(ObjectNode response, long expiresAt) {
+            this.response = response;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,245 @@
+/*
+ * Copyright 2025 Samitha Chathuranga
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.nz.postal.address.cache;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * {@link SharedCache} on Redis (or a Redis protocol compatible store such as ElastiCache or Valkey), with a minimal
+ * RESP client so that no Redis client library has to be added to the deployment package.
+ * <p>
+ * Connections are pooled, and both connecting and reading a reply are bounded by the timeout, so a slow or unreachable
+ * Redis costs at most the timeout per call. A connection which failed is closed rather than returned to the pool.
+ * TLS connections verify that the server certificate matches the host, before the password is sent.
+ */
+public class RedisSharedCache implements SharedCache {
+    private static final String TLS_SCHEME = "rediss";
+    private static final int DEFAULT_PORT = 6379;
+    private static final Logger log = LogManager.getLogger(RedisSharedCache.class);
+
+    private final String host;
+    private final int port;
+    private final boolean tls;
+    private final String username;
+    private final String password;
+    private final int timeoutMillis;
+    private final ConcurrentLinkedQueue<Connection> idleConnections = new ConcurrentLinkedQueue<>();
+
+    /**
+     * @param host          Redis host
+     * @param port          Redis port
+     * @param tls           whether to connect with TLS
+     * @param username      user of an ACL (e.g. ElastiCache RBAC) user, or null for the default user
+     * @param password      password to authenticate with, or null if authentication is not required
+     * @param timeoutMillis connect and read timeout
+     */
+    public RedisSharedCache(String host, int port, boolean tls, String username, String password, int timeoutMillis) {
+        this.host = host;
+        this.port = port;
+        this.tls = tls;
+        this.username = username;
+        this.password = password;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * Creates a cache for a redis://[[username]:password@]host[:port] or rediss:// (TLS) URI.
+     *
+     * @param uri           Redis URI
+     * @param timeoutMillis connect and read timeout
+     * @return RedisSharedCache instance
+     */
+    public static RedisSharedCache fromUri(URI uri, int timeoutMillis) {
+        String username = null;
+        String password = null;
+        if (uri.getUserInfo() != null) {
+            String userInfo = uri.getUserInfo();
+            int separator = userInfo.indexOf(':');
+            if (separator > 0) {
+                username = userInfo.substring(0, separator);
+            }
+            password = userInfo.substring(separator + 1);
+        }
+        return new RedisSharedCache(uri.getHost(), uri.getPort() < 0 ? DEFAULT_PORT : uri.getPort(),
+                TLS_SCHEME.equalsIgnoreCase(uri.getScheme()), username, password, timeoutMillis);
+    }
+
+    @Override
+    public String get(String key) throws IOException {
+        return execute("GET", key);
+    }
+
+    @Override
+    public void set(String key, String value, long ttlMillis) throws IOException {
+        execute("SET", key, value, "PX", String.valueOf(ttlMillis));
+    }
+
+    @Override
+    public void close() {
+        Connection connection;
+        while ((connection = idleConnections.poll()) != null) {
+            connection.close();
+        }
+    }
+
+    private String execute(String... command) throws IOException {
+        Connection connection = idleConnections.poll();
+        if (connection == null) {
+            connection = connect();
+        }
+        try {
+            String reply = connection.send(command);
+            idleConnections.offer(connection);
+            return reply;
+        } catch (IOException e) {
+            connection.close();
+            throw e;
+        }
+    }
+
+    private Connection connect() throws IOException {
+        Socket socket = new Socket();
+        try {
+            socket.setTcpNoDelay(true);
+            socket.connect(new InetSocketAddress(host, port), timeoutMillis);
+            socket.setSoTimeout(timeoutMillis);
+            if (tls) {
+                socket = startTls(socket);
+            }
+            Connection connection = new Connection(socket);
+            if (password != null) {
+                if (username != null) {
+                    connection.send("AUTH", username, password);
+                } else {
+                    connection.send("AUTH", password);
+                }
+            }
+            log.debug("Opened connection to Redis at " + host + ":" + port);
+            return connection;
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Layers TLS over the connected socket, with SNI and host name verification, and completes the handshake.
+     */
+    private SSLSocket startTls(Socket plain) throws IOException {
+        SSLSocket socket = (SSLSocket) ((SSLSocketFactory) SSLSocketFactory.getDefault())
+                .createSocket(plain, host, port, true);
+        SSLParameters parameters = socket.getSSLParameters();
+        parameters.setEndpointIdentificationAlgorithm("HTTPS");
+        socket.setSSLParameters(parameters);
+        socket.startHandshake();
+        return socket;
+    }
+
+    private static final class Connection {
+        private final Socket socket;
+        private final InputStream in;
+        private final OutputStream out;
+
+        private Connection(Socket socket) throws IOException {
+            this.socket = socket;
+            this.in = new BufferedInputStream(socket.getInputStream());
+            this.out = new BufferedOutputStream(socket.getOutputStream());
+        }
+
+        /**
+         * Sends a command as a RESP array of bulk strings and reads the reply.
+         *
+         * @return the reply, null for a nil reply
+         */
+        private String send(String... command) throws IOException {
+            out.write(('*' + String.valueOf(command.length) + "\r\n").getBytes(StandardCharsets.US_ASCII));
+            for (String argument : command) {
+                byte[] bytes = argument.getBytes(StandardCharsets.UTF_8);
+                out.write(('$' + String.valueOf(bytes.length) + "\r\n").getBytes(StandardCharsets.US_ASCII));
+                out.write(bytes);
+                out.write('\r');
+                out.write('\n');
+            }
+            out.flush();
+            return readReply();
+        }
+
+        private String readReply() throws IOException {
+            int type = in.read();
+            String line = readLine();
+            switch (type) {
+                case '+':
+                case ':':
+                    return line;
+                case '-':
+                    throw new IOException("Redis error: " + line);
+                case '$':
+                    int length = Integer.parseInt(line);
+                    if (length < 0) {
+                        return null;
+                    }
+                    byte[] bytes = in.readNBytes(length + 2);
+                    if (bytes.length < length + 2) {
+                        throw new EOFException("Connection to Redis closed mid reply");
+                    }
+                    return new String(bytes, 0, length, StandardCharsets.UTF_8);
+                case -1:
+                    throw new EOFException("Connection to Redis closed");
+                default:
+                    throw new IOException("Unexpected Redis reply type: " + (char) type);
+            }
+        }
+
+        private String readLine() throws IOException {
+            StringBuilder line = new StringBuilder();
+            int c;
+            while ((c = in.read()) != '\r') {
+                if (c == -1) {
+                    throw new EOFException("Connection to Redis closed");
+                }
+                line.append((char) c);
+            }
+            in.read();
+            return line.toString();
+        }
+
+        private void close() {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                log.debug("Error closing Redis connection: " + e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright 2025 Samitha Chathuranga
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.nz.postal.address.cache;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Key/value store shared by all Lambda instances, used as the second level of the suggestion cache. Implementations
+ * must bound every call by a short timeout, as the store is on the request path.
+ */
+public interface SharedCache extends Closeable {
+
+    /**
+     * @param key the key
+     * @return the value, or null if there is none
+     * @throws IOException if the store could not be reached in time
+     */
+    String get(String key) throws IOException;
+
+    /**
+     * @param key       the key
+     * @param value     the value
+     * @param ttlMillis time after which the store drops the value
+     * @throws IOException if the store could not be reached in time
+     */
+    void set(String key, String value, long ttlMillis) throws IOException;
+
+    /**
+     * Closes the open connections. The cache stays usable, and reconnects on the next call.
+     */
+    @Override
+    void close();
+}
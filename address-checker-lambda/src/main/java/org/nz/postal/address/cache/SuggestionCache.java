@@ -0,0 +1,263 @@
+/*
+ * Copyright 2025 Samitha Chathuranga
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.nz.postal.address.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.nz.postal.address.Utils;
+
+/**
+ * In-process cache of NZ Post suggest API responses, keyed on the query and max values.
+ * Entries expire after a fixed TTL and the least recently used entries are evicted once either the entry count or the
+ * total size (in characters of cached response bodies) exceeds the configured limits.
+ * Expired entries are kept for a further stale period, during which they are only served by {@link #getStale} as the
+ * last known good response when the upstream API is unavailable.
+ * The cache lives as long as the Lambda container, so warm invocations can reuse responses of earlier invocations.
+ */
+public class SuggestionCache {
+    public static final String MAX_ENTRIES_ENV_VAR = "SUGGEST_CACHE_MAX_ENTRIES";
+    public static final String MAX_SIZE_ENV_VAR = "SUGGEST_CACHE_MAX_SIZE_CHARS";
+    public static final String TTL_SECONDS_ENV_VAR = "SUGGEST_CACHE_TTL_SECONDS";
+    public static final String STALE_SECONDS_ENV_VAR = "SUGGEST_CACHE_STALE_SECONDS";
+    private static final int DEFAULT_MAX_ENTRIES = 1000;
+    private static final long DEFAULT_MAX_SIZE = 4 * 1024 * 1024;
+    private static final long DEFAULT_TTL_SECONDS = 300;
+    private static final long DEFAULT_STALE_SECONDS = 3600;
+    private static final Logger log = LogManager.getLogger(SuggestionCache.class);
+
+    private final int maxEntries;
+    private final long maxSize;
+    private final long ttlMillis;
+    private final long staleMillis;
+    private final LongSupplier clock;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long currentSize;
+    private long hitCount;
+    private long missCount;
+    private long evictionCount;
+    private long expiredCount;
+    private long staleHitCount;
+
+    public SuggestionCache(int maxEntries, long maxSize, long ttlMillis) {
+        this(maxEntries, maxSize, ttlMillis, System::currentTimeMillis);
+    }
+
+    public SuggestionCache(int maxEntries, long maxSize, long ttlMillis, LongSupplier clock) {
+        this(maxEntries, maxSize, ttlMillis, 0, clock);
+    }
+
+    public SuggestionCache(int maxEntries, long maxSize, long ttlMillis, long staleMillis, LongSupplier clock) {
+        if (maxEntries <= 0 || maxSize <= 0 || ttlMillis <= 0) {
+            throw new IllegalArgumentException("Cache limits and TTL must be positive");
+        }
+        if (staleMillis < 0) {
+            throw new IllegalArgumentException("Stale period must not be negative");
+        }
+        this.maxEntries = maxEntries;
+        this.maxSize = maxSize;
+        this.ttlMillis = ttlMillis;
+        this.staleMillis = staleMillis;
+        this.clock = clock;
+    }
+
+    /**
+     * Creates a cache sized from the SUGGEST_CACHE_* environment variables, falling back to defaults when unset.
+     *
+     * @return SuggestionCache instance
+     */
+    public static SuggestionCache fromEnvironment() {
+        int maxEntries = (int) Utils.getEnvAsLong(MAX_ENTRIES_ENV_VAR, DEFAULT_MAX_ENTRIES);
+        long maxSize = Utils.getEnvAsLong(MAX_SIZE_ENV_VAR, DEFAULT_MAX_SIZE);
+        long ttlSeconds = Utils.getEnvAsLong(TTL_SECONDS_ENV_VAR, DEFAULT_TTL_SECONDS);
+        long staleSeconds = Utils.getEnvAsLong(STALE_SECONDS_ENV_VAR, DEFAULT_STALE_SECONDS);
+        log.debug("Suggestion cache initialized. Max entries: " + maxEntries + ", Max size: " + maxSize
+                + ", TTL(s): " + ttlSeconds + ", Stale(s): " + staleSeconds);
+        return new SuggestionCache(maxEntries, maxSize, ttlSeconds * 1000, staleSeconds * 1000,
+                System::currentTimeMillis);
+    }
+
+    /**
+     * Returns the cached response for the given query and max values, or null if there is no live entry.
+     *
+     * @param query the search query
+     * @param max   the maximum number of suggestions requested
+     * @return cached response body or null
+     */
+    public synchronized String get(String query, String max) {
+        String key = key(query, max);
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            missCount++;
+            return null;
+        }
+        long now = clock.getAsLong();
+        if (entry.expiresAt <= now) {
+            if (entry.expiresAt + staleMillis <= now) {
+                remove(key, entry);
+            }
+            expiredCount++;
+            missCount++;
+            return null;
+        }
+        hitCount++;
+        return entry.body;
+    }
+
+    /**
+     * Returns true if there is a live entry for the given query and max values. Unlike {@link #get(String, String)},
+     * it is not counted as a hit or miss, so it can be used to check whether something still needs to be fetched.
+     *
+     * @param query the search query
+     * @param max   the maximum number of suggestions requested
+     * @return whether a live entry is cached
+     */
+    public synchronized boolean contains(String query, String max) {
+        Entry entry = entries.get(key(query, max));
+        return entry != null && entry.expiresAt > clock.getAsLong();
+    }
+
+    /**
+     * Returns the last known good response for the given query and max values, even if it has expired, as long as it
+     * is still within the stale period. Meant as a fallback when the upstream API cannot be called.
+     *
+     * @param query the search query
+     * @param max   the maximum number of suggestions requested
+     * @return cached, possibly stale, response body or null
+     */
+    public synchronized String getStale(String query, String max) {
+        String key = key(query, max);
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.expiresAt + staleMillis <= clock.getAsLong()) {
+            remove(key, entry);
+            return null;
+        }
+        staleHitCount++;
+        return entry.body;
+    }
+
+    /**
+     * Caches the response for the given query and max values. Responses larger than the whole cache are not cached.
+     *
+     * @param query the search query
+     * @param max   the maximum number of suggestions requested
+     * @param body  the response body to cache
+     */
+    public synchronized void put(String query, String max, String body) {
+        if (body == null || body.length() > maxSize) {
+            return;
+        }
+        String key = key(query, max);
+        Entry previous = entries.remove(key);
+        if (previous != null) {
+            currentSize -= previous.body.length();
+        }
+        entries.put(key, new Entry(body, clock.getAsLong() + ttlMillis));
+        currentSize += body.length();
+        evictIfNeeded();
+    }
+
+    /**
+     * Removes the response cached for the given query and max values, if any.
+     *
+     * @param query the search query
+     * @param max   the maximum number of suggestions requested
+     */
+    public synchronized void remove(String query, String max) {
+        String key = key(query, max);
+        Entry entry = entries.get(key);
+        if (entry != null) {
+            remove(key, entry);
+        }
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        currentSize = 0;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long getCurrentSize() {
+        return currentSize;
+    }
+
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    public synchronized long getEvictionCount() {
+        return evictionCount;
+    }
+
+    public synchronized long getExpiredCount() {
+        return expiredCount;
+    }
+
+    public synchronized long getStaleHitCount() {
+        return staleHitCount;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "SuggestionCache{entries=" + entries.size() + ", size=" + currentSize + ", hits=" + hitCount
+                + ", misses=" + missCount + ", evictions=" + evictionCount + ", expired=" + expiredCount
+                + ", staleHits=" + staleHitCount + "}";
+    }
+
+    private void evictIfNeeded() {
+        Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+        while ((entries.size() > maxEntries || currentSize > maxSize) && iterator.hasNext()) {
+            Entry eldest = iterator.next().getValue();
+            iterator.remove();
+            currentSize -= eldest.body.length();
+            evictionCount++;
+        }
+    }
+
+    private void remove(String key, Entry entry) {
+        entries.remove(key);
+        currentSize -= entry.body.length();
+    }
+
+    private static String key(String query, String max) {
+        return query + '\u0000' + max;
+    }
+
+    private static final class Entry {
+        private final String body;
+        private final long expiresAt;
+
+        private Entry(String body, long expiresAt) {
+            this.body = body;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,248 @@
+/*
+ * Copyright 2025 Samitha Chathuranga
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.nz.postal.address.cache;
+
+import java.net.URI;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.nz.postal.address.Utils;
+import org.nz.postal.address.upstream.CircuitBreaker;
+
+/**
+ * Two level suggestion cache: the in-process {@link SuggestionCache} (L1) in front of an optional {@link SharedCache}
+ * (L2) shared by all Lambda instances, so that a response fetched from NZ Post by one instance can be served by the
+ * others, including freshly started ones.
+ * <p>
+ * The L2 is a best effort layer. Reads are bounded by the timeout of the shared cache and go through a circuit
+ * breaker, so an unavailable L2 is skipped without waiting on it, and any L2 error is treated as a miss. Writes are
+ * queued to a background thread and dropped when the queue is full, so they never delay a response.
+ */
+public class TieredSuggestionCache {
+    public static final String L2_URL_ENV_VAR = "SUGGEST_L2_CACHE_URL";
+    public static final String L2_TIMEOUT_MS_ENV_VAR = "SUGGEST_L2_CACHE_TIMEOUT_MS";
+    public static final String L2_TTL_SECONDS_ENV_VAR = "SUGGEST_L2_CACHE_TTL_SECONDS";
+    public static final String L2_WRITE_QUEUE_ENV_VAR = "SUGGEST_L2_CACHE_WRITE_QUEUE";
+    private static final String KEY_PREFIX = "nzpost:suggest:";
+    private static final long DEFAULT_TIMEOUT_MILLIS = 25;
+    private static final long DEFAULT_TTL_SECONDS = 3600;
+    private static final int DEFAULT_WRITE_QUEUE = 1000;
+    private static final Logger log = LogManager.getLogger(TieredSuggestionCache.class);
+
+    /**
+     * A cached response, together with the level it was found in.
+     */
+    public static final class Hit {
+        private final String body;
+        private final boolean shared;
+
+        private Hit(String body, boolean shared) {
+            this.body = body;
+            this.shared = shared;
+        }
+
+        public String getBody() {
+            return body;
+        }
+
+        /**
+         * @return true if the response came from the shared L2 cache rather than the in-process cache
+         */
+        public boolean isShared() {
+            return shared;
+        }
+    }
+
+    private final SuggestionCache localCache;
+    private final SharedCache sharedCache;
+    private final long sharedTtlMillis;
+    private final CircuitBreaker sharedCircuitBreaker;
+    private final ThreadPoolExecutor writer;
+    private final AtomicLong sharedHits = new AtomicLong();
+    private final AtomicLong sharedMisses = new AtomicLong();
+    private final AtomicLong sharedErrors = new AtomicLong();
+    private final AtomicLong droppedWrites = new AtomicLong();
+
+    /**
+     * @param localCache           the in-process L1 cache
+     * @param sharedCache          the shared L2 cache, or null to use the L1 cache only
+     * @param sharedTtlMillis      time after which the shared cache drops an entry
+     * @param sharedCircuitBreaker circuit breaker which skips the shared cache while it is failing
+     * @param writeQueueSize       number of pending L2 writes after which further writes are dropped
+     */
+    public TieredSuggestionCache(SuggestionCache localCache, SharedCache sharedCache, long sharedTtlMillis,
+                                 CircuitBreaker sharedCircuitBreaker, int writeQueueSize) {
+        this.localCache = localCache;
+        this.sharedCache = sharedCache;
+        this.sharedTtlMillis = sharedTtlMillis;
+        this.sharedCircuitBreaker = sharedCircuitBreaker;
+        this.writer = sharedCache == null ? null : new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(writeQueueSize), runnable -> {
+                    Thread thread = new Thread(runnable, "suggest-l2-writer");
+                    thread.setDaemon(true);
+                    return thread;
+                }, (runnable, executor) -> droppedWrites.incrementAndGet());
+    }
+
+    /**
+     * Creates a tiered cache over the given L1 cache. The L2 cache is a Redis cache at the SUGGEST_L2_CACHE_URL
+     * (redis://[:password@]host[:port], or rediss:// for TLS), and is disabled when the URL is not set.
+     *
+     * @param localCache the in-process L1 cache
+     * @return TieredSuggestionCache instance
+     */
+    public static TieredSuggestionCache fromEnvironment(SuggestionCache localCache) {
+        String url = System.getenv(L2_URL_ENV_VAR);
+        if (url == null || url.isBlank()) {
+            return new TieredSuggestionCache(localCache, null, 0, null, 0);
+        }
+        long timeoutMillis = Utils.getEnvAsLong(L2_TIMEOUT_MS_ENV_VAR, DEFAULT_TIMEOUT_MILLIS);
+        long ttlSeconds = Utils.getEnvAsLong(L2_TTL_SECONDS_ENV_VAR, DEFAULT_TTL_SECONDS);
+        URI uri = URI.create(url);
+        log.debug("Shared suggestion cache enabled at " + uri.getHost() + ":" + uri.getPort() + ". Timeout(ms): "
+                + timeoutMillis + ", TTL(s): " + ttlSeconds);
+        // Opens on the first failures, and probes the shared cache again after a few seconds
+        CircuitBreaker circuitBreaker = new CircuitBreaker("Suggest L2 cache", 10, 3, 50, timeoutMillis, 100,
+                5000, 1, System::currentTimeMillis);
+        return new TieredSuggestionCache(localCache, RedisSharedCache.fromUri(uri, (int) timeoutMillis),
+                ttlSeconds * 1000, circuitBreaker,
+                (int) Utils.getEnvAsLong(L2_WRITE_QUEUE_ENV_VAR, DEFAULT_WRITE_QUEUE));
+    }
+
+    /**
+     * Looks the response up in the L1 cache, then in the L2 cache. An L2 hit is copied to the L1 cache.
+     *
+     * @param query the normalized search query
+     * @param max   the maximum number of suggestions requested
+     * @return the cached response, or null on a miss in both levels
+     */
+    public Hit get(String query, String max) {
+        String body = localCache.get(query, max);
+        if (body != null) {
+            return new Hit(body, false);
+        }
+        if (sharedCache == null) {
+            return null;
+        }
+        try {
+            body = sharedCircuitBreaker.call(() -> sharedCache.get(key(query, max)));
+        } catch (Exception e) {
+            sharedErrors.incrementAndGet();
+            log.debug("Shared suggestion cache read failed: {}", e.getMessage());
+            return null;
+        }
+        if (body == null) {
+            sharedMisses.incrementAndGet();
+            return null;
+        }
+        sharedHits.incrementAndGet();
+        localCache.put(query, max, body);
+        return new Hit(body, true);
+    }
+
+    /**
+     * Caches the response in the L1 cache, and queues writing it to the L2 cache.
+     *
+     * @param query the normalized search query
+     * @param max   the maximum number of suggestions requested
+     * @param body  the response body to cache
+     */
+    public void put(String query, String max, String body) {
+        localCache.put(query, max, body);
+        if (sharedCache == null || body == null) {
+            return;
+        }
+        writer.execute(() -> {
+            try {
+                sharedCircuitBreaker.call(() -> {
+                    sharedCache.set(key(query, max), body, sharedTtlMillis);
+                    return null;
+                });
+            } catch (Exception e) {
+                sharedErrors.incrementAndGet();
+                log.debug("Shared suggestion cache write failed: {}", e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Returns the last known good response from the L1 cache. The L2 cache is not used, as it is most likely
+     * unavailable too when this fallback is needed.
+     *
+     * @see SuggestionCache#getStale
+     */
+    public String getStale(String query, String max) {
+        return localCache.getStale(query, max);
+    }
+
+    /**
+     * Closes the connections to the L2 cache. They are opened again on next use.
+     */
+    public void closeSharedConnections() {
+        if (sharedCache != null) {
+            sharedCache.close();
+        }
+    }
+
+    public SuggestionCache getLocalCache() {
+        return localCache;
+    }
+
+    public boolean isSharedCacheEnabled() {
+        return sharedCache != null;
+    }
+
+    public long getSharedHitCount() {
+        return sharedHits.get();
+    }
+
+    public long getSharedMissCount() {
+        return sharedMisses.get();
+    }
+
+    public long getSharedErrorCount() {
+        return sharedErrors.get();
+    }
+
+    public long getDroppedWriteCount() {
+        return droppedWrites.get();
+    }
+
+    /**
+     * @return number of queued L2 writes which have not completed yet
+     */
+    public long getPendingWriteCount() {
+        return writer == null ? 0 : writer.getTaskCount() - writer.getCompletedTaskCount();
+    }
+
+    @Override
+    public String toString() {
+        if (sharedCache == null) {
+            return localCache.toString();
+        }
+        return localCache + ", L2{hits=" + sharedHits + ", misses=" + sharedMisses + ", errors=" + sharedErrors
+                + ", droppedWrites=" + droppedWrites + ", circuit=" + sharedCircuitBreaker.getState() + "}";
+    }
+
+    private static String key(String query, String max) {
+        return KEY_PREFIX + max + ':' + query;
+    }
+}
@@ -0,0 +1,265 @@
+/*
+ * Copyright 2025 Samitha Chathuranga
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.nz.postal.address.details;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.nz.postal.address.Utils;
+import org.nz.postal.address.cache.SuggestionCache;
+import org.nz.postal.address.metrics.MetricNames;
+import org.nz.postal.address.upstream.Deadline;
+
+/**
+ * Cache of NZ Post address details, keyed on DPID, which is filled ahead of time: when suggestions are returned, the
+ * details of the top ranked ones are fetched in the background, so that the details lookup after the user picks a
+ * suggestion is usually answered from the cache.
+ * <p>
+ * Prefetches run on a small pool with a bounded queue, and are dropped rather than queued once it is full. They are
+ * skipped while the supplied condition (e.g. the NZ Post circuit being closed and not rate limited) does not hold, so
+ * they never compete with user requests for the upstream quota. Counters show how many prefetched entries were used.
+ * <p>
+ * In Lambda, background prefetches only run while the container is processing an invocation, so they complete during
+ * the following requests of the same user.
+ */
+public class AddressDetailsService {
+    public static final String PREFETCH_DEPTH_ENV_VAR = "DETAILS_PREFETCH_DEPTH";
+    public static final String PREFETCH_CONCURRENCY_ENV_VAR = "DETAILS_PREFETCH_CONCURRENCY";
+    public static final String CACHE_MAX_ENTRIES_ENV_VAR = "DETAILS_CACHE_MAX_ENTRIES";
+    public static final String CACHE_TTL_SECONDS_ENV_VAR = "DETAILS_CACHE_TTL_SECONDS";
+    private static final String DETAILS_KEY = "details";
+    private static final String ADDRESSES = "addresses";
+    private static final String DPID = "DPID";
+    private static final long PREFETCH_TIMEOUT_MILLIS = 5000;
+    private static final long MAX_CACHE_SIZE = 8 * 1024 * 1024;
+    private static final ObjectReader reader = new ObjectMapper().reader();
+    private static final Logger log = LogManager.getLogger(AddressDetailsService.class);
+
+    /**
+     * Fetches the details of an address from the upstream API.
+     */
+    @FunctionalInterface
+    public interface DetailsFetcher {
+        String fetch(String dpid, Deadline deadline) throws Exception;
+    }
+
+    private final DetailsFetcher fetcher;
+    private final SuggestionCache detailsCache;
+    private final int prefetchDepth;
+    private final BooleanSupplier prefetchAllowed;
+    private final ThreadPoolExecutor prefetchExecutor;
+    private final Set<String> inFlight = ConcurrentHashMap.newKeySet();
+    private final Map<String, Boolean> unusedPrefetches;
+    private final AtomicLong prefetches = new AtomicLong();
+    private final AtomicLong prefetchHits = new AtomicLong();
+    private final AtomicLong prefetchesDropped = new AtomicLong();
+    private final AtomicLong prefetchFailures = new AtomicLong();
+    private final AtomicLong onDemandFetches = new AtomicLong();
+
+    /**
+     * @param fetcher             fetches details from the upstream API
+     * @param detailsCache        cache of the details responses
+     * @param maxEntries          number of prefetched entries tracked for the usage counters
+     * @param prefetchDepth       number of top suggestions to prefetch details for, 0 disables prefetching
+     * @param prefetchConcurrency number of prefetches running at once
+     * @param prefetchAllowed     condition under which prefetches may call the upstream API
+     */
+    public AddressDetailsService(DetailsFetcher fetcher, SuggestionCache detailsCache, int maxEntries,
+                                 int prefetchDepth, int prefetchConcurrency, BooleanSupplier prefetchAllowed) {
+        this.fetcher = fetcher;
+        this.detailsCache = detailsCache;
+        this.prefetchDepth = prefetchDepth;
+        this.prefetchAllowed = prefetchAllowed;
+        this.unusedPrefetches = new LinkedHashMap<>(16, 0.75f, false) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                return size() > maxEntries;
+            }
+        };
+        int threads = Math.max(1, prefetchConcurrency);
+        this.prefetchExecutor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(threads * prefetchDepth + 1), runnable -> {
+                    Thread thread = new Thread(runnable, "details-prefetch");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    /**
+     * Creates a service configured from the DETAILS_* environment variables, falling back to defaults when unset.
+     *
+     * @param fetcher         fetches details from the upstream API
+     * @param prefetchAllowed condition under which prefetches may call the upstream API
+     * @return AddressDetailsService instance
+     */
+    public static AddressDetailsService fromEnvironment(DetailsFetcher fetcher, BooleanSupplier prefetchAllowed) {
+        int maxEntries = (int) Utils.getEnvAsLong(CACHE_MAX_ENTRIES_ENV_VAR, 2000);
+        long ttlSeconds = Utils.getEnvAsLong(CACHE_TTL_SECONDS_ENV_VAR, 3600);
+        int prefetchDepth = (int) Utils.getEnvAsLong(PREFETCH_DEPTH_ENV_VAR, 3);
+        int prefetchConcurrency = (int) Utils.getEnvAsLong(PREFETCH_CONCURRENCY_ENV_VAR, 2);
+        log.debug("Address details cache initialized. Max entries: " + maxEntries + ", TTL(s): " + ttlSeconds
+                + ", Prefetch depth: " + prefetchDepth + ", Prefetch concurrency: " + prefetchConcurrency);
+        return new AddressDetailsService(fetcher, new SuggestionCache(maxEntries, MAX_CACHE_SIZE, ttlSeconds * 1000),
+                maxEntries, prefetchDepth, prefetchConcurrency, prefetchAllowed);
+    }
+
+    /**
+     * Returns the cached details of the address.
+     *
+     * @param dpid DPID of the address
+     * @return cached details response body, or null if they are not cached
+     */
+    public String getCached(String dpid) {
+        String body = detailsCache.get(dpid, DETAILS_KEY);
+        if (body != null && markUsed(dpid)) {
+            prefetchHits.incrementAndGet();
+            Utils.getMetrics().increment(MetricNames.DETAILS_PREFETCH_HITS);
+        }
+        return body;
+    }
+
+    /**
+     * Fetches the details of the address from the upstream API and caches them.
+     *
+     * @param dpid     DPID of the address
+     * @param deadline the request deadline
+     * @return details response body
+     * @throws Exception if there is an error calling the API
+     */
+    public String fetch(String dpid, Deadline deadline) throws Exception {
+        onDemandFetches.incrementAndGet();
+        String body = fetcher.fetch(dpid, deadline);
+        detailsCache.put(dpid, DETAILS_KEY, body);
+        return body;
+    }
+
+    /**
+     * Schedules background fetches of the details of the top suggestions in a suggest response, for those which are
+     * not cached or being fetched already.
+     *
+     * @param suggestResponse suggest API response body
+     */
+    public void prefetch(String suggestResponse) {
+        if (prefetchDepth <= 0) {
+            return;
+        }
+        for (String dpid : topDpids(suggestResponse)) {
+            if (!detailsCache.contains(dpid, DETAILS_KEY) && inFlight.add(dpid)) {
+                try {
+                    prefetchExecutor.execute(() -> prefetchOne(dpid));
+                } catch (RejectedExecutionException e) {
+                    inFlight.remove(dpid);
+                    prefetchesDropped.incrementAndGet();
+                }
+            }
+        }
+    }
+
+    public long getPrefetches() {
+        return prefetches.get();
+    }
+
+    /**
+     * @return number of details lookups answered with a prefetched entry
+     */
+    public long getPrefetchHits() {
+        return prefetchHits.get();
+    }
+
+    public long getPrefetchesDropped() {
+        return prefetchesDropped.get();
+    }
+
+    public long getPrefetchFailures() {
+        return prefetchFailures.get();
+    }
+
+    public long getOnDemandFetches() {
+        return onDemandFetches.get();
+    }
+
+    /**
+     * @return number of prefetches queued or running
+     */
+    public int getPendingPrefetches() {
+        return inFlight.size();
+    }
+
+    @Override
+    public String toString() {
+        return "AddressDetailsService{prefetches=" + prefetches + ", prefetchHits=" + prefetchHits + ", dropped="
+                + prefetchesDropped + ", failures=" + prefetchFailures + ", onDemand=" + onDemandFetches + "}";
+    }
+
+    private void prefetchOne(String dpid) {
+        try {
+            if (!prefetchAllowed.getAsBoolean() || detailsCache.contains(dpid, DETAILS_KEY)) {
+                return;
+            }
+            detailsCache.put(dpid, DETAILS_KEY, fetcher.fetch(dpid, Deadline.ofMillis(PREFETCH_TIMEOUT_MILLIS)));
+            synchronized (unusedPrefetches) {
+                unusedPrefetches.put(dpid, Boolean.TRUE);
+            }
+            prefetches.incrementAndGet();
+            Utils.getMetrics().increment(MetricNames.DETAILS_PREFETCHES);
+        } catch (Exception e) {
+            prefetchFailures.incrementAndGet();
+            log.debug("Prefetching details of {} failed: {}", dpid, e.getMessage());
+        } finally {
+            inFlight.remove(dpid);
+        }
+    }
+
+    private boolean markUsed(String dpid) {
+        synchronized (unusedPrefetches) {
+            return unusedPrefetches.remove(dpid) != null;
+        }
+    }
+
+    private List<String> topDpids(String suggestResponse) {
+        List<String> dpids = new ArrayList<>(prefetchDepth);
+        try {
+            for (JsonNode address : reader.readTree(suggestResponse).path(ADDRESSES)) {
+                if (dpids.size() == prefetchDepth) {
+                    break;
+                }
+                JsonNode dpid = address.get(DPID);
+                if (dpid != null && !dpid.isNull()) {
+                    dpids.add(dpid.asText());
+                }
+            }
+        } catch (Exception e) {
+            log.debug("Not prefetching details, as the suggest response could not be parsed: {}", e.getMessage());
+        }
+        return dpids;
+    }
+}
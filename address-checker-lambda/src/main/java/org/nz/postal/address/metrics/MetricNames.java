@@ -0,0 +1,74 @@
+/*
+ * Copyright 2025 Samitha Chathuranga
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.nz.postal.address.metrics;
+
+/**
+ * Names of the metrics recorded in the {@link MetricsRegistry}.
+ */
+public final class MetricNames {
+    public static final String REQUEST_TIME = "RequestTime";
+    public static final String SECRETS_LOAD_TIME = "SecretsLoadTime";
+    public static final String TOKEN_FETCH_TIME = "TokenFetchTime";
+    public static final String TOKEN_REFRESHES = "TokenRefreshes";
+    public static final String TOKEN_REFRESH_FAILURES = "TokenRefreshFailures";
+    public static final String UPSTREAM_SUGGEST_TIME = "UpstreamSuggestTime";
+    /**
+     * Prefix of the per status code counters of upstream suggest responses, e.g. UpstreamStatus200.
+     */
+    public static final String UPSTREAM_STATUS_PREFIX = "UpstreamStatus";
+    public static final String UPSTREAM_ERRORS = "UpstreamErrors";
+    public static final String UPSTREAM_RATE_LIMITED = "UpstreamRateLimited";
+    public static final String UPSTREAM_RATE_LIMIT_WAIT_TIME = "UpstreamRateLimitWaitTime";
+    public static final String UPSTREAM_HEDGES_SENT = "UpstreamHedgesSent";
+    /**
+     * Hedges which were due but not sent, as no rate limit token was available for them.
+     */
+    public static final String UPSTREAM_HEDGES_SKIPPED = "UpstreamHedgesSkipped";
+    /**
+     * Hedged requests which returned before the attempt they duplicated, to compare with {@link #UPSTREAM_HEDGES_SENT}.
+     */
+    public static final String UPSTREAM_HEDGE_WINS = "UpstreamHedgeWins";
+    public static final String UPSTREAM_DEADLINES_EXCEEDED = "UpstreamDeadlinesExceeded";
+    public static final String UPSTREAM_DETAILS_TIME = "UpstreamDetailsTime";
+    public static final String DETAILS_PREFETCHES = "DetailsPrefetches";
+    /**
+     * Details lookups answered with a prefetched entry, to compare with {@link #DETAILS_PREFETCHES}.
+     */
+    public static final String DETAILS_PREFETCH_HITS = "DetailsPrefetchHits";
+    /**
+     * Prefix of the per circuit breaker counters. It is followed by the circuit name without spaces and
+     * {@link #CIRCUIT_REJECTED_CALLS}, or {@link #CIRCUIT_TRANSITIONS_TO} and the new state, e.g.
+     * CircuitNZPostRejectedCalls or CircuitNZPostTransitionsToOPEN.
+     */
+    public static final String CIRCUIT_PREFIX = "Circuit";
+    public static final String CIRCUIT_REJECTED_CALLS = "RejectedCalls";
+    public static final String CIRCUIT_TRANSITIONS_TO = "TransitionsTo";
+    /**
+     * Stale suggestions served while the NZ Post circuit is open, a subset of the CacheSTALE count.
+     */
+    public static final String STALE_WHILE_CIRCUIT_OPEN = "StaleWhileCircuitOpen";
+    public static final String RESPONSE_BUILD_TIME = "ResponseBuildTime";
+    /**
+     * Prefix of the per cache status counters, e.g. CacheHIT or CacheSTALE.
+     */
+    public static final String CACHE_PREFIX = "Cache";
+    public static final String COLD_STARTS = "ColdStarts";
+    public static final String WARM_STARTS = "WarmStarts";
+
+    private MetricNames() {
+    }
+}
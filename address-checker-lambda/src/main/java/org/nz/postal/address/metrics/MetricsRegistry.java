@@ -0,0 +1,279 @@
+/*
+ * Copyright 2025 Samitha Chathuranga
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.nz.postal.address.metrics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * In-memory registry of counters and timers, which are emitted as CloudWatch embedded metric format (EMF) log lines.
+ * <p>
+ * Values recorded since the last {@link #flush()} are written as one EMF JSON line, which CloudWatch turns into
+ * metrics without any API calls from the function. Running totals are kept alongside, so that tests and debug logs can
+ * inspect what was recorded. EMF allows at most {@value #MAX_VALUES_PER_METRIC} values per metric in a line, so
+ * further timer values until the next flush are only added to the totals.
+ * <p>
+ * A line is written on every invocation, so the pending values are kept in reusable arrays and the line is written
+ * with a reusable buffer rather than a JSON tree.
+ */
+public class MetricsRegistry {
+    public static final String NAMESPACE_ENV_VAR = "METRICS_NAMESPACE";
+    public static final String EMF_ENABLED_ENV_VAR = "METRICS_EMF_ENABLED";
+    /**
+     * Logger the EMF lines are written to. It is configured to write the bare message, as CloudWatch only picks up
+     * lines which are JSON objects.
+     */
+    public static final String EMF_LOGGER_NAME = "org.nz.postal.address.metrics.EMF";
+    public static final String UNIT_MILLISECONDS = "Milliseconds";
+    public static final String UNIT_COUNT = "Count";
+    static final int MAX_VALUES_PER_METRIC = 100;
+    private static final String DEFAULT_NAMESPACE = "NZPostAddressChecker";
+    private static final String FUNCTION_NAME_DIMENSION = "FunctionName";
+    private static final String LAMBDA_FUNCTION_NAME_ENV_VAR = "AWS_LAMBDA_FUNCTION_NAME";
+    private static final Logger log = LogManager.getLogger(MetricsRegistry.class);
+    private static final Logger emfLog = LogManager.getLogger(EMF_LOGGER_NAME);
+
+    private final String namespace;
+    private final String functionName;
+    private final boolean emfEnabled;
+    private final LongSupplier clock;
+    private final Map<String, LongAdder> counts = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> timerTotals = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> timerCounts = new ConcurrentHashMap<>();
+    private final Map<String, Pending> pending = new LinkedHashMap<>();
+    private final StringBuilder line = new StringBuilder(1024);
+    private int pendingMetrics;
+
+    public MetricsRegistry(String namespace, String functionName, boolean emfEnabled, LongSupplier clock) {
+        this.namespace = namespace;
+        this.functionName = functionName;
+        this.emfEnabled = emfEnabled;
+        this.clock = clock;
+    }
+
+    /**
+     * Creates a registry with the namespace configured in the environment, and the Lambda function name as its
+     * dimension.
+     *
+     * @return MetricsRegistry instance
+     */
+    public static MetricsRegistry fromEnvironment() {
+        String namespace = System.getenv().getOrDefault(NAMESPACE_ENV_VAR, DEFAULT_NAMESPACE);
+        String functionName = System.getenv().getOrDefault(LAMBDA_FUNCTION_NAME_ENV_VAR, "local");
+        boolean emfEnabled = Boolean.parseBoolean(System.getenv().getOrDefault(EMF_ENABLED_ENV_VAR, "true"));
+        return new MetricsRegistry(namespace, functionName, emfEnabled, System::currentTimeMillis);
+    }
+
+    public void increment(String name) {
+        increment(name, 1);
+    }
+
+    public void increment(String name, long delta) {
+        counts.computeIfAbsent(name, key -> new LongAdder()).add(delta);
+        synchronized (pending) {
+            Pending values = pending(name, UNIT_COUNT);
+            if (values.size == 0) {
+                values.values[0] = delta;
+                values.size = 1;
+            } else {
+                values.values[0] += delta;
+            }
+        }
+    }
+
+    /**
+     * Records the time elapsed since the given start.
+     *
+     * @param name       timer name
+     * @param startNanos start of the timed phase, from {@link System#nanoTime()}
+     */
+    public void recordTimeSince(String name, long startNanos) {
+        recordTime(name, (System.nanoTime() - startNanos) / 1_000_000);
+    }
+
+    public void recordTime(String name, long millis) {
+        timerTotals.computeIfAbsent(name, key -> new LongAdder()).add(millis);
+        timerCounts.computeIfAbsent(name, key -> new LongAdder()).increment();
+        synchronized (pending) {
+            Pending values = pending(name, UNIT_MILLISECONDS);
+            if (values.size < MAX_VALUES_PER_METRIC) {
+                values.values[values.size++] = millis;
+            }
+        }
+    }
+
+    /**
+     * Returns the running total of a counter.
+     *
+     * @param name counter name
+     * @return total of all increments
+     */
+    public long getCount(String name) {
+        LongAdder count = counts.get(name);
+        return count == null ? 0 : count.sum();
+    }
+
+    /**
+     * Returns how many times a timer was recorded.
+     *
+     * @param name timer name
+     * @return number of recorded times
+     */
+    public long getTimerCount(String name) {
+        LongAdder count = timerCounts.get(name);
+        return count == null ? 0 : count.sum();
+    }
+
+    /**
+     * Returns the sum of all times recorded for a timer.
+     *
+     * @param name timer name
+     * @return total time in milliseconds
+     */
+    public long getTimerTotalMillis(String name) {
+        LongAdder total = timerTotals.get(name);
+        return total == null ? 0 : total.sum();
+    }
+
+    /**
+     * Writes the values recorded since the last flush as one EMF log line, and starts collecting anew.
+     *
+     * @return the EMF line, or null if nothing was recorded
+     */
+    public String flush() {
+        String emf;
+        synchronized (pending) {
+            if (pendingMetrics == 0) {
+                return null;
+            }
+            emf = toEmf();
+        }
+        if (emfEnabled) {
+            emfLog.info(emf);
+        }
+        return emf;
+    }
+
+    /**
+     * Clears the running totals and the values not flushed yet.
+     */
+    public void reset() {
+        counts.clear();
+        timerTotals.clear();
+        timerCounts.clear();
+        synchronized (pending) {
+            pending.clear();
+            pendingMetrics = 0;
+        }
+    }
+
+    /**
+     * Returns the values pending for a metric, counting it as pending when it has none yet. Called holding the lock.
+     */
+    private Pending pending(String name, String unit) {
+        Pending values = pending.get(name);
+        if (values == null) {
+            values = new Pending(unit);
+            pending.put(name, values);
+        }
+        if (values.size == 0) {
+            pendingMetrics++;
+        }
+        return values;
+    }
+
+    /**
+     * Writes the pending values as an EMF line and resets them. Called holding the lock.
+     */
+    private String toEmf() {
+        line.setLength(0);
+        line.append("{\"_aws\":{\"Timestamp\":").append(clock.getAsLong())
+                .append(",\"CloudWatchMetrics\":[{\"Namespace\":");
+        appendString(namespace);
+        line.append(",\"Dimensions\":[[\"").append(FUNCTION_NAME_DIMENSION).append("\"]],\"Metrics\":[");
+        boolean first = true;
+        for (Map.Entry<String, Pending> metric : pending.entrySet()) {
+            if (metric.getValue().size > 0) {
+                line.append(first ? "{\"Name\":" : ",{\"Name\":");
+                appendString(metric.getKey());
+                line.append(",\"Unit\":\"").append(metric.getValue().unit).append("\"}");
+                first = false;
+            }
+        }
+        line.append("]}]},\"").append(FUNCTION_NAME_DIMENSION).append("\":");
+        appendString(functionName);
+        for (Map.Entry<String, Pending> metric : pending.entrySet()) {
+            Pending values = metric.getValue();
+            if (values.size == 0) {
+                continue;
+            }
+            line.append(',');
+            appendString(metric.getKey());
+            line.append(':');
+            if (values.size == 1) {
+                line.append(values.values[0]);
+            } else {
+                line.append('[');
+                for (int i = 0; i < values.size; i++) {
+                    if (i > 0) {
+                        line.append(',');
+                    }
+                    line.append(values.values[i]);
+                }
+                line.append(']');
+            }
+            values.size = 0;
+        }
+        line.append('}');
+        if (log.isTraceEnabled()) {
+            log.trace("Flushing {} metrics", pendingMetrics);
+        }
+        pendingMetrics = 0;
+        return line.toString();
+    }
+
+    private void appendString(String value) {
+        line.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                line.append('\\').append(c);
+            } else if (c < 0x20) {
+                line.append(String.format("\\u%04x", (int) c));
+            } else {
+                line.append(c);
+            }
+        }
+        line.append('"');
+    }
+
+    private static final class Pending {
+        private final String unit;
+        private final long[] values = new long[MAX_VALUES_PER_METRIC];
+        private int size;
+
+        private Pending(String unit) {
+            this.unit = unit;
+        }
+    }
+}
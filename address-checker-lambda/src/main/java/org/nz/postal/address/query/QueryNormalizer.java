@@ -0,0 +1,179 @@
+/*
+ * Copyright 2025 Samitha Chathuranga
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.nz.postal.address.query;
+
+import java.text.Normalizer;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.nz.postal.address.Utils;
+import org.nz.postal.address.exception.BadRequestException;
+
+import static java.net.HttpURLConnection.HTTP_BAD_REQUEST;
+
+/**
+ * Canonicalizes suggest queries before they reach the caches and the NZ Post API, so that "1 queen st",
+ * "1  Queen Street " and "1 QUEEN ST" share one cache entry and one upstream call.
+ * <ul>
+ *     <li>Case, macrons and other diacritics, punctuation and runs of whitespace are folded</li>
+ *     <li>Common NZ street type abbreviations are expanded when they end a street name, that is when they are the last
+ *     word or directly follow a number and one name word, so "St Heliers" and "Mt St John" keep their "St"</li>
+ *     <li>max is validated as a number and clamped to 1..SUGGEST_MAX_LIMIT</li>
+ *     <li>Queries with fewer than QUERY_MIN_LENGTH letters and digits are flagged, to be answered locally</li>
+ * </ul>
+ */
+public class QueryNormalizer {
+    public static final String MIN_QUERY_LENGTH_ENV_VAR = "QUERY_MIN_LENGTH";
+    public static final String MAX_LIMIT_ENV_VAR = "SUGGEST_MAX_LIMIT";
+    public static final String DEFAULT_MAX = "5";
+    private static final int DEFAULT_MIN_QUERY_LENGTH = 3;
+    private static final int DEFAULT_MAX_LIMIT = 50;
+    private static final Pattern COMBINING_MARKS = Pattern.compile("\\p{M}+");
+    // Slashes, hyphens and apostrophes are part of unit numbers and street names, e.g. 2/10 or O'Connell
+    private static final Pattern SEPARATORS = Pattern.compile("[^\\p{L}\\p{N}/'-]+");
+    private static final Map<String, String> STREET_TYPES = Map.ofEntries(
+            Map.entry("st", "street"),
+            Map.entry("rd", "road"),
+            Map.entry("ave", "avenue"),
+            Map.entry("av", "avenue"),
+            Map.entry("dr", "drive"),
+            Map.entry("pl", "place"),
+            Map.entry("cres", "crescent"),
+            Map.entry("cr", "crescent"),
+            Map.entry("tce", "terrace"),
+            Map.entry("hwy", "highway"),
+            Map.entry("ln", "lane"),
+            Map.entry("ct", "court"),
+            Map.entry("pde", "parade"),
+            Map.entry("gr", "grove"),
+            Map.entry("sq", "square"),
+            Map.entry("blvd", "boulevard"),
+            Map.entry("cl", "close"),
+            Map.entry("esp", "esplanade"));
+    private static final Logger log = LogManager.getLogger(QueryNormalizer.class);
+
+    private final int minQueryLength;
+    private final int maxLimit;
+
+    public QueryNormalizer(int minQueryLength, int maxLimit) {
+        if (maxLimit <= 0) {
+            throw new IllegalArgumentException("Max suggestions limit must be positive");
+        }
+        this.minQueryLength = minQueryLength;
+        this.maxLimit = maxLimit;
+    }
+
+    public static QueryNormalizer fromEnvironment() {
+        int minQueryLength = (int) Utils.getEnvAsLong(MIN_QUERY_LENGTH_ENV_VAR, DEFAULT_MIN_QUERY_LENGTH);
+        int maxLimit = (int) Utils.getEnvAsLong(MAX_LIMIT_ENV_VAR, DEFAULT_MAX_LIMIT);
+        log.debug("Query normalizer initialized. Min query length: " + minQueryLength + ", Max limit: " + maxLimit);
+        return new QueryNormalizer(minQueryLength, maxLimit);
+    }
+
+    /**
+     * Returns the canonical form of the query: folded, with street type abbreviations expanded where they end a street
+     * name, as in "1 queen st" or "1 queen st auckland".
+     *
+     * @param query the query as typed
+     * @return canonical query, empty if nothing is left after folding
+     */
+    public String normalizeQuery(String query) {
+        String folded = fold(query);
+        if (folded.isEmpty()) {
+            return folded;
+        }
+        String[] words = folded.split(" ");
+        StringBuilder normalized = new StringBuilder(folded.length() + 16);
+        for (int i = 0; i < words.length; i++) {
+            String word = words[i];
+            if (i > 0) {
+                normalized.append(' ');
+                String expanded = STREET_TYPES.get(word);
+                if (expanded != null && isNameWord(words[i - 1])
+                        && (i == words.length - 1 || i >= 2 && !isNameWord(words[i - 2]))) {
+                    word = expanded;
+                }
+            }
+            normalized.append(word);
+        }
+        return normalized.toString();
+    }
+
+    /**
+     * Validates the max parameter and clamps it to the allowed range.
+     *
+     * @param max the max parameter, may be null
+     * @return max as a canonical number string
+     * @throws BadRequestException if max is not a number
+     */
+    public String normalizeMax(String max) throws BadRequestException {
+        if (max == null || max.isBlank()) {
+            return DEFAULT_MAX;
+        }
+        int value;
+        try {
+            value = Integer.parseInt(max.trim());
+        } catch (NumberFormatException e) {
+            Utils.handleBadRequestError("Query parameter max must be a number.", HTTP_BAD_REQUEST);
+            return null;
+        }
+        return String.valueOf(Math.max(1, Math.min(maxLimit, value)));
+    }
+
+    /**
+     * Returns true if the normalized query has too few letters and digits to be worth sending to NZ Post.
+     *
+     * @param normalizedQuery the canonical query
+     * @return whether the query is too short
+     */
+    public boolean isTooShort(String normalizedQuery) {
+        int significant = 0;
+        for (int i = 0; i < normalizedQuery.length() && significant < minQueryLength; i++) {
+            if (Character.isLetterOrDigit(normalizedQuery.charAt(i))) {
+                significant++;
+            }
+        }
+        return significant < minQueryLength;
+    }
+
+    /**
+     * Folds case, diacritics (such as the macrons of Maori place names), punctuation and whitespace, so that text
+     * typed in any of these forms compares equal.
+     *
+     * @param text the text to fold, may be null
+     * @return folded text
+     */
+    public static String fold(String text) {
+        if (text == null || text.isEmpty()) {
+            return "";
+        }
+        String stripped = COMBINING_MARKS.matcher(Normalizer.normalize(text, Normalizer.Form.NFD)).replaceAll("");
+        return SEPARATORS.matcher(stripped.toLowerCase(Locale.ROOT)).replaceAll(" ").trim();
+    }
+
+    private static boolean isNameWord(String word) {
+        for (int i = 0; i < word.length(); i++) {
+            if (Character.isDigit(word.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright 2025 Samitha Chathuranga
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.nz.postal.address.response;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.nz.postal.address.Utils;
+
+/**
+ * Compresses response bodies with gzip or deflate, when the client accepts one of them in its Accept-Encoding header
+ * and the body is at least RESPONSE_COMPRESSION_MIN_BYTES long. Compressed bodies are returned base64 encoded, as
+ * API Gateway expects for binary payloads.
+ * <p>
+ * Brotli is not offered, as the JDK has no brotli encoder and the native ones would add to the deployment package and
+ * the cold start.
+ */
+public class ResponseCompressor {
+    public static final String MIN_BYTES_ENV_VAR = "RESPONSE_COMPRESSION_MIN_BYTES";
+    public static final String ACCEPT_ENCODING = "Accept-Encoding";
+    public static final String CONTENT_ENCODING = "Content-Encoding";
+    public static final String VARY = "Vary";
+    public static final String GZIP = "gzip";
+    public static final String DEFLATE = "deflate";
+    private static final long DEFAULT_MIN_BYTES = 1024;
+    private static final Logger log = LogManager.getLogger(ResponseCompressor.class);
+
+    private final long minBytes;
+
+    /**
+     * @param minBytes size in bytes from which bodies are compressed, or a negative value to never compress
+     */
+    public ResponseCompressor(long minBytes) {
+        this.minBytes = minBytes;
+    }
+
+    public static ResponseCompressor fromEnvironment() {
+        return new ResponseCompressor(Utils.getEnvAsLong(MIN_BYTES_ENV_VAR, DEFAULT_MIN_BYTES));
+    }
+
+    /**
+     * @return false if bodies are never compressed
+     */
+    public boolean isEnabled() {
+        return minBytes >= 0;
+    }
+
+    /**
+     * Compresses the body of the response in place with the best encoding the client accepts, if any. The headers of
+     * the response may be shared and immutable, so they are replaced with a copy when a header has to be added.
+     *
+     * @param response       the response to compress
+     * @param acceptEncoding the Accept-Encoding request header, may be null
+     * @return the same response
+     */
+    public APIGatewayProxyResponseEvent compress(APIGatewayProxyResponseEvent response, String acceptEncoding) {
+        String body = response.getBody();
+        if (minBytes < 0 || body == null || Boolean.TRUE.equals(response.getIsBase64Encoded())) {
+            return response;
+        }
+        Map<String, String> headers = response.getHeaders();
+        if (headers == null || !ACCEPT_ENCODING.equals(headers.get(VARY))) {
+            headers = headers == null ? new HashMap<>() : new HashMap<>(headers);
+            headers.put(VARY, ACCEPT_ENCODING);
+            response.setHeaders(headers);
+        }
+        String encoding = negotiate(acceptEncoding);
+        if (encoding == null) {
+            return response;
+        }
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length < minBytes) {
+            return response;
+        }
+        try {
+            byte[] compressed = encode(bytes, encoding);
+            if (compressed.length >= bytes.length) {
+                return response;
+            }
+            if (log.isDebugEnabled()) {
+                log.debug("Compressed response with " + encoding + " from " + bytes.length + " to "
+                        + compressed.length + " bytes");
+            }
+            headers = new HashMap<>(headers);
+            headers.put(CONTENT_ENCODING, encoding);
+            response.setHeaders(headers);
+            response.setBody(Base64.getEncoder().encodeToString(compressed));
+            response.setIsBase64Encoded(true);
+        } catch (IOException e) {
+            log.warn("Could not compress response with " + encoding + ": " + e.getMessage());
+        }
+        return response;
+    }
+
+    /**
+     * Picks gzip or deflate from the Accept-Encoding header, honouring q values. Gzip is preferred when both are
+     * accepted with the same q value.
+     *
+     * @param acceptEncoding the Accept-Encoding request header, may be null
+     * @return the encoding to use, or null if neither is accepted
+     */
+    static String negotiate(String acceptEncoding) {
+        if (acceptEncoding == null || acceptEncoding.isBlank()) {
+            return null;
+        }
+        double gzipQuality = -1;
+        double deflateQuality = -1;
+        double wildcardQuality = -1;
+        for (String part : acceptEncoding.toLowerCase(Locale.ROOT).split(",")) {
+            String[] params = part.split(";");
+            String coding = params[0].trim();
+            double quality = 1;
+            for (int i = 1; i < params.length; i++) {
+                String param = params[i].trim();
+                if (param.startsWith("q=")) {
+                    try {
+                        quality = Double.parseDouble(param.substring(2));
+                    } catch (NumberFormatException e) {
+                        quality = 0;
+                    }
+                }
+            }
+            if (GZIP.equals(coding)) {
+                gzipQuality = quality;
+            } else if (DEFLATE.equals(coding)) {
+                deflateQuality = quality;
+            } else if ("*".equals(coding)) {
+                wildcardQuality = quality;
+            }
+        }
+        gzipQuality = gzipQuality < 0 ? wildcardQuality : gzipQuality;
+        deflateQuality = deflateQuality < 0 ? wildcardQuality : deflateQuality;
+        if (gzipQuality <= 0 && deflateQuality <= 0) {
+            return null;
+        }
+        return gzipQuality >= deflateQuality ? GZIP : DEFLATE;
+    }
+
+    private static byte[] encode(byte[] bytes, String encoding) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(bytes.length / 2);
+        try (OutputStream outputStream = GZIP.equals(encoding)
+                ? new GZIPOutputStream(compressed) : new DeflaterOutputStream(compressed)) {
+            outputStream.write(bytes);
+        }
+        return compressed.toByteArray();
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2025 Samitha Chathuranga
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.nz.postal.address.response;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.nz.postal.address.upstream.BodyReader;
+
+/**
+ * Projects NZ Post suggest API responses down to the address fields the web app uses, while the response is streamed
+ * from the upstream connection, so the full upstream body is never held as a String. Top level fields such as
+ * {@code success} and {@code status} are kept as they are, and each object in the {@code addresses} array keeps only
+ * the configured fields.
+ * <p>
+ * The fields are read from the SUGGEST_RESPONSE_FIELDS environment variable as a comma separated list, and "*" turns
+ * the projection off. Prefix narrowing matches on {@code FullAddress}, so it should stay in the list.
+ */
+public class SuggestResponseProjector implements BodyReader {
+    public static final String RESPONSE_FIELDS_ENV_VAR = "SUGGEST_RESPONSE_FIELDS";
+    public static final String ALL_FIELDS = "*";
+    private static final String DEFAULT_FIELDS = "DPID,FullAddress";
+    private static final String ADDRESSES = "addresses";
+    private static final JsonFactory jsonFactory = new JsonFactory();
+    private static final Logger log = LogManager.getLogger(SuggestResponseProjector.class);
+
+    private final Set<String> fields;
+
+    /**
+     * @param fields address fields to keep, or null to keep the whole response
+     */
+    public SuggestResponseProjector(Set<String> fields) {
+        this.fields = fields;
+    }
+
+    /**
+     * Creates a projector for the fields configured in the environment.
+     *
+     * @return SuggestResponseProjector instance
+     */
+    public static SuggestResponseProjector fromEnvironment() {
+        String configuredFields = System.getenv().getOrDefault(RESPONSE_FIELDS_ENV_VAR, DEFAULT_FIELDS).trim();
+        log.debug("Suggest response fields: " + configuredFields);
+        if (ALL_FIELDS.equals(configuredFields)) {
+            return new SuggestResponseProjector(null);
+        }
+        Set<String> fields = new LinkedHashSet<>();
+        Arrays.stream(configuredFields.split(",")).map(String::trim).filter(field -> !field.isEmpty())
+                .forEach(fields::add);
+        return new SuggestResponseProjector(fields);
+    }
+
+    /**
+     * Reads the suggest response from the stream, keeping only the configured address fields.
+     *
+     * @param body the upstream response body
+     * @return the projected response
+     * @throws IOException if the body could not be read or is not valid JSON
+     */
+    @Override
+    public String read(InputStream body) throws IOException {
+        if (fields == null) {
+            return BodyReader.STRING.read(body);
+        }
+        StringWriter writer = new StringWriter();
+        try (JsonParser parser = jsonFactory.createParser(body);
+             JsonGenerator generator = jsonFactory.createGenerator(writer)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                generator.copyCurrentStructure(parser);
+            } else {
+                generator.writeStartObject();
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String name = parser.getCurrentName();
+                    generator.writeFieldName(name);
+                    if (parser.nextToken() == JsonToken.START_ARRAY && ADDRESSES.equals(name)) {
+                        writeAddresses(parser, generator);
+                    } else {
+                        generator.copyCurrentStructure(parser);
+                    }
+                }
+                generator.writeEndObject();
+            }
+        }
+        return writer.toString();
+    }
+
+    private void writeAddresses(JsonParser parser, JsonGenerator generator) throws IOException {
+        generator.writeStartArray();
+        JsonToken token;
+        while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+            if (token != JsonToken.START_OBJECT) {
+                generator.copyCurrentStructure(parser);
+                continue;
+            }
+            generator.writeStartObject();
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.getCurrentName();
+                parser.nextToken();
+                if (fields.contains(name)) {
+                    generator.writeFieldName(name);
+                    generator.copyCurrentStructure(parser);
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            generator.writeEndObject();
+        }
+        generator.writeEndArray();
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2025 Samitha Chathuranga
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.nz.postal.address.secrets;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+
+/**
+ * Reads the client credentials for local runs and benchmarks, either from a JSON file in the same format as the
+ * Secrets Manager secret, or from the NZ_POST_API_CLIENT_ID and NZ_POST_API_CLIENT_SECRET environment variables.
+ * The file is read again on every fetch, so credentials rotated in it are picked up.
+ */
+public class EnvironmentSecretsProvider implements SecretsProvider {
+    public static final String CLIENT_ID_ENV_VAR = "NZ_POST_API_CLIENT_ID";
+    public static final String CLIENT_SECRET_ENV_VAR = "NZ_POST_API_CLIENT_SECRET";
+    public static final String CREDENTIALS_FILE_ENV_VAR = "NZ_POST_API_CREDENTIALS_FILE";
+    private static final ObjectReader secretsReader = new ObjectMapper().readerFor(
+            new TypeReference<Map<String, String>>() {
+            });
+
+    private final Path credentialsFile;
+    private final String clientId;
+    private final String clientSecret;
+
+    /**
+     * @param credentialsFile JSON file with the client_id and client_secret, or null to use the given values
+     * @param clientId        client id used when there is no file
+     * @param clientSecret    client secret used when there is no file
+     */
+    public EnvironmentSecretsProvider(Path credentialsFile, String clientId, String clientSecret) {
+        this.credentialsFile = credentialsFile;
+        this.clientId = clientId;
+        this.clientSecret = clientSecret;
+    }
+
+    /**
+     * Creates a provider from the environment, or returns null if neither a credentials file nor both client
+     * credentials are set.
+     *
+     * @return EnvironmentSecretsProvider instance or null
+     */
+    public static EnvironmentSecretsProvider fromEnvironment() {
+        String file = System.getenv(CREDENTIALS_FILE_ENV_VAR);
+        String clientId = System.getenv(CLIENT_ID_ENV_VAR);
+        String clientSecret = System.getenv(CLIENT_SECRET_ENV_VAR);
+        if (file == null && (clientId == null || clientSecret == null)) {
+            return null;
+        }
+        return new EnvironmentSecretsProvider(file == null ? null : Path.of(file), clientId, clientSecret);
+    }
+
+    @Override
+    public Map<String, String> fetch() throws Exception {
+        if (credentialsFile != null) {
+            return secretsReader.readValue(Files.readString(credentialsFile));
+        }
+        Map<String, String> secrets = new HashMap<>();
+        secrets.put(CLIENT_ID, clientId);
+        secrets.put(CLIENT_SECRET, clientSecret);
+        return secrets;
+    }
+}
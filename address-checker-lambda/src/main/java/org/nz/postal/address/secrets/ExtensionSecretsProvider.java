@@ -0,0 +1,84 @@
+/*
+ * Copyright 2025 Samitha Chathuranga
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.nz.postal.address.secrets;
+
+import java.net.URI;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.nz.postal.address.Utils;
+import org.nz.postal.address.upstream.UpstreamResponse;
+
+import static java.net.HttpURLConnection.HTTP_OK;
+
+/**
+ * Reads the secrets through the AWS Parameters and Secrets Lambda extension, which serves (and caches) Secrets Manager
+ * secrets on localhost, so that the function does not need the AWS SDK on its start up path. The request goes through
+ * the pooled upstream transport.
+ */
+public class ExtensionSecretsProvider implements SecretsProvider {
+    public static final String EXTENSION_PORT_ENV_VAR = "PARAMETERS_SECRETS_EXTENSION_HTTP_PORT";
+    public static final int DEFAULT_EXTENSION_PORT = 2773;
+    private static final String TOKEN_HEADER = "X-Aws-Parameters-Secrets-Token";
+    private static final String SESSION_TOKEN_ENV_VAR = "AWS_SESSION_TOKEN";
+    private static final ObjectReader secretsReader = new ObjectMapper().readerFor(
+            new TypeReference<Map<String, String>>() {
+            });
+    private static final Logger log = LogManager.getLogger(ExtensionSecretsProvider.class);
+
+    private final URI uri;
+    private final String sessionToken;
+
+    /**
+     * @param baseUrl      base URL of the extension, e.g. http://localhost:2773
+     * @param secretName   name or ARN of the secret
+     * @param sessionToken session token of the function, which the extension requires on every request
+     */
+    public ExtensionSecretsProvider(String baseUrl, String secretName, String sessionToken) {
+        this.uri = URI.create(baseUrl + "/secretsmanager/get?secretId="
+                + URLEncoder.encode(secretName, StandardCharsets.UTF_8));
+        this.sessionToken = sessionToken;
+    }
+
+    public static ExtensionSecretsProvider fromEnvironment(String secretName) {
+        long port = Utils.getEnvAsLong(EXTENSION_PORT_ENV_VAR, DEFAULT_EXTENSION_PORT);
+        return new ExtensionSecretsProvider("http://localhost:" + port, secretName,
+                System.getenv(SESSION_TOKEN_ENV_VAR));
+    }
+
+    @Override
+    public Map<String, String> fetch() throws Exception {
+        UpstreamResponse response = Utils.getUpstreamTransport().get(uri,
+                sessionToken == null ? Map.of() : Map.of(TOKEN_HEADER, sessionToken));
+        if (response.getStatusCode() != HTTP_OK) {
+            Utils.handleUpstreamServerError("Error fetching secret from the Parameters and Secrets extension. "
+                    + response.getReasonPhrase(), response.getStatusCode());
+        }
+        String secretString = secretsReader.readTree(response.getBody()).path("SecretString").asText(null);
+        if (secretString == null) {
+            throw new IllegalStateException("Parameters and Secrets extension response has no SecretString");
+        }
+        log.debug("Retrieved secret values related to NZ Post AddressChecker API invocation from the extension");
+        return secretsReader.readValue(secretString);
+    }
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright 2025 Samitha Chathuranga
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.nz.postal.address.secrets;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.nz.postal.address.Utils;
+import org.nz.postal.address.metrics.MetricNames;
+import software.amazon.awssdk.regions.Region;
+
+/**
+ * Caches the secrets of a {@link SecretsProvider} for a TTL, so that rotated credentials are picked up without a
+ * new container.
+ * <ul>
+ *     <li>Secrets are fetched on first use. Once the TTL has passed, the next caller fetches them again while
+ *     concurrent callers keep using the current ones.</li>
+ *     <li>If a refresh fails, the current secrets are kept and the refresh is retried after a short delay.</li>
+ *     <li>Secrets rejected by the token endpoint can be refreshed immediately with {@link #refresh()}.</li>
+ * </ul>
+ * The provider is selected with the SECRETS_PROVIDER environment variable:
+ * <ul>
+ *     <li>secretsmanager - AWS Secrets Manager through the AWS SDK</li>
+ *     <li>extension - the AWS Parameters and Secrets Lambda extension on localhost</li>
+ *     <li>environment - a credentials file or the client credential environment variables, for local runs</li>
+ * </ul>
+ * It defaults to environment when the credentials are set in the environment, and to secretsmanager otherwise.
+ */
+public class SecretsCache {
+    public static final String SECRETS_PROVIDER_ENV_VAR = "SECRETS_PROVIDER";
+    public static final String SECRETS_TTL_SECONDS_ENV_VAR = "SECRETS_TTL_SECONDS";
+    public static final String SECRET_NAME_ENV_VAR = "NZ_POST_API_CLIENT_SECRET_NAME";
+    public static final String PROVIDER_SECRETS_MANAGER = "secretsmanager";
+    public static final String PROVIDER_EXTENSION = "extension";
+    public static final String PROVIDER_ENVIRONMENT = "environment";
+    private static final long DEFAULT_TTL_SECONDS = 3600;
+    private static final long RETRY_DELAY_MILLIS = 30_000;
+    private static final Logger log = LogManager.getLogger(SecretsCache.class);
+
+    private final SecretsProvider provider;
+    private final long ttlMillis;
+    private final LongSupplier clock;
+    private final Object refreshLock = new Object();
+    private volatile Map<String, String> secrets;
+    private volatile long refreshAt;
+    private volatile boolean refreshing;
+
+    public SecretsCache(SecretsProvider provider, long ttlMillis, LongSupplier clock) {
+        this.provider = provider;
+        this.ttlMillis = ttlMillis;
+        this.clock = clock;
+    }
+
+    /**
+     * Creates a cache over the provider selected by the environment, with the SECRETS_TTL_SECONDS TTL.
+     *
+     * @return SecretsCache instance
+     */
+    public static SecretsCache fromEnvironment() {
+        EnvironmentSecretsProvider environmentProvider = EnvironmentSecretsProvider.fromEnvironment();
+        String defaultProvider = environmentProvider != null ? PROVIDER_ENVIRONMENT : PROVIDER_SECRETS_MANAGER;
+        String providerName = System.getenv().getOrDefault(SECRETS_PROVIDER_ENV_VAR, defaultProvider)
+                .toLowerCase(Locale.ROOT);
+        String secretName = System.getenv(SECRET_NAME_ENV_VAR);
+        SecretsProvider provider;
+        switch (providerName) {
+            case PROVIDER_ENVIRONMENT:
+                if (environmentProvider == null) {
+                    throw new IllegalStateException("The " + PROVIDER_ENVIRONMENT + " secrets provider needs "
+                            + EnvironmentSecretsProvider.CREDENTIALS_FILE_ENV_VAR + " or the client credentials set");
+                }
+                provider = environmentProvider;
+                break;
+            case PROVIDER_EXTENSION:
+                provider = ExtensionSecretsProvider.fromEnvironment(secretName);
+                break;
+            case PROVIDER_SECRETS_MANAGER:
+                provider = new SecretsManagerSecretsProvider(secretName, Region.of(System.getenv("AWS_REGION")));
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown " + SECRETS_PROVIDER_ENV_VAR + ": " + providerName);
+        }
+        long ttlSeconds = Utils.getEnvAsLong(SECRETS_TTL_SECONDS_ENV_VAR, DEFAULT_TTL_SECONDS);
+        log.debug("Secrets provider: " + providerName + ", TTL(s): " + ttlSeconds);
+        return new SecretsCache(provider, ttlSeconds * 1000, System::currentTimeMillis);
+    }
+
+    /**
+     * Returns the cached secrets, fetching them if they have not been fetched yet or their TTL has passed.
+     *
+     * @return the secrets
+     * @throws Exception if there are no secrets yet and fetching them failed
+     */
+    public Map<String, String> get() throws Exception {
+        Map<String, String> current = secrets;
+        if (current == null) {
+            synchronized (refreshLock) {
+                if (secrets == null) {
+                    load();
+                }
+                return secrets;
+            }
+        }
+        if (refreshAt <= clock.getAsLong() && !refreshing) {
+            refreshExpired();
+        }
+        return secrets;
+    }
+
+    /**
+     * Fetches the secrets again immediately, e.g. after the token endpoint rejected the cached credentials.
+     *
+     * @return true if the fetched secrets differ from the ones cached before
+     * @throws Exception if fetching the secrets failed
+     */
+    public boolean refresh() throws Exception {
+        synchronized (refreshLock) {
+            Map<String, String> previous = secrets;
+            load();
+            return !secrets.equals(previous);
+        }
+    }
+
+    public String get(String key) throws Exception {
+        return get().get(key);
+    }
+
+    /**
+     * Refreshes the expired secrets on the calling thread, unless another caller is already refreshing them, in which
+     * case the current secrets are used. A failed refresh keeps the current secrets.
+     */
+    private void refreshExpired() {
+        synchronized (refreshLock) {
+            if (refreshing || refreshAt > clock.getAsLong()) {
+                return;
+            }
+            refreshing = true;
+        }
+        try {
+            load();
+        } catch (Exception e) {
+            refreshAt = clock.getAsLong() + RETRY_DELAY_MILLIS;
+            log.warn("Refreshing secrets failed, keeping the current ones: " + e.getMessage());
+        } finally {
+            refreshing = false;
+        }
+    }
+
+    private void load() throws Exception {
+        long start = System.nanoTime();
+        Map<String, String> fetched = provider.fetch();
+        if (fetched == null || fetched.get(SecretsProvider.CLIENT_ID) == null
+                || fetched.get(SecretsProvider.CLIENT_SECRET) == null) {
+            throw new IllegalStateException("Secrets do not contain the " + SecretsProvider.CLIENT_ID + " and "
+                    + SecretsProvider.CLIENT_SECRET);
+        }
+        secrets = Collections.unmodifiableMap(new HashMap<>(fetched));
+        refreshAt = clock.getAsLong() + ttlMillis;
+        Utils.getMetrics().recordTimeSince(MetricNames.SECRETS_LOAD_TIME, start);
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2025 Samitha Chathuranga
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.nz.postal.address.secrets;
+
+import java.time.Duration;
+import java.util.Map;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import software.amazon.awssdk.http.urlconnection.UrlConnectionHttpClient;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.secretsmanager.SecretsManagerClient;
+import software.amazon.awssdk.services.secretsmanager.model.GetSecretValueRequest;
+
+/**
+ * Reads the secrets from AWS Secrets Manager with the AWS SDK. The client is built once per container, with the
+ * URLConnection based HTTP client instead of the Apache one, which takes a significant share of a cold start. It uses
+ * the default credentials provider chain, so that the standalone server also works with container, instance profile
+ * and profile file credentials.
+ */
+public class SecretsManagerSecretsProvider implements SecretsProvider {
+    private static final Duration TIMEOUT = Duration.ofSeconds(2);
+    private static final ObjectReader secretsReader = new ObjectMapper().readerFor(
+            new TypeReference<Map<String, String>>() {
+            });
+    private static final Logger log = LogManager.getLogger(SecretsManagerSecretsProvider.class);
+
+    private final String secretName;
+    private final Region region;
+    private volatile SecretsManagerClient client;
+
+    public SecretsManagerSecretsProvider(String secretName, Region region) {
+        this.secretName = secretName;
+        this.region = region;
+    }
+
+    @Override
+    public Map<String, String> fetch() throws Exception {
+        String secretString = getClient().getSecretValue(GetSecretValueRequest.builder()
+                .secretId(secretName)
+                .build()).secretString();
+        log.debug("Retrieved secret values related to NZ Post AddressChecker API invocation from Secrets Manager");
+        return secretsReader.readValue(secretString);
+    }
+
+    private SecretsManagerClient getClient() {
+        if (client == null) {
+            synchronized (this) {
+                if (client == null) {
+                    client = SecretsManagerClient.builder()
+                            .region(region)
+                            .httpClient(UrlConnectionHttpClient.builder()
+                                    .connectionTimeout(TIMEOUT)
+                                    .socketTimeout(TIMEOUT)
+                                    .build())
+                            .build();
+                }
+            }
+        }
+        return client;
+    }
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright 2025 Samitha Chathuranga
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.nz.postal.address.secrets;
+
+import java.util.Map;
+
+/**
+ * Source of the NZ Post API client credentials. Implementations fetch the current values on every call, caching and
+ * rotation are done by {@link SecretsCache}.
+ */
+@FunctionalInterface
+public interface SecretsProvider {
+    String CLIENT_ID = "client_id";
+    String CLIENT_SECRET = "client_secret";
+
+    /**
+     * Fetches the current secrets.
+     *
+     * @return the secrets, containing at least the {@link #CLIENT_ID} and {@link #CLIENT_SECRET} keys
+     * @throws Exception if the secrets could not be fetched or parsed
+     */
+    Map<String, String> fetch() throws Exception;
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright 2025 Samitha Chathuranga
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.nz.postal.address.server;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.nz.postal.address.NZPostAddressCheckerLambda;
+import org.nz.postal.address.Utils;
+
+/**
+ * Standalone HTTP server which runs the {@link NZPostAddressCheckerLambda} handler in a long running JVM, for
+ * deployments where a container is cheaper than Lambda. Each request is translated to an API Gateway proxy event, so
+ * the server and the Lambda function share the same request handling, caches, token and pooled HTTP client.
+ * Requests are handled on virtual threads when the runtime supports them (Java 21+), otherwise on a cached thread pool.
+ */
+public class AddressCheckerServer {
+    public static final String SERVER_PORT_ENV_VAR = "SERVER_PORT";
+    public static final String SERVER_BASE_PATH_ENV_VAR = "SERVER_BASE_PATH";
+    private static final String NODELAY_PROPERTY = "sun.net.httpserver.nodelay";
+    private static final int DEFAULT_PORT = 8080;
+    private static final String DEFAULT_BASE_PATH = "/address/suggestions";
+    private static final Logger log = LogManager.getLogger(AddressCheckerServer.class);
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final NZPostAddressCheckerLambda handler;
+
+    public AddressCheckerServer(int port, String basePath) throws IOException {
+        // Without TCP_NODELAY every response waits for the client's delayed ACK (~40 ms)
+        if (System.getProperty(NODELAY_PROPERTY) == null) {
+            System.setProperty(NODELAY_PROPERTY, "true");
+        }
+        this.handler = new NZPostAddressCheckerLambda();
+        this.executor = newRequestExecutor();
+        this.server = HttpServer.create(new InetSocketAddress(port), 0);
+        this.server.createContext(basePath, this::handle);
+        this.server.setExecutor(executor);
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = (int) Utils.getEnvAsLong(SERVER_PORT_ENV_VAR, DEFAULT_PORT);
+        String basePath = System.getenv().getOrDefault(SERVER_BASE_PATH_ENV_VAR, DEFAULT_BASE_PATH);
+        AddressCheckerServer addressCheckerServer = new AddressCheckerServer(port, basePath);
+        Runtime.getRuntime().addShutdownHook(new Thread(addressCheckerServer::stop));
+        addressCheckerServer.start();
+        log.info("Address checker server listening on port " + port + " at " + basePath);
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    public void stop() {
+        server.stop(1);
+        executor.shutdown();
+        try {
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            APIGatewayProxyResponseEvent response = handler.handleRequest(toRequestEvent(exchange), null);
+            if (response.getHeaders() != null) {
+                response.getHeaders().forEach((name, value) -> exchange.getResponseHeaders().set(name, value));
+            }
+            byte[] body = toBytes(response);
+            exchange.sendResponseHeaders(response.getStatusCode(), body.length == 0 ? -1 : body.length);
+            if (body.length > 0) {
+                try (OutputStream outputStream = exchange.getResponseBody()) {
+                    outputStream.write(body);
+                }
+            }
+        } catch (Exception e) {
+            log.error("Error handling request " + exchange.getRequestURI() + ": " + e.getMessage());
+        }
+    }
+
+    private static byte[] toBytes(APIGatewayProxyResponseEvent response) {
+        if (response.getBody() == null) {
+            return new byte[0];
+        }
+        if (Boolean.TRUE.equals(response.getIsBase64Encoded())) {
+            return Base64.getDecoder().decode(response.getBody());
+        }
+        return response.getBody().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static APIGatewayProxyRequestEvent toRequestEvent(HttpExchange exchange) throws IOException {
+        APIGatewayProxyRequestEvent event = new APIGatewayProxyRequestEvent();
+        event.setHttpMethod(exchange.getRequestMethod());
+        event.setPath(exchange.getRequestURI().getPath());
+        event.setQueryStringParameters(parseQuery(exchange.getRequestURI().getRawQuery()));
+
+        Map<String, String> headers = new HashMap<>();
+        for (Map.Entry<String, List<String>> header : exchange.getRequestHeaders().entrySet()) {
+            if (!header.getValue().isEmpty()) {
+                headers.put(header.getKey(), header.getValue().get(0));
+            }
+        }
+        event.setHeaders(headers);
+
+        try (InputStream inputStream = exchange.getRequestBody()) {
+            byte[] body = inputStream.readAllBytes();
+            if (body.length > 0) {
+                event.setBody(new String(body, StandardCharsets.UTF_8));
+            }
+        }
+        return event;
+    }
+
+    static Map<String, String> parseQuery(String rawQuery) {
+        if (rawQuery == null || rawQuery.isEmpty()) {
+            return null;
+        }
+        Map<String, String> params = new HashMap<>();
+        for (String pair : rawQuery.split("&")) {
+            int separator = pair.indexOf('=');
+            String name = separator < 0 ? pair : pair.substring(0, separator);
+            String value = separator < 0 ? "" : pair.substring(separator + 1);
+            params.putIfAbsent(URLDecoder.decode(name, StandardCharsets.UTF_8),
+                    URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+        return params;
+    }
+
+    /**
+     * Creates a virtual thread per task executor when running on Java 21+, or a cached thread pool otherwise.
+     * Reflection is used so the module can still be built for and run on the Java 17 Lambda runtime.
+     */
+    private static ExecutorService newRequestExecutor() {
+        try {
+            ExecutorService executor = (ExecutorService) Executors.class
+                    .getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            log.debug("Handling requests on virtual threads");
+            return executor;
+        } catch (ReflectiveOperationException e) {
+            log.debug("Virtual threads are not supported by this runtime. Handling requests on a thread pool");
+            return Executors.newCachedThreadPool();
+        }
+    }
+}
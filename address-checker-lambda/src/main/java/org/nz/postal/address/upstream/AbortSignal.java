@@ -0,0 +1,73 @@
+/*
+ * Copyright 2025 Samitha Chathuranga
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.nz.postal.address.upstream;
+
+/**
+ * Lets a caller abort an upstream request which is running on another thread, e.g. the losing attempt of a hedged
+ * call. The transport registers how to abort the request it is sending, and the request fails with an
+ * {@link java.io.IOException} (or an {@link java.util.concurrent.CancellationException}) once aborted.
+ */
+public final class AbortSignal {
+    /**
+     * Signal for requests which are never aborted.
+     */
+    public static final AbortSignal NONE = new AbortSignal();
+
+    private Runnable action;
+    private boolean aborted;
+
+    /**
+     * Registers how to abort the current request, replacing the previous action. The action runs right away if the
+     * signal was already aborted.
+     *
+     * @param action aborts the request
+     */
+    public void onAbort(Runnable action) {
+        if (this == NONE) {
+            return;
+        }
+        synchronized (this) {
+            if (!aborted) {
+                this.action = action;
+                return;
+            }
+        }
+        action.run();
+    }
+
+    /**
+     * Aborts the registered request, and any request registered later.
+     */
+    public void abort() {
+        Runnable abortAction;
+        synchronized (this) {
+            if (aborted || this == NONE) {
+                return;
+            }
+            aborted = true;
+            abortAction = action;
+        }
+        if (abortAction != null) {
+            abortAction.run();
+        }
+    }
+
+    public synchronized boolean isAborted() {
+        return aborted;
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright 2025 Samitha Chathuranga
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.nz.postal.address.upstream;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpHead;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.conn.ConnectTimeoutException;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.util.EntityUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.nz.postal.address.Utils;
+
+import static java.net.HttpURLConnection.HTTP_GATEWAY_TIMEOUT;
+
+/**
+ * Blocking upstream transport on the pooled Apache HttpClient 4 instance.
+ */
+public class ApacheUpstreamTransport implements UpstreamTransport {
+    private static final Logger log = LogManager.getLogger(ApacheUpstreamTransport.class);
+
+    private final Supplier<CloseableHttpClient> httpClient;
+
+    /**
+     * @param httpClient supplies the client to send requests with, e.g. {@code Utils::getHttpClient}
+     */
+    public ApacheUpstreamTransport(Supplier<CloseableHttpClient> httpClient) {
+        this.httpClient = httpClient;
+    }
+
+    /**
+     * Builds a pooled HTTP client with the timeouts, pool limits, keep-alive and idle eviction of the given
+     * configuration.
+     *
+     * @param config upstream configuration
+     * @return CloseableHttpClient instance
+     */
+    public static CloseableHttpClient buildHttpClient(UpstreamConfig config) {
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectTimeout((int) config.getConnectTimeoutMillis())
+                .setSocketTimeout((int) config.getResponseTimeoutMillis())
+                .setConnectionRequestTimeout((int) config.getPoolAcquireTimeoutMillis())
+                .build();
+        return HttpClients.custom()
+                .setDefaultRequestConfig(requestConfig)
+                .setMaxConnTotal(config.getMaxConnTotal())
+                .setMaxConnPerRoute(config.getMaxConnPerRoute())
+                .setKeepAliveStrategy((response, context) -> config.getKeepAliveMillis())
+                .evictExpiredConnections()
+                .evictIdleConnections(config.getIdleEvictMillis(), TimeUnit.MILLISECONDS)
+                .build();
+    }
+
+    @Override
+    public UpstreamResponse get(URI uri, Map<String, String> headers, BodyReader successBodyReader,
+                                AbortSignal abort) throws IOException {
+        HttpGet request = new HttpGet(uri);
+        // Aborting closes the connection, or cancels the wait for one, and fails execute with an IOException
+        abort.onAbort(request::abort);
+        return execute(request, headers, successBodyReader);
+    }
+
+    @Override
+    public UpstreamResponse post(URI uri, Map<String, String> headers) throws IOException {
+        return execute(new HttpPost(uri), headers, BodyReader.STRING);
+    }
+
+    @Override
+    public void prewarm(List<URI> uris) {
+        for (URI uri : uris) {
+            try (CloseableHttpResponse response = httpClient.get().execute(new HttpHead(uri))) {
+                log.debug("Pre-warmed connection to " + uri.getHost() + ". Status code: "
+                        + response.getStatusLine().getStatusCode());
+            } catch (IOException e) {
+                log.warn("Could not pre-warm connection to " + uri.getHost() + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private UpstreamResponse execute(HttpRequestBase request, Map<String, String> headers,
+                                     BodyReader successBodyReader) throws IOException {
+        headers.forEach(request::addHeader);
+        try (CloseableHttpResponse response = httpClient.get().execute(request)) {
+            Map<String, String> responseHeaders = new HashMap<>();
+            for (Header header : response.getAllHeaders()) {
+                responseHeaders.putIfAbsent(header.getName().toLowerCase(Locale.ROOT), header.getValue());
+            }
+            int statusCode = response.getStatusLine().getStatusCode();
+            HttpEntity entity = response.getEntity();
+            String body = null;
+            if (entity != null && statusCode / 100 == 2) {
+                body = successBodyReader.read(entity.getContent());
+                // Drain whatever the reader left, so the connection goes back to the pool
+                EntityUtils.consume(entity);
+            } else if (entity != null) {
+                body = EntityUtils.toString(entity);
+            }
+            return new UpstreamResponse(statusCode, response.getStatusLine().getReasonPhrase(), responseHeaders, body);
+        } catch (ConnectionPoolTimeoutException e) {
+            Utils.handleUpstreamServerError("Timed out waiting for a pooled connection to "
+                    + request.getURI().getHost(), HTTP_GATEWAY_TIMEOUT);
+        } catch (ConnectTimeoutException | SocketTimeoutException e) {
+            Utils.handleUpstreamServerError("Timed out calling " + request.getURI().getHost() + ": " + e.getMessage(),
+                    HTTP_GATEWAY_TIMEOUT);
+        }
+        return null;
+    }
+
+    /**
+     * The pooled client is owned by {@link Utils}, which closes it.
+     */
+    @Override
+    public void close() {
+    }
+}
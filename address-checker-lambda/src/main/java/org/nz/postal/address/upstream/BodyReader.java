@@ -0,0 +1,41 @@
+/*
+ * Copyright 2025 Samitha Chathuranga
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.nz.postal.address.upstream;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads the body of a successful upstream response from the stream, so that a large body can be transformed while it
+ * is read instead of first being copied into a String.
+ */
+@FunctionalInterface
+public interface BodyReader {
+
+    /**
+     * Reads the whole body as a UTF-8 string.
+     */
+    BodyReader STRING = body -> new String(body.readAllBytes(), StandardCharsets.UTF_8);
+
+    /**
+     * @param body the response body stream
+     * @return the body to keep in the {@link UpstreamResponse}
+     * @throws IOException if the body could not be read
+     */
+    String read(InputStream body) throws IOException;
+}
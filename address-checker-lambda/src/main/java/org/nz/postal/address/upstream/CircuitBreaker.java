@@ -0,0 +1,267 @@
+/*
+ * Copyright 2025 Samitha Chathuranga
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.nz.postal.address.upstream;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.function.LongSupplier;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.nz.postal.address.Utils;
+import org.nz.postal.address.exception.UpstreamServerException;
+import org.nz.postal.address.metrics.MetricNames;
+
+import static java.net.HttpURLConnection.HTTP_INTERNAL_ERROR;
+import static java.net.HttpURLConnection.HTTP_UNAVAILABLE;
+
+/**
+ * Circuit breaker for calls to an upstream service. The outcomes of the last calls are kept in a sliding window and
+ * the circuit opens when either the failure rate or the slow call rate in the window reaches its threshold. While open,
+ * calls are rejected immediately with a 503 {@link UpstreamServerException} instead of waiting on the upstream. After
+ * the open period the circuit moves to half-open and lets a few probe calls through, closing again if they all succeed
+ * and re-opening on the first failed or slow probe.
+ * <p>
+ * Upstream responses with 4xx status codes mean the upstream is up, so they are not counted as failures. Rejected
+ * calls and state transitions are counted in the {@link Utils#getMetrics() metrics} under the circuit name.
+ */
+public class CircuitBreaker {
+    public static final String WINDOW_SIZE_ENV_VAR = "CIRCUIT_WINDOW_SIZE";
+    public static final String MIN_CALLS_ENV_VAR = "CIRCUIT_MIN_CALLS";
+    public static final String FAILURE_RATE_ENV_VAR = "CIRCUIT_FAILURE_RATE_PERCENT";
+    public static final String SLOW_CALL_MS_ENV_VAR = "CIRCUIT_SLOW_CALL_MS";
+    public static final String SLOW_CALL_RATE_ENV_VAR = "CIRCUIT_SLOW_CALL_RATE_PERCENT";
+    public static final String OPEN_MS_ENV_VAR = "CIRCUIT_OPEN_MS";
+    public static final String HALF_OPEN_PROBES_ENV_VAR = "CIRCUIT_HALF_OPEN_PROBES";
+    private static final byte SUCCESS = 0;
+    private static final byte FAILURE = 1;
+    private static final byte SLOW = 2;
+    private static final Logger log = LogManager.getLogger(CircuitBreaker.class);
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final String name;
+    private final byte[] window;
+    private final int minCalls;
+    private final long failureRatePercent;
+    private final long slowCallMillis;
+    private final long slowCallRatePercent;
+    private final long openMillis;
+    private final int halfOpenProbes;
+    private final LongSupplier clock;
+    private final String rejectedCallsMetric;
+    private final Map<State, String> transitionMetrics = new EnumMap<>(State.class);
+    private State state = State.CLOSED;
+    private int recordedCalls;
+    private int nextOutcome;
+    private int failedCalls;
+    private int slowCalls;
+    private long openedAt;
+    private int probesInFlight;
+    private int probesSucceeded;
+    private long rejectedCalls;
+    private long timesOpened;
+
+    /**
+     * @param name                name of the upstream, used in logs and metric names
+     * @param windowSize          number of most recent calls the rates are calculated over
+     * @param minCalls            number of calls needed in the window before the circuit can open
+     * @param failureRatePercent  failure rate (0-100) at which the circuit opens
+     * @param slowCallMillis      duration after which a call is counted as slow
+     * @param slowCallRatePercent slow call rate (0-100) at which the circuit opens
+     * @param openMillis          time the circuit stays open before letting probe calls through
+     * @param halfOpenProbes      number of successful probe calls needed to close the circuit
+     * @param clock               millisecond clock
+     */
+    public CircuitBreaker(String name, int windowSize, int minCalls, long failureRatePercent, long slowCallMillis,
+                          long slowCallRatePercent, long openMillis, int halfOpenProbes, LongSupplier clock) {
+        if (windowSize <= 0 || minCalls <= 0 || minCalls > windowSize || halfOpenProbes <= 0) {
+            throw new IllegalArgumentException("Circuit breaker window, minimum calls and probes must be positive, "
+                    + "and the minimum calls must fit in the window");
+        }
+        this.name = name;
+        this.window = new byte[windowSize];
+        this.minCalls = minCalls;
+        this.failureRatePercent = failureRatePercent;
+        this.slowCallMillis = slowCallMillis;
+        this.slowCallRatePercent = slowCallRatePercent;
+        this.openMillis = openMillis;
+        this.halfOpenProbes = halfOpenProbes;
+        this.clock = clock;
+        String metricPrefix = MetricNames.CIRCUIT_PREFIX + name.replace(" ", "");
+        this.rejectedCallsMetric = metricPrefix + MetricNames.CIRCUIT_REJECTED_CALLS;
+        for (State state : State.values()) {
+            transitionMetrics.put(state, metricPrefix + MetricNames.CIRCUIT_TRANSITIONS_TO + state);
+        }
+    }
+
+    /**
+     * Creates a circuit breaker configured from the CIRCUIT_* environment variables, falling back to defaults when
+     * unset.
+     *
+     * @param name name of the upstream, used in logs and metric names
+     * @return CircuitBreaker instance
+     */
+    public static CircuitBreaker fromEnvironment(String name) {
+        return new CircuitBreaker(name,
+                (int) Utils.getEnvAsLong(WINDOW_SIZE_ENV_VAR, 20),
+                (int) Utils.getEnvAsLong(MIN_CALLS_ENV_VAR, 10),
+                Utils.getEnvAsLong(FAILURE_RATE_ENV_VAR, 50),
+                Utils.getEnvAsLong(SLOW_CALL_MS_ENV_VAR, 3000),
+                Utils.getEnvAsLong(SLOW_CALL_RATE_ENV_VAR, 80),
+                Utils.getEnvAsLong(OPEN_MS_ENV_VAR, 30000),
+                (int) Utils.getEnvAsLong(HALF_OPEN_PROBES_ENV_VAR, 3),
+                System::currentTimeMillis);
+    }
+
+    /**
+     * Runs the call if the circuit lets it through, and records its outcome.
+     *
+     * @param call the upstream call
+     * @return the result of the call
+     * @throws Exception the error of the call, or an UpstreamServerException with status 503 if the circuit is open
+     */
+    public <T> T call(Callable<T> call) throws Exception {
+        boolean probe = acquirePermission();
+        long start = clock.getAsLong();
+        // Errors are failures too, and the outcome is always recorded so that a probe never keeps its permit
+        byte outcome = FAILURE;
+        try {
+            T result = call.call();
+            outcome = slowCallMillis <= clock.getAsLong() - start ? SLOW : SUCCESS;
+            return result;
+        } catch (Exception e) {
+            outcome = isFailure(e) ? FAILURE : SUCCESS;
+            throw e;
+        } finally {
+            onComplete(probe, outcome);
+        }
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    public synchronized long getRejectedCalls() {
+        return rejectedCalls;
+    }
+
+    public synchronized long getTimesOpened() {
+        return timesOpened;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "CircuitBreaker{name=" + name + ", state=" + state + ", calls=" + recordedCalls + ", failed="
+                + failedCalls + ", slow=" + slowCalls + ", rejected=" + rejectedCalls + ", opened=" + timesOpened + "}";
+    }
+
+    /**
+     * Lets the call through or rejects it, moving an open circuit to half-open once the open period is over.
+     *
+     * @return whether the call is a half-open probe
+     */
+    private synchronized boolean acquirePermission() {
+        if (state == State.OPEN && clock.getAsLong() - openedAt >= openMillis) {
+            transitionTo(State.HALF_OPEN);
+        }
+        if (state == State.CLOSED) {
+            return false;
+        }
+        if (state == State.HALF_OPEN && probesSucceeded + probesInFlight < halfOpenProbes) {
+            probesInFlight++;
+            return true;
+        }
+        rejectedCalls++;
+        Utils.getMetrics().increment(rejectedCallsMetric);
+        Utils.handleUpstreamServerError("Circuit to " + name + " is " + state, HTTP_UNAVAILABLE);
+        return false;
+    }
+
+    private synchronized void onComplete(boolean probe, byte outcome) {
+        if (probe) {
+            if (state != State.HALF_OPEN) {
+                return;
+            }
+            probesInFlight--;
+            if (outcome != SUCCESS) {
+                transitionTo(State.OPEN);
+            } else if (++probesSucceeded >= halfOpenProbes) {
+                transitionTo(State.CLOSED);
+            }
+            return;
+        }
+        // Calls let through before the circuit opened do not count towards the probes
+        if (state != State.CLOSED) {
+            return;
+        }
+        record(outcome);
+        if (recordedCalls >= minCalls && (failedCalls * 100L >= failureRatePercent * recordedCalls
+                || slowCalls * 100L >= slowCallRatePercent * recordedCalls)) {
+            transitionTo(State.OPEN);
+        }
+    }
+
+    private void record(byte outcome) {
+        if (recordedCalls == window.length) {
+            forget(window[nextOutcome]);
+        } else {
+            recordedCalls++;
+        }
+        window[nextOutcome] = outcome;
+        nextOutcome = (nextOutcome + 1) % window.length;
+        if (outcome == FAILURE) {
+            failedCalls++;
+        } else if (outcome == SLOW) {
+            slowCalls++;
+        }
+    }
+
+    private void forget(byte outcome) {
+        if (outcome == FAILURE) {
+            failedCalls--;
+        } else if (outcome == SLOW) {
+            slowCalls--;
+        }
+    }
+
+    private void transitionTo(State newState) {
+        if (newState == State.OPEN) {
+            log.warn("Opening circuit to " + name + ". " + this);
+            openedAt = clock.getAsLong();
+            timesOpened++;
+        } else {
+            log.info("Circuit to " + name + " moved from " + state + " to " + newState);
+        }
+        Utils.getMetrics().increment(transitionMetrics.get(newState));
+        state = newState;
+        probesInFlight = 0;
+        probesSucceeded = 0;
+        recordedCalls = 0;
+        nextOutcome = 0;
+        failedCalls = 0;
+        slowCalls = 0;
+    }
+
+    private static boolean isFailure(Exception e) {
+        return !(e instanceof UpstreamServerException)
+                || ((UpstreamServerException) e).getStatusCode() >= HTTP_INTERNAL_ERROR;
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright 2025 Samitha Chathuranga
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.nz.postal.address.upstream;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import org.nz.postal.address.Utils;
+
+/**
+ * Time budget of a request, taken from the remaining Lambda execution time (less a safety margin for building the
+ * response) and capped by the REQUEST_DEADLINE_MS environment variable.
+ */
+public class Deadline {
+    public static final String REQUEST_DEADLINE_MS_ENV_VAR = "REQUEST_DEADLINE_MS";
+    public static final String DEADLINE_SAFETY_MARGIN_MS_ENV_VAR = "DEADLINE_SAFETY_MARGIN_MS";
+    private static final long configuredBudgetMillis = Utils.getEnvAsLong(REQUEST_DEADLINE_MS_ENV_VAR, 10_000);
+    private static final long safetyMarginMillis = Utils.getEnvAsLong(DEADLINE_SAFETY_MARGIN_MS_ENV_VAR, 200);
+
+    private final long expiresAtNanos;
+
+    private Deadline(long budgetMillis) {
+        this.expiresAtNanos = System.nanoTime() + budgetMillis * 1_000_000;
+    }
+
+    /**
+     * Creates the deadline of a request.
+     *
+     * @param context Lambda context of the invocation, or null when not running in Lambda
+     * @return Deadline instance
+     */
+    public static Deadline forRequest(Context context) {
+        long budgetMillis = configuredBudgetMillis;
+        if (context != null) {
+            budgetMillis = Math.min(budgetMillis, context.getRemainingTimeInMillis() - safetyMarginMillis);
+        }
+        return new Deadline(budgetMillis);
+    }
+
+    public static Deadline ofMillis(long budgetMillis) {
+        return new Deadline(budgetMillis);
+    }
+
+    public long remainingMillis() {
+        return Math.max(0, (expiresAtNanos - System.nanoTime()) / 1_000_000);
+    }
+
+    public boolean isExpired() {
+        return expiresAtNanos - System.nanoTime() <= 0;
+    }
+}
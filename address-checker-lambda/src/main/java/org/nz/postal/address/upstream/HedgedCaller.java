@@ -0,0 +1,326 @@
+/*
+ * Copyright 2025 Samitha Chathuranga
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.nz.postal.address.upstream;
+
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.nz.postal.address.Utils;
+import org.nz.postal.address.metrics.MetricNames;
+
+import static java.net.HttpURLConnection.HTTP_GATEWAY_TIMEOUT;
+
+/**
+ * Runs idempotent upstream calls within a request {@link Deadline}. If the first attempt is slower than the configured
+ * percentile of recent attempt latencies, one hedged duplicate is sent and whichever succeeds first is returned, unless
+ * the caller's hedge permit (e.g. a rate limit token) is not available.
+ * When the deadline runs out the call fails fast with a 504
+ * {@link org.nz.postal.address.exception.UpstreamServerException}.
+ * <p>
+ * The attempt which lost, and any attempt still running when the deadline runs out, is aborted through its
+ * {@link AbortSignal}, so it does not hold an upstream connection until the transport times out. Attempts run on a
+ * bounded pool. With hedging disabled, or when the pool is busy, the attempt runs on the caller's thread and is aborted
+ * at the deadline.
+ */
+public class HedgedCaller {
+    public static final String HEDGE_PERCENTILE_ENV_VAR = "UPSTREAM_HEDGE_PERCENTILE";
+    public static final String HEDGE_INITIAL_DELAY_MS_ENV_VAR = "UPSTREAM_HEDGE_INITIAL_DELAY_MS";
+    public static final String ATTEMPT_THREADS_ENV_VAR = "UPSTREAM_ATTEMPT_THREADS";
+    private static final int DEFAULT_ATTEMPT_THREADS = 64;
+    private static final int SAMPLE_SIZE = 256;
+    private static final int MIN_SAMPLES = 20;
+    private static final long MIN_HEDGE_DELAY_MILLIS = 10;
+    private static final Logger log = LogManager.getLogger(HedgedCaller.class);
+
+    /**
+     * An upstream call which can be aborted from another thread.
+     */
+    @FunctionalInterface
+    public interface Attempt<T> {
+        T call(AbortSignal abort) throws Exception;
+    }
+
+    private final double percentile;
+    private final long initialHedgeDelayMillis;
+    private final long[] samples = new long[SAMPLE_SIZE];
+    private int sampleCount;
+    private int nextSample;
+    private final ThreadPoolExecutor executor;
+    private final ScheduledThreadPoolExecutor deadlineTimer;
+    private final AtomicLong calls = new AtomicLong();
+    private final AtomicLong hedgesSent = new AtomicLong();
+    private final AtomicLong hedgesSkipped = new AtomicLong();
+    private final AtomicLong hedgeWins = new AtomicLong();
+    private final AtomicLong deadlinesExceeded = new AtomicLong();
+
+    /**
+     * @param percentile              percentile (0-100) of recent latencies after which a hedge is sent, 0 disables
+     *                                hedging
+     * @param initialHedgeDelayMillis hedge delay used until enough latencies have been observed
+     */
+    public HedgedCaller(double percentile, long initialHedgeDelayMillis) {
+        this(percentile, initialHedgeDelayMillis, DEFAULT_ATTEMPT_THREADS);
+    }
+
+    /**
+     * @param percentile              percentile (0-100) of recent latencies after which a hedge is sent, 0 disables
+     *                                hedging
+     * @param initialHedgeDelayMillis hedge delay used until enough latencies have been observed
+     * @param attemptThreads          most attempts running on the pool at once
+     */
+    public HedgedCaller(double percentile, long initialHedgeDelayMillis, int attemptThreads) {
+        this.percentile = percentile;
+        this.initialHedgeDelayMillis = initialHedgeDelayMillis;
+        this.executor = new ThreadPoolExecutor(0, attemptThreads, 60, TimeUnit.SECONDS, new SynchronousQueue<>(),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "upstream-attempt");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        this.deadlineTimer = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "upstream-deadline");
+            thread.setDaemon(true);
+            return thread;
+        });
+        deadlineTimer.setRemoveOnCancelPolicy(true);
+    }
+
+    public static HedgedCaller fromEnvironment() {
+        return new HedgedCaller(Utils.getEnvAsLong(HEDGE_PERCENTILE_ENV_VAR, 95),
+                Utils.getEnvAsLong(HEDGE_INITIAL_DELAY_MS_ENV_VAR, 500),
+                (int) Utils.getEnvAsLong(ATTEMPT_THREADS_ENV_VAR, DEFAULT_ATTEMPT_THREADS));
+    }
+
+    /**
+     * Runs the attempt, hedging it once if it is slow, within the deadline.
+     *
+     * @param attempt  the idempotent upstream call
+     * @param deadline the request deadline
+     * @return the result of the first successful attempt
+     * @throws Exception the error of the attempts if both failed, or an UpstreamServerException if the deadline ran out
+     */
+    public <T> T call(Attempt<T> attempt, Deadline deadline) throws Exception {
+        return call(attempt, deadline, () -> true);
+    }
+
+    /**
+     * Runs the attempt, hedging it once if it is slow and the hedge is permitted, within the deadline.
+     *
+     * @param attempt     the idempotent upstream call
+     * @param deadline    the request deadline
+     * @param hedgePermit asked for a permit when a hedge is due, the hedge is skipped if it returns false
+     * @return the result of the first successful attempt
+     * @throws Exception the error of the attempts if both failed, or an UpstreamServerException if the deadline ran out
+     */
+    public <T> T call(Attempt<T> attempt, Deadline deadline, BooleanSupplier hedgePermit) throws Exception {
+        calls.incrementAndGet();
+        if (deadline.isExpired()) {
+            return deadlineExceeded();
+        }
+        if (percentile <= 0) {
+            return callInline(attempt, deadline);
+        }
+        Running<T> first = submit(attempt);
+        if (first == null) {
+            return callInline(attempt, deadline);
+        }
+        Running<T> second = null;
+        long hedgeDelay = hedgeDelayMillis();
+        try {
+            if (hedgeDelay >= deadline.remainingMillis()) {
+                return first.result.get(deadline.remainingMillis(), TimeUnit.MILLISECONDS);
+            }
+            try {
+                return first.result.get(hedgeDelay, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                log.debug("Upstream attempt slower than {} ms", hedgeDelay);
+            }
+            if (hedgePermit.getAsBoolean()) {
+                second = submit(attempt);
+            }
+            if (second == null) {
+                hedgesSkipped.incrementAndGet();
+                Utils.getMetrics().increment(MetricNames.UPSTREAM_HEDGES_SKIPPED);
+                return first.result.get(deadline.remainingMillis(), TimeUnit.MILLISECONDS);
+            }
+            hedgesSent.incrementAndGet();
+            Utils.getMetrics().increment(MetricNames.UPSTREAM_HEDGES_SENT);
+            // Wait for either attempt to complete, whether it succeeded or failed
+            CompletableFuture.anyOf(first.result.handle((result, error) -> null),
+                    second.result.handle((result, error) -> null))
+                    .get(deadline.remainingMillis(), TimeUnit.MILLISECONDS);
+            Running<T> winner = succeeded(first) ? first : succeeded(second) ? second : null;
+            if (winner == null) {
+                // The attempt which finished first failed, so wait for the other one
+                winner = first.result.isDone() ? second : first;
+                winner.result.get(deadline.remainingMillis(), TimeUnit.MILLISECONDS);
+            }
+            if (winner == second) {
+                hedgeWins.incrementAndGet();
+                Utils.getMetrics().increment(MetricNames.UPSTREAM_HEDGE_WINS);
+            }
+            return winner.result.get();
+        } catch (TimeoutException e) {
+            return deadlineExceeded();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception) {
+                throw (Exception) e.getCause();
+            }
+            throw e;
+        } finally {
+            // Abort the losing attempt, or both when the deadline ran out
+            first.abort();
+            if (second != null) {
+                second.abort();
+            }
+        }
+    }
+
+    public long getCalls() {
+        return calls.get();
+    }
+
+    public long getHedgesSent() {
+        return hedgesSent.get();
+    }
+
+    public long getHedgesSkipped() {
+        return hedgesSkipped.get();
+    }
+
+    public long getHedgeWins() {
+        return hedgeWins.get();
+    }
+
+    public long getDeadlinesExceeded() {
+        return deadlinesExceeded.get();
+    }
+
+    /**
+     * Returns the delay after which a slow attempt is hedged: the configured percentile of recent successful attempt
+     * latencies, or the initial delay until enough attempts have been observed.
+     *
+     * @return hedge delay in milliseconds
+     */
+    public long hedgeDelayMillis() {
+        long[] sorted;
+        synchronized (samples) {
+            if (sampleCount < MIN_SAMPLES) {
+                return initialHedgeDelayMillis;
+            }
+            sorted = Arrays.copyOf(samples, sampleCount);
+        }
+        Arrays.sort(sorted);
+        int index = (int) Math.min(sorted.length - 1, Math.ceil(percentile / 100 * sorted.length) - 1);
+        return Math.max(MIN_HEDGE_DELAY_MILLIS, sorted[Math.max(0, index)]);
+    }
+
+    private <T> T deadlineExceeded() {
+        deadlinesExceeded.incrementAndGet();
+        Utils.getMetrics().increment(MetricNames.UPSTREAM_DEADLINES_EXCEEDED);
+        Utils.handleUpstreamServerError("Upstream request deadline exceeded", HTTP_GATEWAY_TIMEOUT);
+        return null;
+    }
+
+    private static boolean succeeded(Running<?> attempt) {
+        return attempt.result.isDone() && !attempt.result.isCompletedExceptionally();
+    }
+
+    /**
+     * Runs the attempt on the caller's thread, aborting it when the deadline runs out.
+     */
+    private <T> T callInline(Attempt<T> attempt, Deadline deadline) throws Exception {
+        AbortSignal abort = new AbortSignal();
+        ScheduledFuture<?> timer = deadlineTimer.schedule(abort::abort, deadline.remainingMillis(),
+                TimeUnit.MILLISECONDS);
+        long start = System.nanoTime();
+        try {
+            T result = attempt.call(abort);
+            recordLatency((System.nanoTime() - start) / 1_000_000);
+            return result;
+        } catch (Exception e) {
+            if (abort.isAborted()) {
+                return deadlineExceeded();
+            }
+            throw e;
+        } finally {
+            timer.cancel(false);
+        }
+    }
+
+    /**
+     * Starts the attempt on the pool.
+     *
+     * @return the running attempt, or null if all pool threads are busy
+     */
+    private <T> Running<T> submit(Attempt<T> attempt) {
+        Running<T> running = new Running<>();
+        try {
+            running.task = executor.submit(() -> {
+                long start = System.nanoTime();
+                try {
+                    T result = attempt.call(running.abortSignal);
+                    recordLatency((System.nanoTime() - start) / 1_000_000);
+                    running.result.complete(result);
+                } catch (Throwable t) {
+                    running.result.completeExceptionally(t);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            log.debug("All {} upstream attempt threads are busy", executor.getMaximumPoolSize());
+            return null;
+        }
+        return running;
+    }
+
+    private void recordLatency(long millis) {
+        synchronized (samples) {
+            samples[nextSample] = millis;
+            nextSample = (nextSample + 1) % SAMPLE_SIZE;
+            sampleCount = Math.min(sampleCount + 1, SAMPLE_SIZE);
+        }
+    }
+
+    private static final class Running<T> {
+        private final CompletableFuture<T> result = new CompletableFuture<>();
+        private final AbortSignal abortSignal = new AbortSignal();
+        private volatile Future<?> task;
+
+        /**
+         * Aborts the attempt if it is still running, releasing its upstream connection.
+         */
+        private void abort() {
+            if (!result.isDone()) {
+                abortSignal.abort();
+                task.cancel(true);
+            }
+        }
+    }
+}
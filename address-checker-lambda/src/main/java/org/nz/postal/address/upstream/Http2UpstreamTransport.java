@@ -0,0 +1,220 @@
+/*
+ * Copyright 2025 Samitha Chathuranga
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.nz.postal.address.upstream;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.nz.postal.address.Utils;
+
+import static java.net.HttpURLConnection.HTTP_GATEWAY_TIMEOUT;
+
+/**
+ * Non-blocking upstream transport on the JDK HTTP client, which negotiates HTTP/2 (multiplexing many requests over
+ * one connection) and falls back to HTTP/1.1.
+ * <p>
+ * The JDK client has no pool-acquire limit of its own, so the number of in flight requests is bounded by a semaphore
+ * sized to the configured max connections. Keep-alive of idle HTTP/1.1 connections is set through the
+ * {@code jdk.httpclient.keepalive.timeout} system property, unless it is already set.
+ */
+public class Http2UpstreamTransport implements UpstreamTransport {
+    private static final String KEEP_ALIVE_PROPERTY = "jdk.httpclient.keepalive.timeout";
+    private static final Logger log = LogManager.getLogger(Http2UpstreamTransport.class);
+
+    private final HttpClient httpClient;
+    private final UpstreamConfig config;
+    private final Semaphore inFlightPermits;
+
+    public Http2UpstreamTransport(UpstreamConfig config) {
+        if (System.getProperty(KEEP_ALIVE_PROPERTY) == null) {
+            long keepAliveMillis = Math.min(config.getKeepAliveMillis(), config.getIdleEvictMillis());
+            System.setProperty(KEEP_ALIVE_PROPERTY, String.valueOf(Math.max(1, keepAliveMillis / 1000)));
+        }
+        this.config = config;
+        this.inFlightPermits = new Semaphore(config.getMaxConnTotal());
+        this.httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .connectTimeout(Duration.ofMillis(config.getConnectTimeoutMillis()))
+                .build();
+    }
+
+    @Override
+    public UpstreamResponse get(URI uri, Map<String, String> headers, BodyReader successBodyReader,
+                                AbortSignal abort) throws Exception {
+        return send(newRequest(uri, headers).GET().build(), successBodyReader, abort);
+    }
+
+    @Override
+    public UpstreamResponse post(URI uri, Map<String, String> headers) throws Exception {
+        return send(newRequest(uri, headers).POST(HttpRequest.BodyPublishers.noBody()).build(), BodyReader.STRING,
+                AbortSignal.NONE);
+    }
+
+    /**
+     * Sends the request asynchronously, for callers which do not want to block a thread on the upstream call.
+     * The in flight permit is released when the response completes.
+     *
+     * @param request the request to send
+     * @return future completed with the upstream response
+     */
+    public CompletableFuture<UpstreamResponse> sendAsync(HttpRequest request) throws InterruptedException {
+        return sendAsync(request, BodyReader.STRING);
+    }
+
+    /**
+     * Sends the request asynchronously, reading the body of a 2xx response with the given reader.
+     *
+     * @param request           the request to send
+     * @param successBodyReader reader of the body of a 2xx response
+     * @return future completed with the upstream response
+     */
+    public CompletableFuture<UpstreamResponse> sendAsync(HttpRequest request, BodyReader successBodyReader)
+            throws InterruptedException {
+        return sendAsync(request, successBodyReader, AbortSignal.NONE);
+    }
+
+    private CompletableFuture<UpstreamResponse> sendAsync(HttpRequest request, BodyReader successBodyReader,
+                                                          AbortSignal abort) throws InterruptedException {
+        if (!inFlightPermits.tryAcquire(config.getPoolAcquireTimeoutMillis(), TimeUnit.MILLISECONDS)) {
+            Utils.handleUpstreamServerError("Timed out waiting for an upstream connection to "
+                    + request.uri().getHost(), HTTP_GATEWAY_TIMEOUT);
+        }
+        CompletableFuture<HttpResponse<String>> response;
+        try {
+            response = httpClient.sendAsync(request, bodyHandler(successBodyReader));
+        } catch (RuntimeException e) {
+            // The completion below never runs when the client rejects the request before sending it
+            inFlightPermits.release();
+            throw e;
+        }
+        // Cancelling the client's own future cancels the exchange, and completes it so the permit is released
+        abort.onAbort(() -> response.cancel(true));
+        return response.whenComplete((result, error) -> inFlightPermits.release())
+                .thenApply(Http2UpstreamTransport::toUpstreamResponse);
+    }
+
+    @Override
+    public void prewarm(List<URI> uris) {
+        List<CompletableFuture<HttpResponse<Void>>> responses = new ArrayList<>();
+        for (URI uri : uris) {
+            HttpRequest request = newRequest(uri, Map.of()).method("HEAD", HttpRequest.BodyPublishers.noBody()).build();
+            responses.add(httpClient.sendAsync(request, HttpResponse.BodyHandlers.discarding()));
+        }
+        for (int i = 0; i < responses.size(); i++) {
+            try {
+                HttpResponse<Void> response = responses.get(i).get(config.getResponseTimeoutMillis(),
+                        TimeUnit.MILLISECONDS);
+                log.debug("Pre-warmed " + response.version() + " connection to " + uris.get(i).getHost());
+            } catch (Exception e) {
+                log.warn("Could not pre-warm connection to " + uris.get(i).getHost() + ": " + e.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        // The JDK client releases its connections once it is no longer referenced
+    }
+
+    private HttpRequest.Builder newRequest(URI uri, Map<String, String> headers) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(uri)
+                .timeout(Duration.ofMillis(config.getResponseTimeoutMillis()));
+        headers.forEach(builder::header);
+        return builder;
+    }
+
+    /**
+     * Reads 2xx bodies with the given reader and other bodies as strings. The body bytes are handed to the reader
+     * only once complete, as blocking on a streamed body would hold up the client's own threads.
+     */
+    private static HttpResponse.BodyHandler<String> bodyHandler(BodyReader successBodyReader) {
+        return responseInfo -> {
+            if (responseInfo.statusCode() / 100 != 2 || successBodyReader == BodyReader.STRING) {
+                return HttpResponse.BodySubscribers.ofString(StandardCharsets.UTF_8);
+            }
+            return HttpResponse.BodySubscribers.mapping(HttpResponse.BodySubscribers.ofByteArray(), bytes -> {
+                try {
+                    return successBodyReader.read(new ByteArrayInputStream(bytes));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        };
+    }
+
+    private UpstreamResponse send(HttpRequest request, BodyReader successBodyReader, AbortSignal abort)
+            throws Exception {
+        // An interrupted caller aborts the exchange too, so it does not keep its stream and permit
+        AbortSignal requestAbort = abort == AbortSignal.NONE ? new AbortSignal() : abort;
+        CompletableFuture<UpstreamResponse> response = sendAsync(request, successBodyReader, requestAbort);
+        try {
+            return response.get();
+        } catch (InterruptedException e) {
+            requestAbort.abort();
+            throw e;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof CancellationException) {
+                throw new IOException("Request to " + request.uri().getHost() + " was aborted", e.getCause());
+            }
+            // HttpConnectTimeoutException is a HttpTimeoutException too
+            if (e.getCause() instanceof HttpTimeoutException) {
+                Utils.handleUpstreamServerError("Timed out calling " + request.uri().getHost() + ": "
+                        + e.getCause().getMessage(), HTTP_GATEWAY_TIMEOUT);
+            }
+            if (e.getCause() instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) e.getCause()).getCause();
+            }
+            if (e.getCause() instanceof Exception) {
+                throw (Exception) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private static UpstreamResponse toUpstreamResponse(HttpResponse<String> response) {
+        Map<String, String> headers = new HashMap<>();
+        HttpHeaders httpHeaders = response.headers();
+        httpHeaders.map().forEach((name, values) -> {
+            if (!values.isEmpty()) {
+                headers.put(name.toLowerCase(Locale.ROOT), values.get(0));
+            }
+        });
+        return new UpstreamResponse(response.statusCode(), "HTTP " + response.statusCode(), headers, response.body());
+    }
+}
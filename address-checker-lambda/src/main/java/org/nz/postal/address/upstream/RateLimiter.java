@@ -0,0 +1,269 @@
+/*
+ * Copyright 2025 Samitha Chathuranga
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.nz.postal.address.upstream;
+
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.nz.postal.address.Utils;
+import org.nz.postal.address.metrics.MetricNames;
+
+import static org.nz.postal.address.Constants.HTTP_TOO_MANY_REQUESTS;
+
+/**
+ * Adaptive token bucket limiting the rate of calls to an upstream which enforces a quota.
+ * <ul>
+ *     <li>Calls take a token. When the bucket is empty, a call waits for its token in turn, as long as the wait fits
+ *     within both the maximum queueing time and the request deadline. Otherwise it is rejected with a 429
+ *     {@link org.nz.postal.address.exception.UpstreamServerException} without calling the upstream.</li>
+ *     <li>When the upstream responds with 429, the rate is halved (at most once per second), and no tokens are handed
+ *     out until the Retry-After time has passed.</li>
+ *     <li>The rate recovers linearly to the configured rate over the recovery period after the last 429.</li>
+ * </ul>
+ * The limiter is thread safe. One instance is shared by all requests of a container, including all request threads
+ * of the standalone server.
+ */
+public class RateLimiter {
+    public static final String RATE_ENV_VAR = "UPSTREAM_RATE_LIMIT_PER_SECOND";
+    public static final String BURST_ENV_VAR = "UPSTREAM_RATE_LIMIT_BURST";
+    public static final String MAX_WAIT_MS_ENV_VAR = "UPSTREAM_RATE_LIMIT_MAX_WAIT_MS";
+    public static final String RECOVERY_SECONDS_ENV_VAR = "UPSTREAM_RATE_LIMIT_RECOVERY_SECONDS";
+    private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+    private static final long DECREASE_INTERVAL_NANOS = NANOS_PER_SECOND;
+    private static final long DEFAULT_RETRY_AFTER_NANOS = NANOS_PER_SECOND;
+    private static final long MAX_RETRY_AFTER_NANOS = TimeUnit.SECONDS.toNanos(60);
+    private static final Logger log = LogManager.getLogger(RateLimiter.class);
+
+    private final double maxRate;
+    private final double minRate;
+    private final double burst;
+    private final long maxWaitNanos;
+    private final long recoveryNanos;
+    private final LongSupplier nanoClock;
+    private double rate;
+    private double throttledRate;
+    private double tokens;
+    private long lastRefill;
+    private long lastDecrease = Long.MIN_VALUE;
+    private long pausedUntil = Long.MIN_VALUE;
+    private long acquired;
+    private long queued;
+    private long rejected;
+    private long throttledResponses;
+
+    /**
+     * @param ratePerSecond       calls per second allowed while the upstream does not throttle
+     * @param burst               number of calls which can be made at once after an idle period
+     * @param maxWaitMillis       longest time a call waits for a token before it is rejected
+     * @param recoverySeconds     time over which the rate recovers to ratePerSecond after a 429
+     * @param nanoClock           nanosecond clock
+     */
+    public RateLimiter(double ratePerSecond, double burst, long maxWaitMillis, long recoverySeconds,
+                       LongSupplier nanoClock) {
+        if (ratePerSecond <= 0 || burst < 1) {
+            throw new IllegalArgumentException("Rate limit must be positive and the burst at least 1");
+        }
+        this.maxRate = ratePerSecond;
+        this.minRate = Math.min(1, ratePerSecond);
+        this.burst = burst;
+        this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(maxWaitMillis);
+        this.recoveryNanos = TimeUnit.SECONDS.toNanos(Math.max(1, recoverySeconds));
+        this.nanoClock = nanoClock;
+        this.rate = ratePerSecond;
+        this.tokens = burst;
+        this.lastRefill = nanoClock.getAsLong();
+    }
+
+    /**
+     * Creates a rate limiter configured from the UPSTREAM_RATE_LIMIT_* environment variables, falling back to defaults
+     * when unset.
+     *
+     * @return RateLimiter instance
+     */
+    public static RateLimiter fromEnvironment() {
+        long ratePerSecond = Utils.getEnvAsLong(RATE_ENV_VAR, 50);
+        return new RateLimiter(ratePerSecond,
+                Utils.getEnvAsLong(BURST_ENV_VAR, ratePerSecond),
+                Utils.getEnvAsLong(MAX_WAIT_MS_ENV_VAR, 500),
+                Utils.getEnvAsLong(RECOVERY_SECONDS_ENV_VAR, 30),
+                System::nanoTime);
+    }
+
+    /**
+     * Takes a token, waiting for it if the bucket is empty.
+     *
+     * @param deadline the request deadline, the call is rejected rather than waiting past it
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void acquire(Deadline deadline) throws InterruptedException {
+        long waitNanos = reserve(Math.min(maxWaitNanos, TimeUnit.MILLISECONDS.toNanos(deadline.remainingMillis())));
+        if (waitNanos < 0) {
+            Utils.getMetrics().increment(MetricNames.UPSTREAM_RATE_LIMITED);
+            Utils.handleUpstreamServerError("Upstream rate limit reached", HTTP_TOO_MANY_REQUESTS);
+        }
+        if (waitNanos > 0) {
+            Utils.getMetrics().recordTime(MetricNames.UPSTREAM_RATE_LIMIT_WAIT_TIME,
+                    TimeUnit.NANOSECONDS.toMillis(waitNanos));
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+    }
+
+    /**
+     * Takes a token only if one is available now, for calls which are not worth waiting for, such as hedges.
+     *
+     * @return whether a token was taken
+     */
+    public synchronized boolean tryAcquire() {
+        long now = nanoClock.getAsLong();
+        refill(now);
+        if (pausedUntil > now || tokens < 1) {
+            return false;
+        }
+        tokens -= 1;
+        acquired++;
+        return true;
+    }
+
+    /**
+     * Records a 429 response of the upstream: lowers the rate, and pauses calls for the Retry-After time.
+     *
+     * @param retryAfter value of the Retry-After header, in seconds or as an HTTP date, or null if there is none
+     */
+    public synchronized void onThrottled(String retryAfter) {
+        long now = nanoClock.getAsLong();
+        refill(now);
+        throttledResponses++;
+        long pauseNanos = parseRetryAfterNanos(retryAfter);
+        pausedUntil = Math.max(pausedUntil, now + pauseNanos);
+        tokens = Math.min(tokens, 0);
+        if (lastDecrease == Long.MIN_VALUE || now - lastDecrease >= DECREASE_INTERVAL_NANOS) {
+            rate = Math.max(minRate, rate / 2);
+            throttledRate = rate;
+            lastDecrease = now;
+            log.warn("Upstream is throttling calls. Rate limit lowered to " + String.format("%.1f", rate)
+                    + "/s and calls paused for " + TimeUnit.NANOSECONDS.toMillis(pauseNanos) + " ms");
+        }
+    }
+
+    /**
+     * @return true while calls are paused after a 429 or have to wait for a token
+     */
+    public synchronized boolean isThrottled() {
+        long now = nanoClock.getAsLong();
+        refill(now);
+        return pausedUntil > now || tokens < 1;
+    }
+
+    /**
+     * @return seconds (at least 1) after which a call is likely to get a token, for a Retry-After header
+     */
+    public synchronized long getRetryAfterSeconds() {
+        long now = nanoClock.getAsLong();
+        refill(now);
+        long pauseNanos = pausedUntil > now ? pausedUntil - now : 0;
+        long waitNanos = pauseNanos + (long) (Math.max(0, 1 - tokens) / rate * NANOS_PER_SECOND);
+        return Math.max(1, (waitNanos + NANOS_PER_SECOND - 1) / NANOS_PER_SECOND);
+    }
+
+    public synchronized double getRate() {
+        refill(nanoClock.getAsLong());
+        return rate;
+    }
+
+    public synchronized long getAcquired() {
+        return acquired;
+    }
+
+    public synchronized long getQueued() {
+        return queued;
+    }
+
+    public synchronized long getRejected() {
+        return rejected;
+    }
+
+    public synchronized long getThrottledResponses() {
+        return throttledResponses;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "RateLimiter{rate=" + String.format("%.1f", rate) + "/s, tokens=" + String.format("%.1f", tokens)
+                + ", acquired=" + acquired + ", queued=" + queued + ", rejected=" + rejected + ", throttled="
+                + throttledResponses + "}";
+    }
+
+    /**
+     * Reserves the next token. Tokens may go negative, each negative token being a call queued for a future token, so
+     * queued calls get their tokens in order.
+     *
+     * @return nanoseconds to wait for the token, or -1 if the wait would be longer than maxWaitNanos
+     */
+    private synchronized long reserve(long maxWaitNanos) {
+        long now = nanoClock.getAsLong();
+        refill(now);
+        long pauseNanos = pausedUntil > now ? pausedUntil - now : 0;
+        long waitNanos = pauseNanos + (long) (Math.max(0, 1 - tokens) / rate * NANOS_PER_SECOND);
+        if (waitNanos > maxWaitNanos) {
+            rejected++;
+            return -1;
+        }
+        tokens -= 1;
+        acquired++;
+        if (waitNanos > 0) {
+            queued++;
+        }
+        return waitNanos;
+    }
+
+    private void refill(long now) {
+        if (rate < maxRate && lastDecrease != Long.MIN_VALUE) {
+            double recovered = (double) (now - lastDecrease) / recoveryNanos;
+            rate = Math.min(maxRate, throttledRate + (maxRate - throttledRate) * recovered);
+        }
+        // No tokens accrue while calls are paused
+        long refillFrom = Math.max(lastRefill, Math.min(pausedUntil, now));
+        if (now > refillFrom) {
+            tokens = Math.min(burst, tokens + (double) (now - refillFrom) / NANOS_PER_SECOND * rate);
+        }
+        lastRefill = now;
+    }
+
+    private static long parseRetryAfterNanos(String retryAfter) {
+        if (retryAfter == null || retryAfter.isBlank()) {
+            return DEFAULT_RETRY_AFTER_NANOS;
+        }
+        long nanos;
+        try {
+            nanos = TimeUnit.SECONDS.toNanos(Long.parseLong(retryAfter.trim()));
+        } catch (NumberFormatException e) {
+            try {
+                ZonedDateTime date = ZonedDateTime.parse(retryAfter.trim(), DateTimeFormatter.RFC_1123_DATE_TIME);
+                nanos = TimeUnit.MILLISECONDS.toNanos(date.toInstant().toEpochMilli() - System.currentTimeMillis());
+            } catch (DateTimeParseException ex) {
+                log.debug("Ignoring invalid Retry-After header: " + retryAfter);
+                return DEFAULT_RETRY_AFTER_NANOS;
+            }
+        }
+        return Math.min(MAX_RETRY_AFTER_NANOS, Math.max(0, nanos));
+    }
+}
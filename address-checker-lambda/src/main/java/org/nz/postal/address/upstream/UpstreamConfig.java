@@ -0,0 +1,165 @@
+/*
+ * Copyright 2025 Samitha Chathuranga
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.nz.postal.address.upstream;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import org.nz.postal.address.Utils;
+
+/**
+ * Connection, timeout and pool settings of the upstream (NZ Post) transport, read from UPSTREAM_* environment
+ * variables.
+ */
+public class UpstreamConfig {
+    public static final String TRANSPORT_ENV_VAR = "UPSTREAM_TRANSPORT";
+    public static final String CONNECT_TIMEOUT_MS_ENV_VAR = "UPSTREAM_CONNECT_TIMEOUT_MS";
+    public static final String RESPONSE_TIMEOUT_MS_ENV_VAR = "UPSTREAM_RESPONSE_TIMEOUT_MS";
+    public static final String POOL_ACQUIRE_TIMEOUT_MS_ENV_VAR = "UPSTREAM_POOL_ACQUIRE_TIMEOUT_MS";
+    public static final String MAX_CONN_TOTAL_ENV_VAR = "UPSTREAM_MAX_CONN_TOTAL";
+    public static final String MAX_CONN_PER_ROUTE_ENV_VAR = "UPSTREAM_MAX_CONN_PER_ROUTE";
+    public static final String KEEP_ALIVE_MS_ENV_VAR = "UPSTREAM_KEEP_ALIVE_MS";
+    public static final String IDLE_EVICT_MS_ENV_VAR = "UPSTREAM_IDLE_EVICT_MS";
+    public static final String PREWARM_URLS_ENV_VAR = "UPSTREAM_PREWARM_URLS";
+    public static final String TRANSPORT_APACHE = "apache";
+    public static final String TRANSPORT_HTTP2 = "http2";
+
+    private String transport = TRANSPORT_APACHE;
+    private long connectTimeoutMillis = 2000;
+    private long responseTimeoutMillis = 5000;
+    private long poolAcquireTimeoutMillis = 1000;
+    private int maxConnTotal = 100;
+    private int maxConnPerRoute = 10;
+    private long keepAliveMillis = 30_000;
+    private long idleEvictMillis = 60_000;
+    private List<URI> prewarmUris = new ArrayList<>();
+
+    /**
+     * Creates the configuration from the environment. Unset values keep their defaults. The pre-warm URLs default to
+     * the NZ Post suggest and token endpoints.
+     *
+     * @return UpstreamConfig instance
+     */
+    public static UpstreamConfig fromEnvironment() {
+        UpstreamConfig config = new UpstreamConfig();
+        config.transport = System.getenv().getOrDefault(TRANSPORT_ENV_VAR, TRANSPORT_APACHE).toLowerCase(Locale.ROOT);
+        config.connectTimeoutMillis = Utils.getEnvAsLong(CONNECT_TIMEOUT_MS_ENV_VAR, config.connectTimeoutMillis);
+        config.responseTimeoutMillis = Utils.getEnvAsLong(RESPONSE_TIMEOUT_MS_ENV_VAR, config.responseTimeoutMillis);
+        config.poolAcquireTimeoutMillis = Utils.getEnvAsLong(POOL_ACQUIRE_TIMEOUT_MS_ENV_VAR,
+                config.poolAcquireTimeoutMillis);
+        config.maxConnTotal = (int) Utils.getEnvAsLong(MAX_CONN_TOTAL_ENV_VAR, config.maxConnTotal);
+        config.maxConnPerRoute = (int) Utils.getEnvAsLong(MAX_CONN_PER_ROUTE_ENV_VAR, config.maxConnPerRoute);
+        config.keepAliveMillis = Utils.getEnvAsLong(KEEP_ALIVE_MS_ENV_VAR, config.keepAliveMillis);
+        config.idleEvictMillis = Utils.getEnvAsLong(IDLE_EVICT_MS_ENV_VAR, config.idleEvictMillis);
+
+        String prewarmUrls = System.getenv(PREWARM_URLS_ENV_VAR);
+        if (prewarmUrls == null) {
+            prewarmUrls = System.getenv().getOrDefault("NZ_POST_ADDRESS_CHECKER_SUGGEST_API_URL", "") + ","
+                    + System.getenv().getOrDefault("NZ_POST_API_OAUTH_TOKEN_URL", "");
+        }
+        for (String url : prewarmUrls.split(",")) {
+            if (!url.isBlank()) {
+                config.prewarmUris.add(URI.create(url.trim()));
+            }
+        }
+        return config;
+    }
+
+    public String getTransport() {
+        return transport;
+    }
+
+    public UpstreamConfig setTransport(String transport) {
+        this.transport = transport;
+        return this;
+    }
+
+    public long getConnectTimeoutMillis() {
+        return connectTimeoutMillis;
+    }
+
+    public UpstreamConfig setConnectTimeoutMillis(long connectTimeoutMillis) {
+        this.connectTimeoutMillis = connectTimeoutMillis;
+        return this;
+    }
+
+    public long getResponseTimeoutMillis() {
+        return responseTimeoutMillis;
+    }
+
+    public UpstreamConfig setResponseTimeoutMillis(long responseTimeoutMillis) {
+        this.responseTimeoutMillis = responseTimeoutMillis;
+        return this;
+    }
+
+    public long getPoolAcquireTimeoutMillis() {
+        return poolAcquireTimeoutMillis;
+    }
+
+    public UpstreamConfig setPoolAcquireTimeoutMillis(long poolAcquireTimeoutMillis) {
+        this.poolAcquireTimeoutMillis = poolAcquireTimeoutMillis;
+        return this;
+    }
+
+    public int getMaxConnTotal() {
+        return maxConnTotal;
+    }
+
+    public UpstreamConfig setMaxConnTotal(int maxConnTotal) {
+        this.maxConnTotal = maxConnTotal;
+        return this;
+    }
+
+    public int getMaxConnPerRoute() {
+        return maxConnPerRoute;
+    }
+
+    public UpstreamConfig setMaxConnPerRoute(int maxConnPerRoute) {
+        this.maxConnPerRoute = maxConnPerRoute;
+        return this;
+    }
+
+    public long getKeepAliveMillis() {
+        return keepAliveMillis;
+    }
+
+    public UpstreamConfig setKeepAliveMillis(long keepAliveMillis) {
+        this.keepAliveMillis = keepAliveMillis;
+        return this;
+    }
+
+    public long getIdleEvictMillis() {
+        return idleEvictMillis;
+    }
+
+    public UpstreamConfig setIdleEvictMillis(long idleEvictMillis) {
+        this.idleEvictMillis = idleEvictMillis;
+        return this;
+    }
+
+    public List<URI> getPrewarmUris() {
+        return prewarmUris;
+    }
+
+    public UpstreamConfig setPrewarmUris(List<URI> prewarmUris) {
+        this.prewarmUris = prewarmUris;
+        return this;
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright 2025 Samitha Chathuranga
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.nz.postal.address.upstream;
+
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Status, headers and body of an upstream HTTP response.
+ */
+public class UpstreamResponse {
+    private final int statusCode;
+    private final String reasonPhrase;
+    private final Map<String, String> headers;
+    private final String body;
+
+    /**
+     * @param statusCode   HTTP status code
+     * @param reasonPhrase HTTP reason phrase, used in error messages
+     * @param headers      response headers, keyed by lower case header name
+     * @param body         response body
+     */
+    public UpstreamResponse(int statusCode, String reasonPhrase, Map<String, String> headers, String body) {
+        this.statusCode = statusCode;
+        this.reasonPhrase = reasonPhrase;
+        this.headers = headers;
+        this.body = body;
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    public String getReasonPhrase() {
+        return reasonPhrase;
+    }
+
+    public String getHeader(String name) {
+        return headers.get(name.toLowerCase(Locale.ROOT));
+    }
+
+    public String getBody() {
+        return body;
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2025 Samitha Chathuranga
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.nz.postal.address.upstream;
+
+import java.io.Closeable;
+import java.net.URI;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * HTTP transport used to call the NZ Post token and suggest endpoints. Implementations apply the connect, response
+ * and pool-acquire timeouts of their {@link UpstreamConfig}, and report a timeout as an
+ * {@link org.nz.postal.address.exception.UpstreamServerException} with status 504.
+ */
+public interface UpstreamTransport extends Closeable {
+
+    /**
+     * Sends a GET request.
+     *
+     * @param uri     request URI
+     * @param headers request headers
+     * @return the upstream response
+     * @throws Exception if the request could not be completed
+     */
+    default UpstreamResponse get(URI uri, Map<String, String> headers) throws Exception {
+        return get(uri, headers, BodyReader.STRING);
+    }
+
+    /**
+     * Sends a GET request, reading the body of a 2xx response with the given reader. Bodies of other responses are
+     * read as strings.
+     *
+     * @param uri               request URI
+     * @param headers           request headers
+     * @param successBodyReader reader of the body of a 2xx response
+     * @return the upstream response
+     * @throws Exception if the request could not be completed
+     */
+    default UpstreamResponse get(URI uri, Map<String, String> headers, BodyReader successBodyReader)
+            throws Exception {
+        return get(uri, headers, successBodyReader, AbortSignal.NONE);
+    }
+
+    /**
+     * Sends a GET request which can be aborted from another thread, releasing its connection right away.
+     *
+     * @param uri               request URI
+     * @param headers           request headers
+     * @param successBodyReader reader of the body of a 2xx response
+     * @param abort             signal which aborts the request
+     * @return the upstream response
+     * @throws Exception if the request could not be completed or was aborted
+     */
+    UpstreamResponse get(URI uri, Map<String, String> headers, BodyReader successBodyReader, AbortSignal abort)
+            throws Exception;
+
+    /**
+     * Sends a POST request without a body.
+     *
+     * @param uri     request URI
+     * @param headers request headers
+     * @return the upstream response
+     * @throws Exception if the request could not be completed
+     */
+    UpstreamResponse post(URI uri, Map<String, String> headers) throws Exception;
+
+    /**
+     * Opens a pooled connection to each of the given URIs, so the first real request does not pay for the TCP and
+     * TLS handshakes. Failures are logged and ignored.
+     *
+     * @param uris URIs to connect to
+     */
+    void prewarm(List<URI> uris);
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2025 Samitha Chathuranga
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.nz.postal.address.upstream;
+
+import java.net.URI;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Prebuilt URI of an upstream resource with a fixed list of query parameters, so that a request URI is built with a
+ * single string concatenation rather than parsing the base URL on every call. Values are form encoded, as
+ * {@code URIBuilder} does.
+ */
+public final class UriTemplate {
+    private final String baseUrl;
+    private final String[] separators;
+
+    /**
+     * @param baseUrl        URL of the resource, which may already have a query string, or null if it is not configured
+     * @param parameterNames names of the query parameters, in the order their values are passed to {@link #expand}
+     */
+    public UriTemplate(String baseUrl, String... parameterNames) {
+        this.baseUrl = baseUrl;
+        this.separators = new String[parameterNames.length];
+        char separator = baseUrl != null && baseUrl.indexOf('?') >= 0 ? '&' : '?';
+        for (int i = 0; i < parameterNames.length; i++) {
+            separators[i] = separator + URLEncoder.encode(parameterNames[i], StandardCharsets.UTF_8) + "=";
+            separator = '&';
+        }
+    }
+
+    /**
+     * Builds the URI with the given parameter values.
+     *
+     * @param values values of the query parameters, in the order of the names
+     * @return the URI
+     * @throws IllegalStateException if the base URL is not configured
+     */
+    public URI expand(String... values) {
+        if (baseUrl == null) {
+            throw new IllegalStateException("Upstream URL is not configured");
+        }
+        if (values.length != separators.length) {
+            throw new IllegalArgumentException("Expected " + separators.length + " parameter values");
+        }
+        StringBuilder uri = new StringBuilder(baseUrl.length() + 64).append(baseUrl);
+        for (int i = 0; i < values.length; i++) {
+            uri.append(separators[i]).append(URLEncoder.encode(values[i], StandardCharsets.UTF_8));
+        }
+        return URI.create(uri.toString());
+    }
+
+    public String getBaseUrl() {
+        return baseUrl;
+    }
+}
@@ -0,0 +1,119 @@
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.nz.postal.address.server.AddressCheckerServer;
+import org.nz.postal.address.upstream.StubUpstreamServer;
+
+import java.io.File;
+import java.net.ConnectException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.Assert.*;
+
+public class AddressCheckerServerTestCase {
+
+    private AddressCheckerServer server;
+    private HttpClient client;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new AddressCheckerServer(0, "/address/suggestions");
+        server.start();
+        client = HttpClient.newHttpClient();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop();
+    }
+
+    @Test
+    public void testConcurrentRequestsAreHandledByTheLambdaHandler() throws Exception {
+        URI uri = URI.create("http://localhost:" + server.getPort() + "/address/suggestions?max=5");
+        List<CompletableFuture<HttpResponse<String>>> responses = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            responses.add(client.sendAsync(HttpRequest.newBuilder(uri).GET().build(),
+                    HttpResponse.BodyHandlers.ofString()));
+        }
+
+        for (CompletableFuture<HttpResponse<String>> response : responses) {
+            assertEquals("Expected HTTP 400 status", 400, response.get().statusCode());
+            assertTrue(response.get().body().contains("Missing"));
+            assertEquals("*", response.get().headers().firstValue("Access-Control-Allow-Origin").orElse(null));
+        }
+    }
+
+    @Test
+    public void testConcurrentSuggestRequestsAreServedFromTheUpstream() throws Exception {
+        // The handler reads the NZ Post URLs from the environment once per JVM, so the server runs in its own JVM
+        try (StubUpstreamServer stub = new StubUpstreamServer()) {
+            int port;
+            try (ServerSocket socket = new ServerSocket(0)) {
+                port = socket.getLocalPort();
+            }
+            ProcessBuilder builder = new ProcessBuilder(
+                    System.getProperty("java.home") + File.separator + "bin" + File.separator + "java",
+                    "-cp", System.getProperty("java.class.path"), AddressCheckerServer.class.getName())
+                    .redirectErrorStream(true)
+                    .redirectOutput(ProcessBuilder.Redirect.DISCARD);
+            Map<String, String> environment = builder.environment();
+            environment.put(AddressCheckerServer.SERVER_PORT_ENV_VAR, String.valueOf(port));
+            environment.put("NZ_POST_ADDRESS_CHECKER_SUGGEST_API_URL", stub.getSuggestUrl());
+            environment.put("NZ_POST_API_OAUTH_TOKEN_URL", stub.getTokenUrl());
+            environment.put("NZ_POST_API_CLIENT_ID", "test-client");
+            environment.put("NZ_POST_API_CLIENT_SECRET", "test-secret");
+            environment.put("SECRETS_PROVIDER", "environment");
+            environment.put("PRIMING_MODE", "off");
+            environment.put("METRICS_EMF_ENABLED", "false");
+            environment.put("UPSTREAM_RATE_LIMIT_PER_SECOND", "1000");
+            environment.put("DETAILS_PREFETCH_DEPTH", "0");
+            Process process = builder.start();
+            try {
+                String baseUri = "http://localhost:" + port + "/address/suggestions?max=5&q=";
+                awaitServer(URI.create(baseUri + "ping"));
+
+                List<CompletableFuture<HttpResponse<String>>> responses = new ArrayList<>();
+                for (int i = 0; i < 20; i++) {
+                    responses.add(client.sendAsync(
+                            HttpRequest.newBuilder(URI.create(baseUri + i + "%20Server%20Street")).GET().build(),
+                            HttpResponse.BodyHandlers.ofString()));
+                }
+                for (int i = 0; i < 20; i++) {
+                    HttpResponse<String> response = responses.get(i).get();
+                    assertEquals("Expected HTTP 200 status", 200, response.statusCode());
+                    assertTrue(response.body().contains(i + " server street"));
+                    assertEquals("MISS", response.headers().firstValue("X-Cache").orElse(null));
+                }
+                // One call per distinct query, and the token is fetched once for all of them
+                assertEquals(21, stub.getSuggestRequests());
+                assertEquals(1, stub.getTokenRequests());
+            } finally {
+                process.destroy();
+                process.waitFor();
+            }
+        }
+    }
+
+    private void awaitServer(URI uri) throws Exception {
+        for (int i = 0; ; i++) {
+            try {
+                assertEquals(200, client.send(HttpRequest.newBuilder(uri).GET().build(),
+                        HttpResponse.BodyHandlers.ofString()).statusCode());
+                return;
+            } catch (ConnectException e) {
+                if (i == 300) {
+                    throw e;
+                }
+                Thread.sleep(100);
+            }
+        }
+    }
+}
@@ -0,0 +1,122 @@
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.nz.postal.address.cache.SuggestionCache;
+import org.nz.postal.address.details.AddressDetailsService;
+import org.nz.postal.address.upstream.Deadline;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class AddressDetailsServiceTestCase {
+
+    private static final String SUGGEST_RESPONSE = "{\"success\":true,\"addresses\":["
+            + "{\"DPID\":1000,\"FullAddress\":\"1 Queen Street\"},{\"DPID\":1001,\"FullAddress\":\"2 Queen Street\"},"
+            + "{\"DPID\":1002,\"FullAddress\":\"3 Queen Street\"},{\"DPID\":1003,\"FullAddress\":\"4 Queen Street\"}],"
+            + "\"status\":\"success\"}";
+
+    private final List<String> fetched = new CopyOnWriteArrayList<>();
+    private volatile CountDownLatch release;
+    private volatile boolean prefetchAllowed;
+    private SuggestionCache detailsCache;
+    private AddressDetailsService service;
+
+    @Before
+    public void setUp() {
+        fetched.clear();
+        release = new CountDownLatch(0);
+        prefetchAllowed = true;
+        service = newService(2, 1);
+    }
+
+    @After
+    public void tearDown() {
+        release.countDown();
+    }
+
+    private AddressDetailsService newService(int prefetchDepth, int prefetchConcurrency) {
+        AddressDetailsService.DetailsFetcher fetcher = (dpid, deadline) -> {
+            release.await(5, TimeUnit.SECONDS);
+            fetched.add(dpid);
+            return "{\"details\":[{\"DPID\":" + dpid + "}]}";
+        };
+        detailsCache = new SuggestionCache(100, 1024 * 1024, 60_000);
+        return new AddressDetailsService(fetcher, detailsCache, 100, prefetchDepth, prefetchConcurrency,
+                () -> prefetchAllowed);
+    }
+
+    private void awaitPrefetches(AddressDetailsService service) throws InterruptedException {
+        for (int i = 0; i < 500 && service.getPendingPrefetches() > 0; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, service.getPendingPrefetches());
+    }
+
+    @Test
+    public void testPrefetchesTopSuggestionsAndCountsHits() throws Exception {
+        service.prefetch(SUGGEST_RESPONSE);
+        awaitPrefetches(service);
+        assertEquals(List.of("1000", "1001"), fetched);
+        assertEquals(2, service.getPrefetches());
+
+        assertEquals("{\"details\":[{\"DPID\":1001}]}", service.getCached("1001"));
+        // A prefetched entry counts as a hit on first use only
+        service.getCached("1001");
+        assertNull(service.getCached("1003"));
+        assertEquals(1, service.getPrefetchHits());
+
+        service.fetch("1003", Deadline.ofMillis(1000));
+        assertNotNull(service.getCached("1003"));
+        assertEquals(1, service.getPrefetchHits());
+        assertEquals(1, service.getOnDemandFetches());
+    }
+
+    @Test
+    public void testCachedAndInFlightDetailsAreNotPrefetchedAgain() throws Exception {
+        release = new CountDownLatch(1);
+        service.prefetch(SUGGEST_RESPONSE);
+        service.prefetch(SUGGEST_RESPONSE);
+        assertEquals(2, service.getPendingPrefetches());
+        release.countDown();
+        awaitPrefetches(service);
+
+        service.prefetch(SUGGEST_RESPONSE);
+        awaitPrefetches(service);
+        assertEquals(2, fetched.size());
+        assertEquals(0, service.getPrefetchesDropped());
+        // Checking whether details still need to be prefetched does not skew the details cache counters
+        assertEquals(0, detailsCache.getHitCount());
+        assertEquals(0, detailsCache.getMissCount());
+    }
+
+    @Test
+    public void testPrefetchesBeyondQueueCapacityAreDropped() throws Exception {
+        // One prefetch running and depth * concurrency + 1 = 3 queued, while the fetches are blocked
+        release = new CountDownLatch(1);
+        for (int i = 1; i <= 3; i++) {
+            service.prefetch(SUGGEST_RESPONSE.replace("\"DPID\":10", "\"DPID\":" + i + "0"));
+        }
+        assertEquals(4, service.getPendingPrefetches());
+        assertEquals(2, service.getPrefetchesDropped());
+        release.countDown();
+        awaitPrefetches(service);
+        assertEquals(4, service.getPrefetches());
+    }
+
+    @Test
+    public void testPrefetchSkippedWhenNotAllowed() throws Exception {
+        prefetchAllowed = false;
+        service.prefetch(SUGGEST_RESPONSE);
+        service.prefetch("not json");
+        awaitPrefetches(service);
+        assertTrue(fetched.isEmpty());
+        assertNull(service.getCached("1000"));
+
+        newService(0, 1).prefetch(SUGGEST_RESPONSE);
+        assertTrue(fetched.isEmpty());
+    }
+}
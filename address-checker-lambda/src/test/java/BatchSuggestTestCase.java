@@ -0,0 +1,109 @@
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Before;
+import org.junit.Test;
+import org.nz.postal.address.NZPostAddressCheckerLambda;
+
+import static org.junit.Assert.*;
+
+public class BatchSuggestTestCase {
+
+    private NZPostAddressCheckerLambda handler;
+
+    @Before
+    public void setUp() {
+        handler = new NZPostAddressCheckerLambda();
+    }
+
+    private APIGatewayProxyResponseEvent post(String body) {
+        return post(body, null);
+    }
+
+    private APIGatewayProxyResponseEvent post(String body, Context context) {
+        return send("POST", "/batch", body, context);
+    }
+
+    private APIGatewayProxyResponseEvent send(String method, String path, String body, Context context) {
+        APIGatewayProxyRequestEvent request = new APIGatewayProxyRequestEvent();
+        request.setHttpMethod(method);
+        request.setPath(path);
+        request.setBody(body);
+        return handler.handleRequest(request, context);
+    }
+
+    private static Context contextWithRemainingMillis(int remainingMillis) {
+        return new Context() {
+            @Override public String getAwsRequestId() { return "test-request-id"; }
+            @Override public String getLogGroupName() { return "test-log-group"; }
+            @Override public String getLogStreamName() { return "test-log-stream"; }
+            @Override public String getFunctionName() { return "NZPostAddressCheckerLambda"; }
+            @Override public String getFunctionVersion() { return "1.0"; }
+            @Override public String getInvokedFunctionArn() { return "arn:aws:lambda:local:test"; }
+            @Override public com.amazonaws.services.lambda.runtime.CognitoIdentity getIdentity() { return null; }
+            @Override public com.amazonaws.services.lambda.runtime.ClientContext getClientContext() { return null; }
+            @Override public int getRemainingTimeInMillis() { return remainingMillis; }
+            @Override public int getMemoryLimitInMB() { return 512; }
+            @Override public com.amazonaws.services.lambda.runtime.LambdaLogger getLogger() { return null; }
+        };
+    }
+
+    @Test
+    public void testResultsAreReturnedInOrderWithPerItemErrors() throws Exception {
+        // The cache is keyed on the normalized query
+        NZPostAddressCheckerLambda.getSuggestionCache().put("batch cached street", "3", "{\"addresses\":[]}");
+
+        APIGatewayProxyResponseEvent response = post(
+                "{\"max\": 3, \"queries\": [\"Batch Cached St\", {\"q\": \"Batch Uncached St\", \"max\": 2}]}");
+
+        assertEquals(200, (int) response.getStatusCode());
+        JsonNode results = new ObjectMapper().readTree(response.getBody()).get("results");
+        assertEquals(2, results.size());
+        assertEquals("Batch Cached St", results.get(0).get("q").asText());
+        assertEquals(200, results.get(0).get("status").asInt());
+        assertEquals("HIT", results.get(0).get("cache").asText());
+        assertTrue(results.get(0).get("result").get("addresses").isArray());
+        assertEquals("Batch Uncached St", results.get(1).get("q").asText());
+        assertEquals("2", results.get(1).get("max").asText());
+        assertNotEquals(200, results.get(1).get("status").asInt());
+        assertNotNull(results.get(1).get("error"));
+    }
+
+    @Test
+    public void testQueriesAreReportedAsTimedOutWhenTheRequestDeadlineRunsOut() throws Exception {
+        // Less remaining time than the deadline safety margin, so the deadline has run out before the queries start
+        APIGatewayProxyResponseEvent response = post(
+                "{\"queries\": [\"Batch Late St\", \"Batch Later St\"]}", contextWithRemainingMillis(100));
+
+        assertEquals(200, (int) response.getStatusCode());
+        JsonNode results = new ObjectMapper().readTree(response.getBody()).get("results");
+        assertEquals(2, results.size());
+        for (int i = 0; i < 2; i++) {
+            assertEquals(504, results.get(i).get("status").asInt());
+            assertNotNull(results.get(i).get("error"));
+        }
+        assertEquals("Batch Later St", results.get(1).get("q").asText());
+    }
+
+    @Test
+    public void testInvalidBatchBodiesAreRejected() {
+        assertEquals(400, (int) post(null).getStatusCode());
+        assertEquals(400, (int) post("not json").getStatusCode());
+        assertEquals(400, (int) post("{\"queries\": []}").getStatusCode());
+        assertEquals(400, (int) post("{\"queries\": [{\"max\": 5}]}").getStatusCode());
+    }
+
+    @Test
+    public void testBatchIsOnlyPostedToTheBatchPath() {
+        String body = "{\"queries\": [\"Batch Cached St\"]}";
+        APIGatewayProxyResponseEvent response = send("POST", "/suggest", body, null);
+        assertEquals(405, (int) response.getStatusCode());
+        assertEquals("GET", response.getHeaders().get("Allow"));
+
+        response = send("GET", "/batch", body, null);
+        assertEquals(405, (int) response.getStatusCode());
+        assertEquals("POST", response.getHeaders().get("Allow"));
+    }
+}
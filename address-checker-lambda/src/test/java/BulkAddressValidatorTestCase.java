@@ -0,0 +1,83 @@
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.nz.postal.address.BulkAddressValidator;
+import org.nz.postal.address.NZPostAddressCheckerLambda;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class BulkAddressValidatorTestCase {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private Path directory;
+    private BulkAddressValidator validator;
+
+    @Before
+    public void setUp() throws Exception {
+        directory = Files.createTempDirectory("bulk-validation");
+        NZPostAddressCheckerLambda.getSuggestionCache().put("1 bulk street", "5", "{\"addresses\":[1]}");
+        NZPostAddressCheckerLambda.getSuggestionCache().put("2 bulk street", "5", "{\"addresses\":[2]}");
+        validator = new BulkAddressValidator(new NZPostAddressCheckerLambda(), 2, 2);
+    }
+
+    @After
+    public void tearDown() {
+        NZPostAddressCheckerLambda.getSuggestionCache().remove("1 bulk street", "5");
+        NZPostAddressCheckerLambda.getSuggestionCache().remove("2 bulk street", "5");
+    }
+
+    @Test
+    public void testCsvRowsAreNormalizedAndWrittenInOrder() throws Exception {
+        Path input = directory.resolve("input.csv");
+        Files.write(input, List.of("id,address", "1,\"1  Bulk Street \"", "2,2 Bulk Street", "3,", "4,1 bulk street"),
+                StandardCharsets.UTF_8);
+        Path output = directory.resolve("output.jsonl");
+
+        BulkAddressValidator.Summary summary = validator.run(input, output, "address");
+
+        List<String> lines = Files.readAllLines(output, StandardCharsets.UTF_8);
+        assertEquals(4, lines.size());
+        JsonNode first = mapper.readTree(lines.get(0));
+        assertEquals(2, first.get("line").asInt());
+        assertEquals("1  Bulk Street ", first.get("q").asText());
+        assertEquals(200, first.get("status").asInt());
+        assertEquals(1, first.get("result").get("addresses").get(0).asInt());
+        assertEquals(400, mapper.readTree(lines.get(2)).get("status").asInt());
+        // A duplicate row keeps its own query
+        JsonNode duplicate = mapper.readTree(lines.get(3));
+        assertEquals("1 bulk street", duplicate.get("q").asText());
+        assertEquals(5, duplicate.get("line").asInt());
+        assertEquals(1, duplicate.get("result").get("addresses").get(0).asInt());
+        assertEquals(4, summary.getRows());
+        assertEquals(1, summary.getErrors());
+        assertFalse(Files.exists(directory.resolve("output.jsonl.checkpoint")));
+    }
+
+    @Test
+    public void testRunResumesFromCheckpoint() throws Exception {
+        Path input = directory.resolve("input.jsonl");
+        Files.write(input, List.of("{\"address\":\"1 Bulk Street\"}", "{\"address\":\"2 Bulk Street\"}"),
+                StandardCharsets.UTF_8);
+        Path output = directory.resolve("output.jsonl");
+        String firstLine = "{\"q\":\"1 Bulk Street\",\"status\":200,\"line\":1}" + System.lineSeparator();
+        // Simulate a crash after line 1 was checkpointed and a partial line 2 was written
+        Files.write(output, (firstLine + "{\"q\":\"2 Bu").getBytes(StandardCharsets.UTF_8));
+        Files.write(directory.resolve("output.jsonl.checkpoint"),
+                List.of("line=1", "offset=" + firstLine.getBytes(StandardCharsets.UTF_8).length));
+
+        BulkAddressValidator.Summary summary = validator.run(input, output, "address");
+
+        List<String> lines = Files.readAllLines(output, StandardCharsets.UTF_8);
+        assertEquals(2, lines.size());
+        assertEquals(1, summary.getRows());
+        assertEquals("2 Bulk Street", mapper.readTree(lines.get(1)).get("q").asText());
+        assertEquals(2, mapper.readTree(lines.get(1)).get("line").asInt());
+    }
+}
@@ -0,0 +1,127 @@
+import org.junit.Before;
+import org.junit.Test;
+import org.nz.postal.address.Utils;
+import org.nz.postal.address.exception.UpstreamServerException;
+import org.nz.postal.address.metrics.MetricsRegistry;
+import org.nz.postal.address.upstream.CircuitBreaker;
+
+import static org.junit.Assert.*;
+
+public class CircuitBreakerTestCase {
+
+    private long now;
+    private CircuitBreaker circuitBreaker;
+
+    @Before
+    public void setUp() {
+        now = 0;
+        circuitBreaker = new CircuitBreaker("test", 10, 4, 50, 1000, 50, 30000, 2, () -> now);
+    }
+
+    @Test
+    public void testCircuitOpensOnFailureRateAndRejectsFast() throws Exception {
+        MetricsRegistry metrics = Utils.getMetrics();
+        long opened = metrics.getCount("CircuittestTransitionsToOPEN");
+        long rejected = metrics.getCount("CircuittestRejectedCalls");
+        callSucceeds();
+        callSucceeds();
+        callFails(500);
+        assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+        callFails(502);
+        assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+
+        try {
+            circuitBreaker.call(() -> {
+                throw new AssertionError("Calls must not reach the upstream while the circuit is open");
+            });
+            fail("Expected the call to be rejected");
+        } catch (UpstreamServerException e) {
+            assertEquals(503, e.getStatusCode());
+        }
+        assertEquals(1, circuitBreaker.getRejectedCalls());
+        assertEquals(opened + 1, metrics.getCount("CircuittestTransitionsToOPEN"));
+        assertEquals(rejected + 1, metrics.getCount("CircuittestRejectedCalls"));
+    }
+
+    @Test
+    public void testClientErrorsDoNotOpenCircuit() throws Exception {
+        for (int i = 0; i < 10; i++) {
+            callFails(400);
+        }
+        assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+    }
+
+    @Test
+    public void testCircuitOpensOnSlowCallRate() throws Exception {
+        for (int i = 0; i < 4; i++) {
+            circuitBreaker.call(() -> {
+                now += 1500;
+                return "slow";
+            });
+        }
+        assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+    }
+
+    @Test
+    public void testSuccessfulProbesCloseCircuit() throws Exception {
+        long closed = Utils.getMetrics().getCount("CircuittestTransitionsToCLOSED");
+        openCircuit();
+        now += 30000;
+        callSucceeds();
+        assertEquals(CircuitBreaker.State.HALF_OPEN, circuitBreaker.getState());
+        callSucceeds();
+        assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+        assertEquals(closed + 1, Utils.getMetrics().getCount("CircuittestTransitionsToCLOSED"));
+    }
+
+    @Test
+    public void testFailedProbeReopensCircuit() throws Exception {
+        openCircuit();
+        now += 30000;
+        callFails(504);
+        assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+        assertEquals(2, circuitBreaker.getTimesOpened());
+    }
+
+    @Test
+    public void testProbeFailingWithAnErrorReleasesItsPermit() throws Exception {
+        openCircuit();
+        now += 30000;
+        try {
+            circuitBreaker.call(() -> {
+                throw new StackOverflowError();
+            });
+            fail("Expected the error");
+        } catch (StackOverflowError e) {
+            // Expected
+        }
+        assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+
+        now += 30000;
+        callSucceeds();
+        callSucceeds();
+        assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+    }
+
+    private void openCircuit() throws Exception {
+        for (int i = 0; i < 4; i++) {
+            callFails(500);
+        }
+        assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+    }
+
+    private void callSucceeds() throws Exception {
+        assertEquals("ok", circuitBreaker.call(() -> "ok"));
+    }
+
+    private void callFails(int statusCode) throws Exception {
+        try {
+            circuitBreaker.call(() -> {
+                throw new UpstreamServerException("Upstream error", statusCode);
+            });
+            fail("Expected the upstream error");
+        } catch (UpstreamServerException e) {
+            assertEquals(statusCode, e.getStatusCode());
+        }
+    }
+}
@@ -0,0 +1,166 @@
+import org.junit.Test;
+import org.nz.postal.address.Utils;
+import org.nz.postal.address.exception.UpstreamServerException;
+import org.nz.postal.address.metrics.MetricNames;
+import org.nz.postal.address.metrics.MetricsRegistry;
+import org.nz.postal.address.upstream.AbortSignal;
+import org.nz.postal.address.upstream.Deadline;
+import org.nz.postal.address.upstream.HedgedCaller;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class HedgedCallerTestCase {
+
+    /**
+     * Waits like a slow upstream request, failing as the transports do when the request is aborted.
+     */
+    private static String slowRequest(AbortSignal abort, long millis, CountDownLatch aborted) throws Exception {
+        abort.onAbort(aborted::countDown);
+        if (aborted.await(millis, TimeUnit.MILLISECONDS)) {
+            throw new IOException("Request aborted");
+        }
+        return "slow";
+    }
+
+    @Test
+    public void testSlowAttemptIsHedgedAndFasterHedgeWins() throws Exception {
+        HedgedCaller hedgedCaller = new HedgedCaller(95, 50);
+        AtomicInteger attempts = new AtomicInteger();
+        CountDownLatch aborted = new CountDownLatch(1);
+        MetricsRegistry metrics = Utils.getMetrics();
+        long hedgesSent = metrics.getCount(MetricNames.UPSTREAM_HEDGES_SENT);
+        long hedgeWins = metrics.getCount(MetricNames.UPSTREAM_HEDGE_WINS);
+
+        String result = hedgedCaller.call(abort -> {
+            if (attempts.incrementAndGet() == 1) {
+                return slowRequest(abort, 2000, aborted);
+            }
+            return "hedged";
+        }, Deadline.ofMillis(1000));
+
+        assertEquals("hedged", result);
+        assertTrue("Expected the losing attempt to be aborted", aborted.await(500, TimeUnit.MILLISECONDS));
+        assertEquals(1, hedgedCaller.getHedgesSent());
+        assertEquals(1, hedgedCaller.getHedgeWins());
+        assertEquals(hedgesSent + 1, metrics.getCount(MetricNames.UPSTREAM_HEDGES_SENT));
+        assertEquals(hedgeWins + 1, metrics.getCount(MetricNames.UPSTREAM_HEDGE_WINS));
+    }
+
+    @Test
+    public void testSlowAttemptIsNotHedgedWithoutPermit() throws Exception {
+        HedgedCaller hedgedCaller = new HedgedCaller(95, 50);
+        AtomicInteger attempts = new AtomicInteger();
+        AtomicInteger permitRequests = new AtomicInteger();
+
+        String result = hedgedCaller.call(abort -> {
+            attempts.incrementAndGet();
+            Thread.sleep(150);
+            return "slow";
+        }, Deadline.ofMillis(1000), () -> {
+            permitRequests.incrementAndGet();
+            return false;
+        });
+
+        assertEquals("slow", result);
+        assertEquals(1, attempts.get());
+        assertEquals(1, permitRequests.get());
+        assertEquals(0, hedgedCaller.getHedgesSent());
+        assertEquals(1, hedgedCaller.getHedgesSkipped());
+    }
+
+    @Test
+    public void testFastAttemptIsNotHedged() throws Exception {
+        HedgedCaller hedgedCaller = new HedgedCaller(95, 500);
+
+        assertEquals("ok", hedgedCaller.call(abort -> "ok", Deadline.ofMillis(1000)));
+        assertEquals(0, hedgedCaller.getHedgesSent());
+    }
+
+    @Test
+    public void testFailedAttemptWaitsForTheOtherAttempt() throws Exception {
+        HedgedCaller hedgedCaller = new HedgedCaller(95, 50);
+        AtomicInteger attempts = new AtomicInteger();
+
+        String result = hedgedCaller.call(abort -> {
+            if (attempts.incrementAndGet() == 1) {
+                Thread.sleep(100);
+                return "first";
+            }
+            throw new IllegalStateException("hedge failed");
+        }, Deadline.ofMillis(1000));
+
+        assertEquals("first", result);
+        assertEquals(0, hedgedCaller.getHedgeWins());
+    }
+
+    @Test
+    public void testCallFailsFastAndAbortsAttemptWhenDeadlineRunsOut() throws Exception {
+        // The hedge delay is longer than the deadline, so only the first attempt is sent
+        HedgedCaller hedgedCaller = new HedgedCaller(95, 5000);
+        CountDownLatch aborted = new CountDownLatch(1);
+        long deadlinesExceeded = Utils.getMetrics().getCount(MetricNames.UPSTREAM_DEADLINES_EXCEEDED);
+        long start = System.nanoTime();
+        try {
+            hedgedCaller.call(abort -> slowRequest(abort, 2000, aborted), Deadline.ofMillis(100));
+            fail("Expected the deadline to be exceeded");
+        } catch (UpstreamServerException e) {
+            assertEquals(504, e.getStatusCode());
+        }
+        assertTrue((System.nanoTime() - start) / 1_000_000 < 1000);
+        assertTrue("Expected the attempt to be aborted", aborted.await(500, TimeUnit.MILLISECONDS));
+        assertEquals(1, hedgedCaller.getDeadlinesExceeded());
+        assertEquals(deadlinesExceeded + 1, Utils.getMetrics().getCount(MetricNames.UPSTREAM_DEADLINES_EXCEEDED));
+    }
+
+    @Test
+    public void testAttemptRunsOnCallerThreadWithoutHedging() throws Exception {
+        HedgedCaller hedgedCaller = new HedgedCaller(0, 50);
+        Thread caller = Thread.currentThread();
+
+        assertEquals("ok", hedgedCaller.call(abort -> {
+            assertSame(caller, Thread.currentThread());
+            return "ok";
+        }, Deadline.ofMillis(1000)));
+
+        CountDownLatch aborted = new CountDownLatch(1);
+        long start = System.nanoTime();
+        try {
+            hedgedCaller.call(abort -> slowRequest(abort, 2000, aborted), Deadline.ofMillis(100));
+            fail("Expected the deadline to be exceeded");
+        } catch (UpstreamServerException e) {
+            assertEquals(504, e.getStatusCode());
+        }
+        assertTrue((System.nanoTime() - start) / 1_000_000 < 1000);
+        assertEquals(0, aborted.getCount());
+    }
+
+    @Test
+    public void testAttemptRunsOnCallerThreadWhenPoolIsBusy() throws Exception {
+        HedgedCaller hedgedCaller = new HedgedCaller(95, 5000, 1);
+        CountDownLatch release = new CountDownLatch(1);
+        Thread busy = new Thread(() -> {
+            try {
+                hedgedCaller.call(abort -> release.await(2, TimeUnit.SECONDS), Deadline.ofMillis(3000));
+            } catch (Exception e) {
+                // Not under test
+            }
+        });
+        busy.start();
+        Thread.sleep(100);
+        try {
+            Thread caller = Thread.currentThread();
+            assertEquals("inline", hedgedCaller.call(abort -> {
+                assertSame(caller, Thread.currentThread());
+                return "inline";
+            }, Deadline.ofMillis(1000)));
+        } finally {
+            release.countDown();
+            busy.join();
+        }
+    }
+}
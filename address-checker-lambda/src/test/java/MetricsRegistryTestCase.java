@@ -0,0 +1,99 @@
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Before;
+import org.junit.Test;
+import org.nz.postal.address.Utils;
+import org.nz.postal.address.auth.TokenManager;
+import org.nz.postal.address.metrics.MetricNames;
+import org.nz.postal.address.metrics.MetricsRegistry;
+
+import static org.junit.Assert.*;
+
+public class MetricsRegistryTestCase {
+
+    private MetricsRegistry metrics;
+
+    @Before
+    public void setUp() {
+        metrics = new MetricsRegistry("TestNamespace", "test-function", false, () -> 1_700_000_000_000L);
+    }
+
+    @Test
+    public void testCountersAndTimersAreTotalled() {
+        metrics.increment(MetricNames.CACHE_PREFIX + "HIT");
+        metrics.increment(MetricNames.CACHE_PREFIX + "HIT");
+        metrics.recordTime(MetricNames.UPSTREAM_SUGGEST_TIME, 40);
+        metrics.recordTime(MetricNames.UPSTREAM_SUGGEST_TIME, 60);
+        metrics.flush();
+        metrics.increment(MetricNames.CACHE_PREFIX + "HIT");
+
+        assertEquals(3, metrics.getCount("CacheHIT"));
+        assertEquals(0, metrics.getCount("CacheMISS"));
+        assertEquals(2, metrics.getTimerCount(MetricNames.UPSTREAM_SUGGEST_TIME));
+        assertEquals(100, metrics.getTimerTotalMillis(MetricNames.UPSTREAM_SUGGEST_TIME));
+    }
+
+    @Test
+    public void testFlushWritesEmbeddedMetricFormat() throws Exception {
+        metrics.increment(MetricNames.COLD_STARTS);
+        metrics.increment(MetricNames.UPSTREAM_STATUS_PREFIX + 200, 2);
+        metrics.recordTime(MetricNames.REQUEST_TIME, 12);
+        metrics.recordTime(MetricNames.REQUEST_TIME, 8);
+
+        JsonNode emf = new ObjectMapper().readTree(metrics.flush());
+
+        JsonNode directive = emf.get("_aws").get("CloudWatchMetrics").get(0);
+        assertEquals(1_700_000_000_000L, emf.get("_aws").get("Timestamp").asLong());
+        assertEquals("TestNamespace", directive.get("Namespace").asText());
+        assertEquals("FunctionName", directive.get("Dimensions").get(0).get(0).asText());
+        assertEquals(3, directive.get("Metrics").size());
+        assertEquals("test-function", emf.get("FunctionName").asText());
+        assertEquals(1, emf.get("ColdStarts").asLong());
+        assertEquals(2, emf.get("UpstreamStatus200").asLong());
+        assertEquals("[12,8]", emf.get("RequestTime").toString());
+        assertNull("Flushed values are not written again", metrics.flush());
+    }
+
+    @Test
+    public void testEmfLineIsCappedPerMetric() throws Exception {
+        for (int i = 0; i < 150; i++) {
+            metrics.recordTime(MetricNames.REQUEST_TIME, i);
+        }
+        JsonNode emf = new ObjectMapper().readTree(metrics.flush());
+
+        assertEquals(100, emf.get("RequestTime").size());
+        assertEquals(150, metrics.getTimerCount(MetricNames.REQUEST_TIME));
+    }
+
+    @Test
+    public void testFlushWritesOnlyValuesRecordedSinceLastFlush() throws Exception {
+        metrics = new MetricsRegistry("Test\"Namespace", "test\\function", false, () -> 1L);
+        metrics.increment(MetricNames.COLD_STARTS);
+        metrics.recordTime(MetricNames.REQUEST_TIME, 5);
+        metrics.flush();
+        metrics.recordTime(MetricNames.REQUEST_TIME, 7);
+
+        JsonNode emf = new ObjectMapper().readTree(metrics.flush());
+
+        assertEquals("Test\"Namespace", emf.get("_aws").get("CloudWatchMetrics").get(0).get("Namespace").asText());
+        assertEquals("test\\function", emf.get("FunctionName").asText());
+        assertEquals(1, emf.get("_aws").get("CloudWatchMetrics").get(0).get("Metrics").size());
+        assertEquals(7, emf.get("RequestTime").asLong());
+        assertNull(emf.get("ColdStarts"));
+    }
+
+    @Test
+    public void testTokenRefreshesAreCounted() throws Exception {
+        long refreshes = Utils.getMetrics().getCount(MetricNames.TOKEN_REFRESHES);
+        TokenManager tokenManager = new TokenManager(
+                () -> new TokenManager.AccessToken("token", System.currentTimeMillis() + 3_600_000), 60_000, 300_000);
+        try {
+            tokenManager.getToken();
+            tokenManager.getToken();
+        } finally {
+            tokenManager.shutdown();
+        }
+        assertEquals(refreshes + 1, Utils.getMetrics().getCount(MetricNames.TOKEN_REFRESHES));
+        assertTrue(Utils.getMetrics().getTimerCount(MetricNames.TOKEN_FETCH_TIME) > 0);
+    }
+}
@@ -0,0 +1,74 @@
+import org.junit.Before;
+import org.junit.Test;
+import org.nz.postal.address.cache.PrefixIndex;
+
+import static org.junit.Assert.*;
+
+public class PrefixIndexTestCase {
+
+    private static final String COMPLETE_RESPONSE = "{\"success\":true,\"addresses\":["
+            + "{\"DPID\":1,\"FullAddress\":\"12 Queen Street, Auckland Central, Auckland 1010\"},"
+            + "{\"DPID\":2,\"FullAddress\":\"12 Quentin Drive, Ohauiti, Tauranga 3112\"}]}";
+
+    private long now;
+    private PrefixIndex index;
+
+    @Before
+    public void setUp() {
+        now = 0;
+        index = new PrefixIndex(10, 1000, () -> now);
+    }
+
+    @Test
+    public void testLongerQueryIsAnsweredFromCompleteShorterPrefix() {
+        index.record("12 Que", "5", COMPLETE_RESPONSE);
+
+        String narrowed = index.narrow("12 Quee", "5");
+
+        assertNotNull(narrowed);
+        assertTrue(narrowed.contains("Queen Street"));
+        assertFalse(narrowed.contains("Quentin"));
+        assertTrue(narrowed.contains("\"success\":true"));
+        assertEquals(1, index.getSavedUpstreamCalls());
+    }
+
+    @Test
+    public void testIncompleteResponseIsNotIndexed() {
+        index.record("12 Que", "2", COMPLETE_RESPONSE);
+
+        assertNull(index.narrow("12 Quee", "2"));
+        assertEquals(0, index.size());
+    }
+
+    @Test
+    public void testLargerMaxIsAnsweredOnlyFromCompleteSmallerMax() {
+        // Two addresses for max 5 are all the matches, so a larger max cannot return more
+        index.record("12 Que", "5", COMPLETE_RESPONSE);
+        assertTrue(index.narrow("12 Quee", "10").contains("Queen Street"));
+        assertNotNull(index.narrow("12 Quee", "3"));
+
+        // Two addresses for max 2 may be cut short, so neither a larger nor the same max is answered locally
+        index.record("34 Que", "2", COMPLETE_RESPONSE);
+        assertNull(index.narrow("34 Quee", "10"));
+        assertNull(index.narrow("34 Quee", "2"));
+    }
+
+    @Test
+    public void testExpiredPrefixIsNotUsed() {
+        index.record("12 Que", "5", COMPLETE_RESPONSE);
+        now = 1000;
+
+        assertNull(index.narrow("12 Quee", "5"));
+        assertEquals(0, index.size());
+    }
+
+    @Test
+    public void testEveryQueryWordMustStartAnAddressWord() {
+        index.record("12", "5", COMPLETE_RESPONSE);
+
+        String narrowed = index.narrow("12 auck", "5");
+        assertTrue(narrowed.contains("Queen Street"));
+        assertFalse(narrowed.contains("Quentin"));
+        assertTrue(index.narrow("12 uckland", "5").contains("\"addresses\":[]"));
+    }
+}
@@ -0,0 +1,65 @@
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+import org.junit.Test;
+import org.nz.postal.address.NZPostAddressCheckerLambda;
+import org.nz.postal.address.exception.BadRequestException;
+import org.nz.postal.address.query.QueryNormalizer;
+
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class QueryNormalizerTestCase {
+
+    private final QueryNormalizer normalizer = new QueryNormalizer(3, 20);
+
+    @Test
+    public void testEquivalentQueriesShareOneCanonicalForm() {
+        assertEquals("1 queen street", normalizer.normalizeQuery("1 queen st"));
+        assertEquals("1 queen street", normalizer.normalizeQuery("1  Queen Street "));
+        assertEquals("1 queen street", normalizer.normalizeQuery("1 QUEEN ST."));
+        assertEquals("12 mangere road", normalizer.normalizeQuery("12 Māngere Rd"));
+    }
+
+    @Test
+    public void testAbbreviationsAreOnlyExpandedAfterStreetNames() {
+        assertEquals("10 st heliers bay road", normalizer.normalizeQuery("10 St Heliers Bay Rd"));
+        assertEquals("2/10 o'connell street", normalizer.normalizeQuery("2/10 O'Connell St"));
+        assertEquals("1 queen street auckland", normalizer.normalizeQuery("1 Queen St Auckland"));
+        assertEquals("mt st john", normalizer.normalizeQuery("Mt St John"));
+        assertEquals("mission bay st heliers", normalizer.normalizeQuery("Mission Bay St Heliers"));
+    }
+
+    @Test
+    public void testShortAndPunctuationOnlyQueriesAreFlagged() {
+        assertTrue(normalizer.isTooShort(normalizer.normalizeQuery("1 q")));
+        assertTrue(normalizer.isTooShort(normalizer.normalizeQuery("?!, ..")));
+        assertFalse(normalizer.isTooShort(normalizer.normalizeQuery("1 qu")));
+    }
+
+    @Test
+    public void testMaxIsClampedAndValidated() throws Exception {
+        assertEquals("5", normalizer.normalizeMax(null));
+        assertEquals("1", normalizer.normalizeMax("-3"));
+        assertEquals("20", normalizer.normalizeMax("1000"));
+        assertEquals("7", normalizer.normalizeMax(" 7 "));
+        try {
+            normalizer.normalizeMax("five");
+            fail("Expected a bad request for a non numeric max");
+        } catch (BadRequestException e) {
+            assertTrue(e.getMessage().contains("max"));
+        }
+    }
+
+    @Test
+    public void testShortQueriesAreAnsweredLocally() {
+        APIGatewayProxyRequestEvent request = new APIGatewayProxyRequestEvent();
+        request.setQueryStringParameters(Map.of("q", "1 ,", "max", "5"));
+
+        APIGatewayProxyResponseEvent response = new NZPostAddressCheckerLambda().handleRequest(request, null);
+
+        assertEquals(200, (int) response.getStatusCode());
+        assertEquals("LOCAL", response.getHeaders().get("X-Cache"));
+        assertTrue(response.getBody().contains("\"addresses\":[]"));
+    }
+}
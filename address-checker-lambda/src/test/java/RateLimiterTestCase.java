@@ -0,0 +1,118 @@
+import org.junit.Before;
+import org.junit.Test;
+import org.nz.postal.address.exception.UpstreamServerException;
+import org.nz.postal.address.upstream.Deadline;
+import org.nz.postal.address.upstream.RateLimiter;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class RateLimiterTestCase {
+
+    private long nanos;
+    private RateLimiter rateLimiter;
+
+    @Before
+    public void setUp() {
+        nanos = 0;
+        // 100 calls/s, bursts of 2, up to 50 ms queueing, recovering over 10 s
+        rateLimiter = new RateLimiter(100, 2, 50, 10, () -> nanos);
+    }
+
+    private void advanceMillis(long millis) {
+        nanos += TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+
+    private void assertRejected(Deadline deadline) throws InterruptedException {
+        try {
+            rateLimiter.acquire(deadline);
+            fail("Expected the call to be rejected");
+        } catch (UpstreamServerException e) {
+            assertEquals(429, e.getStatusCode());
+        }
+    }
+
+    @Test
+    public void testCallsQueueWithinMaxWaitAndDeadline() throws Exception {
+        rateLimiter.acquire(Deadline.ofMillis(1000));
+        rateLimiter.acquire(Deadline.ofMillis(1000));
+        assertTrue(rateLimiter.isThrottled());
+
+        // Next tokens are 10 ms apart, the 6th queued call would wait 60 ms
+        for (int i = 0; i < 5; i++) {
+            rateLimiter.acquire(Deadline.ofMillis(1000));
+        }
+        assertEquals(5, rateLimiter.getQueued());
+        assertRejected(Deadline.ofMillis(1000));
+
+        advanceMillis(50);
+        // 10 ms wait, but only 5 ms left before the deadline
+        assertRejected(Deadline.ofMillis(5));
+        rateLimiter.acquire(Deadline.ofMillis(20));
+        assertEquals(8, rateLimiter.getAcquired());
+        assertEquals(2, rateLimiter.getRejected());
+    }
+
+    @Test
+    public void testTryAcquireNeverQueues() throws Exception {
+        assertTrue(rateLimiter.tryAcquire());
+        assertTrue(rateLimiter.tryAcquire());
+        assertFalse(rateLimiter.tryAcquire());
+        assertEquals(0, rateLimiter.getQueued());
+
+        advanceMillis(10);
+        assertTrue(rateLimiter.tryAcquire());
+        rateLimiter.onThrottled("1");
+        advanceMillis(500);
+        assertFalse("No tokens while calls are paused", rateLimiter.tryAcquire());
+        assertEquals(3, rateLimiter.getAcquired());
+    }
+
+    @Test
+    public void testThrottledResponseHalvesRateAndPausesForRetryAfter() throws Exception {
+        rateLimiter.onThrottled("2");
+        assertEquals(50, rateLimiter.getRate(), 0.1);
+        assertTrue(rateLimiter.isThrottled());
+        // 2 s pause, plus the wait for the first token at the lowered rate
+        assertEquals(3, rateLimiter.getRetryAfterSeconds());
+        assertRejected(Deadline.ofMillis(1000));
+
+        // A burst of 429s within a second halves the rate only once
+        rateLimiter.onThrottled(null);
+        assertEquals(50, rateLimiter.getRate(), 0.1);
+
+        advanceMillis(2000);
+        rateLimiter.acquire(Deadline.ofMillis(1000));
+
+        advanceMillis(1000);
+        rateLimiter.onThrottled("not a date");
+        // Recovered to 65/s over 3 s, then halved
+        assertEquals(32.5, rateLimiter.getRate(), 0.1);
+        assertEquals(3, rateLimiter.getThrottledResponses());
+    }
+
+    @Test
+    public void testRateRecoversAfterThrottling() {
+        rateLimiter.onThrottled("0");
+        assertEquals(50, rateLimiter.getRate(), 0.1);
+        advanceMillis(5000);
+        assertEquals(75, rateLimiter.getRate(), 0.1);
+        advanceMillis(5000);
+        assertEquals(100, rateLimiter.getRate(), 0.1);
+        advanceMillis(5000);
+        assertEquals(100, rateLimiter.getRate(), 0.1);
+        assertFalse(rateLimiter.isThrottled());
+    }
+
+    @Test
+    public void testRetryAfterHttpDate() {
+        String inThreeSeconds = java.time.format.DateTimeFormatter.RFC_1123_DATE_TIME
+                .format(java.time.ZonedDateTime.now(java.time.ZoneOffset.UTC).plusSeconds(3));
+        rateLimiter.onThrottled(inThreeSeconds);
+        // The date has whole seconds, so the pause is 2 to 3 seconds, and the wait for a token at the halved rate is
+        // rounded up on top of it
+        long retryAfterSeconds = rateLimiter.getRetryAfterSeconds();
+        assertTrue(retryAfterSeconds >= 2 && retryAfterSeconds <= 4);
+    }
+}
@@ -0,0 +1,79 @@
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+import org.junit.Test;
+import org.nz.postal.address.response.ResponseCompressor;
+import org.nz.postal.address.response.SuggestResponseProjector;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.*;
+
+public class ResponseProjectionTestCase {
+
+    private static final String UPSTREAM_RESPONSE = "{\"success\":true,\"addresses\":["
+            + "{\"DPID\":1,\"FullAddress\":\"1 Queen Street, Auckland Central, Auckland 1010\","
+            + "\"SourceDesc\":\"Postal\",\"Geometry\":{\"x\":174.76,\"y\":-36.84},\"Tags\":[\"a\",\"b\"]},"
+            + "{\"DPID\":2,\"FullAddress\":\"2 Queen Street, Auckland Central, Auckland 1010\","
+            + "\"SourceDesc\":\"Postal\"}"
+            + "],\"status\":\"success\"}";
+
+    @Test
+    public void testOnlyConfiguredAddressFieldsAreKept() throws Exception {
+        SuggestResponseProjector projector = new SuggestResponseProjector(Set.of("FullAddress"));
+
+        String projected = projector.read(stream(UPSTREAM_RESPONSE));
+
+        assertEquals("{\"success\":true,\"addresses\":["
+                + "{\"FullAddress\":\"1 Queen Street, Auckland Central, Auckland 1010\"},"
+                + "{\"FullAddress\":\"2 Queen Street, Auckland Central, Auckland 1010\"}"
+                + "],\"status\":\"success\"}", projected);
+    }
+
+    @Test
+    public void testProjectionCanBeTurnedOff() throws Exception {
+        assertEquals(UPSTREAM_RESPONSE, new SuggestResponseProjector(null).read(stream(UPSTREAM_RESPONSE)));
+    }
+
+    @Test
+    public void testBodyIsGzippedWhenAccepted() throws Exception {
+        String body = UPSTREAM_RESPONSE.repeat(10);
+        APIGatewayProxyResponseEvent response = new ResponseCompressor(100)
+                .compress(response(body), "br;q=1.0, gzip;q=0.8, deflate;q=0.5");
+
+        assertTrue(response.getIsBase64Encoded());
+        assertEquals("gzip", response.getHeaders().get("Content-Encoding"));
+        byte[] decompressed = new GZIPInputStream(new ByteArrayInputStream(
+                Base64.getDecoder().decode(response.getBody()))).readAllBytes();
+        assertEquals(body, new String(decompressed, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testBodyIsNotCompressedWhenSmallOrNotAccepted() {
+        ResponseCompressor compressor = new ResponseCompressor(100);
+
+        APIGatewayProxyResponseEvent small = compressor.compress(response("{}"), "gzip");
+        assertEquals("{}", small.getBody());
+        assertNull(small.getHeaders().get("Content-Encoding"));
+
+        String body = UPSTREAM_RESPONSE.repeat(10);
+        APIGatewayProxyResponseEvent identity = compressor.compress(response(body), "gzip;q=0, identity");
+        assertEquals(body, identity.getBody());
+        assertNull(identity.getIsBase64Encoded());
+    }
+
+    private static APIGatewayProxyResponseEvent response(String body) {
+        APIGatewayProxyResponseEvent response = new APIGatewayProxyResponseEvent();
+        response.setStatusCode(200);
+        response.setHeaders(new HashMap<>());
+        response.setBody(body);
+        return response;
+    }
+
+    private static ByteArrayInputStream stream(String body) {
+        return new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,135 @@
+import com.sun.net.httpserver.HttpServer;
+import org.junit.Test;
+import org.nz.postal.address.secrets.EnvironmentSecretsProvider;
+import org.nz.postal.address.secrets.ExtensionSecretsProvider;
+import org.nz.postal.address.secrets.SecretsCache;
+
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class SecretsCacheTestCase {
+
+    private final AtomicInteger fetchCount = new AtomicInteger();
+    private volatile String clientSecret = "secret-1";
+    private volatile boolean failing;
+    private long now;
+
+    private SecretsCache newCache() {
+        return new SecretsCache(() -> {
+            fetchCount.incrementAndGet();
+            if (failing) {
+                throw new IllegalStateException("Secrets Manager unavailable");
+            }
+            return Map.of("client_id", "id", "client_secret", clientSecret);
+        }, 60_000, () -> now);
+    }
+
+    @Test
+    public void testSecretsAreRefreshedAfterTtl() throws Exception {
+        SecretsCache cache = newCache();
+        assertEquals("secret-1", cache.get("client_secret"));
+        clientSecret = "secret-2";
+        now += 59_000;
+        assertEquals("secret-1", cache.get("client_secret"));
+        assertEquals(1, fetchCount.get());
+
+        now += 1_000;
+        assertEquals("secret-2", cache.get("client_secret"));
+        assertEquals(2, fetchCount.get());
+    }
+
+    @Test
+    public void testFailedRefreshKeepsCurrentSecrets() throws Exception {
+        SecretsCache cache = newCache();
+        cache.get();
+        failing = true;
+        now += 60_000;
+        assertEquals("secret-1", cache.get("client_secret"));
+        // Not retried on every call
+        assertEquals("secret-1", cache.get("client_secret"));
+        assertEquals(2, fetchCount.get());
+
+        failing = false;
+        clientSecret = "secret-2";
+        now += 30_000;
+        assertEquals("secret-2", cache.get("client_secret"));
+    }
+
+    @Test
+    public void testFailedFirstLoadThrows() {
+        failing = true;
+        try {
+            newCache().get();
+            fail("Expected the load to fail");
+        } catch (Exception e) {
+            assertEquals("Secrets Manager unavailable", e.getMessage());
+        }
+    }
+
+    @Test
+    public void testRefreshReportsRotatedCredentials() throws Exception {
+        SecretsCache cache = newCache();
+        cache.get();
+        assertFalse(cache.refresh());
+        clientSecret = "secret-2";
+        assertTrue(cache.refresh());
+        assertEquals("secret-2", cache.get("client_secret"));
+    }
+
+    @Test
+    public void testCredentialsFileIsReadOnEveryFetch() throws Exception {
+        Path file = Files.createTempFile("credentials", ".json");
+        try {
+            Files.writeString(file, "{\"client_id\":\"id\",\"client_secret\":\"secret-1\"}");
+            EnvironmentSecretsProvider provider = new EnvironmentSecretsProvider(file, null, null);
+            assertEquals("secret-1", provider.fetch().get("client_secret"));
+            Files.writeString(file, "{\"client_id\":\"id\",\"client_secret\":\"secret-2\"}");
+            assertEquals("secret-2", provider.fetch().get("client_secret"));
+        } finally {
+            Files.delete(file);
+        }
+        assertEquals("env-secret", new EnvironmentSecretsProvider(null, "env-id", "env-secret").fetch()
+                .get("client_secret"));
+    }
+
+    @Test
+    public void testExtensionProvider() throws Exception {
+        HttpServer extension = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        extension.createContext("/secretsmanager/get", exchange -> {
+            String sessionToken = exchange.getRequestHeaders().getFirst("X-Aws-Parameters-Secrets-Token");
+            boolean authorized = "session".equals(sessionToken)
+                    && "secretId=nz%2Fpost".equals(exchange.getRequestURI().getRawQuery());
+            byte[] body = ("{\"Name\":\"nz/post\",\"SecretString\":"
+                    + "\"{\\\"client_id\\\":\\\"id\\\",\\\"client_secret\\\":\\\"secret\\\"}\"}")
+                    .getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(authorized ? 200 : 401, authorized ? body.length : -1);
+            if (authorized) {
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+            }
+            exchange.close();
+        });
+        extension.start();
+        try {
+            String baseUrl = "http://localhost:" + extension.getAddress().getPort();
+            assertEquals("secret", new ExtensionSecretsProvider(baseUrl, "nz/post", "session").fetch()
+                    .get("client_secret"));
+            try {
+                new ExtensionSecretsProvider(baseUrl, "nz/post", "wrong").fetch();
+                fail("Expected the extension to reject the session token");
+            } catch (Exception e) {
+                assertTrue(e.getMessage().contains("Parameters and Secrets extension"));
+            }
+        } finally {
+            extension.stop(0);
+        }
+    }
+}
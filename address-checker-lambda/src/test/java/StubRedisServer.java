@@ -0,0 +1,207 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * In-memory stand-in for a Redis server which speaks the subset of the RESP protocol used by
+ * {@link org.nz.postal.address.cache.RedisSharedCache} (PING, AUTH, GET, SET with PX/EX and DEL), with configurable
+ * latency, for running the shared suggestion cache offline.
+ */
+public class StubRedisServer implements AutoCloseable {
+    private final ServerSocket serverSocket;
+    private final ExecutorService executor = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "stub-redis");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final AtomicInteger getRequests = new AtomicInteger();
+    private final AtomicInteger setRequests = new AtomicInteger();
+    private volatile long latencyMillis;
+    private volatile String username = "default";
+    private volatile String password;
+
+    public StubRedisServer() throws IOException {
+        this(0);
+    }
+
+    /**
+     * @param port port to listen on, or 0 for any free port
+     */
+    public StubRedisServer(int port) throws IOException {
+        serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+        executor.execute(this::accept);
+    }
+
+    public String getUrl() {
+        return "redis://localhost:" + serverSocket.getLocalPort();
+    }
+
+    public StubRedisServer setLatencyMillis(long latencyMillis) {
+        this.latencyMillis = latencyMillis;
+        return this;
+    }
+
+    /**
+     * Requires clients to authenticate with the password, as the given ACL user or as the default user.
+     */
+    public StubRedisServer setCredentials(String username, String password) {
+        this.username = username;
+        this.password = password;
+        return this;
+    }
+
+    public int getGetRequests() {
+        return getRequests.get();
+    }
+
+    public int getSetRequests() {
+        return setRequests.get();
+    }
+
+    /**
+     * @return the live value of the key, or null if there is none
+     */
+    public String getValue(String key) {
+        Entry entry = entries.get(key);
+        return entry == null || entry.isExpired() ? null : entry.value;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    @Override
+    public void close() {
+        try {
+            serverSocket.close();
+        } catch (IOException e) {
+            // Already closed
+        }
+        executor.shutdownNow();
+    }
+
+    private void accept() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                executor.execute(() -> serve(socket));
+            } catch (IOException e) {
+                return;
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        try (socket) {
+            InputStream in = new BufferedInputStream(socket.getInputStream());
+            OutputStream out = new BufferedOutputStream(socket.getOutputStream());
+            String[] command;
+            boolean authenticated = password == null;
+            while ((command = readCommand(in)) != null) {
+                if (latencyMillis > 0) {
+                    Thread.sleep(latencyMillis);
+                }
+                String reply;
+                if ("AUTH".equalsIgnoreCase(command[0])) {
+                    authenticated = authenticate(command);
+                    reply = authenticated ? "+OK\r\n" : "-WRONGPASS invalid username-password pair\r\n";
+                } else {
+                    reply = authenticated ? execute(command) : "-NOAUTH Authentication required.\r\n";
+                }
+                out.write(reply.getBytes(StandardCharsets.UTF_8));
+                out.flush();
+            }
+        } catch (IOException e) {
+            // Client went away
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private boolean authenticate(String[] command) {
+        String user = command.length == 3 ? command[1] : "default";
+        return user.equals(username) && command[command.length - 1].equals(password);
+    }
+
+    private String execute(String[] command) {
+        switch (command[0].toUpperCase(Locale.ROOT)) {
+            case "PING":
+                return "+PONG\r\n";
+            case "GET":
+                getRequests.incrementAndGet();
+                String value = getValue(command[1]);
+                if (value == null) {
+                    return "$-1\r\n";
+                }
+                return "$" + value.getBytes(StandardCharsets.UTF_8).length + "\r\n" + value + "\r\n";
+            case "SET":
+                setRequests.incrementAndGet();
+                long expiresAt = Long.MAX_VALUE;
+                if (command.length == 5) {
+                    long ttl = Long.parseLong(command[4]);
+                    expiresAt = System.currentTimeMillis()
+                            + ("EX".equalsIgnoreCase(command[3]) ? ttl * 1000 : ttl);
+                }
+                entries.put(command[1], new Entry(command[2], expiresAt));
+                return "+OK\r\n";
+            case "DEL":
+                return ":" + (entries.remove(command[1]) == null ? 0 : 1) + "\r\n";
+            default:
+                return "-ERR unknown command '" + command[0] + "'\r\n";
+        }
+    }
+
+    private static String[] readCommand(InputStream in) throws IOException {
+        if (in.read() != '*') {
+            return null;
+        }
+        String[] command = new String[Integer.parseInt(readLine(in))];
+        for (int i = 0; i < command.length; i++) {
+            in.read();
+            int length = Integer.parseInt(readLine(in));
+            byte[] bytes = in.readNBytes(length + 2);
+            command[i] = new String(bytes, 0, length, StandardCharsets.UTF_8);
+        }
+        return command;
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        StringBuilder line = new StringBuilder();
+        int c;
+        while ((c = in.read()) != '\r') {
+            if (c == -1) {
+                throw new IOException("Connection closed");
+            }
+            line.append((char) c);
+        }
+        in.read();
+        return line.toString();
+    }
+
+    private static final class Entry {
+        private final String value;
+        private final long expiresAt;
+
+        private Entry(String value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+
+        private boolean isExpired() {
+            return expiresAt <= System.currentTimeMillis();
+        }
+    }
+}
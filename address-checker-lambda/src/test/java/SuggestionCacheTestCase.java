@@ -0,0 +1,88 @@
+import org.junit.Before;
+import org.junit.Test;
+import org.nz.postal.address.cache.SuggestionCache;
+
+import static org.junit.Assert.*;
+
+public class SuggestionCacheTestCase {
+
+    private long now;
+    private SuggestionCache cache;
+
+    @Before
+    public void setUp() {
+        now = 0;
+        cache = new SuggestionCache(3, 100, 1000, () -> now);
+    }
+
+    @Test
+    public void testHitAndMissAreCounted() {
+        assertNull(cache.get("1 Queen St", "5"));
+        cache.put("1 Queen St", "5", "{\"addresses\":[]}");
+
+        assertEquals("{\"addresses\":[]}", cache.get("1 Queen St", "5"));
+        assertNull("Different max should be a separate entry", cache.get("1 Queen St", "6"));
+        assertEquals(1, cache.getHitCount());
+        assertEquals(2, cache.getMissCount());
+    }
+
+    @Test
+    public void testContainsIsNotCountedAsHitOrMiss() {
+        assertFalse(cache.contains("1 Queen St", "5"));
+        cache.put("1 Queen St", "5", "{\"addresses\":[]}");
+        assertTrue(cache.contains("1 Queen St", "5"));
+        now = 1000;
+        assertFalse("Expired entry is not live", cache.contains("1 Queen St", "5"));
+        assertEquals(0, cache.getHitCount());
+        assertEquals(0, cache.getMissCount());
+    }
+
+    @Test
+    public void testEntriesExpireAfterTtl() {
+        cache.put("Triangle", "5", "body");
+        now = 999;
+        assertEquals("body", cache.get("Triangle", "5"));
+        now = 1000;
+        assertNull(cache.get("Triangle", "5"));
+        assertEquals(1, cache.getExpiredCount());
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testExpiredEntryIsServedAsStaleWithinStalePeriod() {
+        SuggestionCache staleCache = new SuggestionCache(3, 100, 1000, 5000, () -> now);
+        staleCache.put("Triangle", "5", "body");
+        now = 1000;
+        assertNull("Expired entries are not served as fresh", staleCache.get("Triangle", "5"));
+        assertEquals("body", staleCache.getStale("Triangle", "5"));
+        now = 6000;
+        assertNull(staleCache.getStale("Triangle", "5"));
+        assertEquals(1, staleCache.getStaleHitCount());
+        assertEquals(0, staleCache.size());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEntryIsEvictedOnEntryLimit() {
+        cache.put("a", "5", "1");
+        cache.put("b", "5", "2");
+        cache.put("c", "5", "3");
+        cache.get("a", "5");
+        cache.put("d", "5", "4");
+
+        assertNull("b is the least recently used entry", cache.get("b", "5"));
+        assertEquals("1", cache.get("a", "5"));
+        assertEquals(1, cache.getEvictionCount());
+    }
+
+    @Test
+    public void testEntriesAreEvictedOnSizeLimit() {
+        cache.put("a", "5", "x".repeat(60));
+        cache.put("b", "5", "y".repeat(60));
+
+        assertNull(cache.get("a", "5"));
+        assertEquals(60, cache.getCurrentSize());
+
+        cache.put("c", "5", "z".repeat(101));
+        assertNull("Bodies larger than the cache are not cached", cache.get("c", "5"));
+    }
+}
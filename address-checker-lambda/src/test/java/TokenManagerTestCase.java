@@ -0,0 +1,138 @@
+import org.junit.Test;
+import org.nz.postal.address.auth.TokenManager;
+import org.nz.postal.address.auth.TokenManager.AccessToken;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class TokenManagerTestCase {
+
+    private final AtomicInteger fetchCount = new AtomicInteger();
+
+    private AccessToken fetchToken(long validForMillis) {
+        int count = fetchCount.incrementAndGet();
+        return new AccessToken("token-" + count, System.currentTimeMillis() + validForMillis);
+    }
+
+    @Test
+    public void testConcurrentCallersShareOneRefresh() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        TokenManager tokenManager = new TokenManager(() -> {
+            release.await();
+            return fetchToken(3_600_000);
+        }, 60_000, 300_000);
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<String>> tokens = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            tokens.add(executor.submit(tokenManager::getToken));
+        }
+        Thread.sleep(100);
+        release.countDown();
+
+        for (Future<String> token : tokens) {
+            assertEquals("token-1", token.get());
+        }
+        assertEquals(1, fetchCount.get());
+        executor.shutdown();
+        tokenManager.shutdown();
+    }
+
+    @Test
+    public void testRejectedTokenIsReplacedOnce() throws Exception {
+        TokenManager tokenManager = new TokenManager(() -> fetchToken(3_600_000), 60_000, 300_000);
+
+        assertEquals("token-1", tokenManager.getToken());
+        assertEquals("token-2", tokenManager.refreshAfterRejection("token-1"));
+        assertEquals("Token already replaced by another caller", "token-2",
+                tokenManager.refreshAfterRejection("token-1"));
+        assertEquals("token-2", tokenManager.getToken());
+        assertEquals(2, fetchCount.get());
+        tokenManager.shutdown();
+    }
+
+    @Test
+    public void testTokenIsRefreshedInBackgroundBeforeExpiry() throws Exception {
+        TokenManager tokenManager = new TokenManager(() -> fetchToken(2_000), 100, 1_900);
+
+        assertEquals("token-1", tokenManager.getToken());
+        // Refresh-ahead is capped at half the 2 s lifetime
+        Thread.sleep(1_300);
+
+        assertTrue("Expected a background refresh", fetchCount.get() >= 2);
+        assertTrue(tokenManager.hasUsableToken());
+        tokenManager.shutdown();
+    }
+
+    @Test
+    public void testTokenShorterThanRefreshAheadIsNotRefreshedInALoop() throws Exception {
+        // Tokens live 3 s, far less than the 300 s refresh-ahead, so they are refreshed at half their lifetime
+        TokenManager tokenManager = new TokenManager(() -> fetchToken(3_000), 100, 300_000);
+        try {
+            assertEquals("token-1", tokenManager.getToken());
+            Thread.sleep(2_000);
+
+            assertEquals(2, fetchCount.get());
+            assertTrue(tokenManager.hasUsableToken());
+        } finally {
+            tokenManager.shutdown();
+        }
+    }
+
+    @Test
+    public void testFailedRefreshIsReportedToAllCallers() {
+        TokenManager tokenManager = new TokenManager(() -> {
+            throw new IllegalStateException("token endpoint down");
+        }, 60_000, 300_000);
+
+        try {
+            tokenManager.getToken();
+            fail("Expected the fetch error to be rethrown");
+        } catch (Exception e) {
+            assertEquals("token endpoint down", e.getMessage());
+        }
+        assertFalse(tokenManager.hasUsableToken());
+    }
+
+    @Test
+    public void testRefreshFailingWithAnErrorReleasesWaitingCallers() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger attempts = new AtomicInteger();
+        TokenManager tokenManager = new TokenManager(() -> {
+            if (attempts.incrementAndGet() == 1) {
+                release.await();
+                throw new ExceptionInInitializerError("token client failed to load");
+            }
+            return fetchToken(3_600_000);
+        }, 60_000, 300_000);
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Future<String>> tokens = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            tokens.add(executor.submit(tokenManager::getToken));
+        }
+        Thread.sleep(100);
+        release.countDown();
+
+        for (Future<String> token : tokens) {
+            try {
+                token.get(5, TimeUnit.SECONDS);
+                fail("Expected the fetch error to be rethrown");
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof ExceptionInInitializerError);
+            }
+        }
+        assertEquals("token-1", tokenManager.getToken());
+        executor.shutdown();
+        tokenManager.shutdown();
+    }
+}
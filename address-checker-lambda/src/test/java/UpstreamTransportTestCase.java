@@ -0,0 +1,138 @@
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.nz.postal.address.exception.UpstreamServerException;
+import org.nz.postal.address.response.SuggestResponseProjector;
+import org.nz.postal.address.upstream.AbortSignal;
+import org.nz.postal.address.upstream.BodyReader;
+import org.nz.postal.address.upstream.ApacheUpstreamTransport;
+import org.nz.postal.address.upstream.Http2UpstreamTransport;
+import org.nz.postal.address.upstream.StubUpstreamServer;
+import org.nz.postal.address.upstream.UpstreamConfig;
+import org.nz.postal.address.upstream.UpstreamResponse;
+import org.nz.postal.address.upstream.UpstreamTransport;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class UpstreamTransportTestCase {
+
+    private StubUpstreamServer stub;
+    private UpstreamConfig config;
+    private CloseableHttpClient httpClient;
+
+    @Before
+    public void setUp() throws Exception {
+        stub = new StubUpstreamServer();
+        config = new UpstreamConfig().setResponseTimeoutMillis(200);
+        httpClient = ApacheUpstreamTransport.buildHttpClient(config);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        httpClient.close();
+        stub.close();
+    }
+
+    private void assertTransport(UpstreamTransport transport) throws Exception {
+        URI uri = URI.create(stub.getSuggestUrl() + "?q=Queen&max=2");
+        stub.setAddressCount(2);
+        UpstreamResponse response = transport.get(uri, Map.of("Accept", "application/json"));
+        assertEquals(200, response.getStatusCode());
+        assertEquals("application/json", response.getHeader("Content-Type"));
+        assertTrue(response.getBody().contains("Queen 1 Street"));
+
+        UpstreamResponse projected = transport.get(uri, Map.of(), new SuggestResponseProjector(Set.of("FullAddress")));
+        assertTrue(projected.getBody().contains("Queen 1 Street"));
+        assertFalse(projected.getBody().contains("DPID"));
+
+        stub.setLatencyMillis(1000);
+        try {
+            transport.get(uri, Map.of());
+            fail("Expected the response timeout to trigger");
+        } catch (UpstreamServerException e) {
+            assertEquals(504, e.getStatusCode());
+        }
+    }
+
+    private void assertAbort(UpstreamTransport transport) throws Exception {
+        URI uri = URI.create(stub.getSuggestUrl() + "?q=Queen&max=2");
+        stub.setLatencyMillis(1000);
+        AbortSignal abort = new AbortSignal();
+        Thread aborter = new Thread(() -> {
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                return;
+            }
+            abort.abort();
+        });
+        aborter.start();
+        long start = System.nanoTime();
+        try {
+            transport.get(uri, Map.of(), BodyReader.STRING, abort);
+            fail("Expected the request to be aborted");
+        } catch (Exception e) {
+            assertTrue("Aborted after " + (System.nanoTime() - start) / 1_000_000 + " ms",
+                    (System.nanoTime() - start) / 1_000_000 < 800);
+        }
+        aborter.join();
+    }
+
+    @Test
+    public void testApacheTransportRequestCanBeAborted() throws Exception {
+        config.setResponseTimeoutMillis(5000);
+        try (CloseableHttpClient client = ApacheUpstreamTransport.buildHttpClient(config)) {
+            assertAbort(new ApacheUpstreamTransport(() -> client));
+        }
+    }
+
+    @Test
+    public void testHttp2TransportRequestCanBeAborted() throws Exception {
+        assertAbort(new Http2UpstreamTransport(config.setResponseTimeoutMillis(5000)));
+    }
+
+    @Test
+    public void testApacheTransportAppliesResponseTimeout() throws Exception {
+        assertTransport(new ApacheUpstreamTransport(() -> httpClient));
+    }
+
+    @Test
+    public void testHttp2TransportAppliesResponseTimeout() throws Exception {
+        assertTransport(new Http2UpstreamTransport(config));
+    }
+
+    @Test
+    public void testHttp2TransportReleasesPermitWhenRequestIsRejected() throws Exception {
+        Http2UpstreamTransport transport = new Http2UpstreamTransport(
+                config.setMaxConnTotal(1).setPoolAcquireTimeoutMillis(100));
+        // The JDK client rejects the scheme before sending, so the request never completes
+        HttpRequest unsupported = new HttpRequest() {
+            @Override public Optional<BodyPublisher> bodyPublisher() { return Optional.empty(); }
+            @Override public String method() { return "GET"; }
+            @Override public Optional<Duration> timeout() { return Optional.empty(); }
+            @Override public boolean expectContinue() { return false; }
+            @Override public URI uri() { return URI.create("ftp://localhost/suggest"); }
+            @Override public Optional<HttpClient.Version> version() { return Optional.empty(); }
+            @Override public HttpHeaders headers() { return HttpHeaders.of(Map.of(), (name, value) -> true); }
+        };
+        for (int i = 0; i < 2; i++) {
+            try {
+                transport.sendAsync(unsupported);
+                fail("Expected the request to be rejected");
+            } catch (IllegalArgumentException e) {
+                // The only permit is released again, so the next request does not time out waiting for it
+            }
+        }
+        assertEquals(200, transport.get(URI.create(stub.getSuggestUrl() + "?q=Queen&max=2"), Map.of()).getStatusCode());
+    }
+}
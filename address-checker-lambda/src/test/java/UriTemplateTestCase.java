@@ -0,0 +1,39 @@
+import org.apache.http.client.utils.URIBuilder;
+import org.junit.Test;
+import org.nz.postal.address.upstream.UriTemplate;
+
+import java.net.URI;
+
+import static org.junit.Assert.*;
+
+public class UriTemplateTestCase {
+
+    @Test
+    public void testExpandEncodesLikeUriBuilder() throws Exception {
+        String baseUrl = "https://api.nzpost.co.nz/addresschecker/1.0/suggest";
+        UriTemplate template = new UriTemplate(baseUrl, "q", "max");
+        String query = "1/3 Māori Bay & \"Queen\" St+Rd?";
+
+        URI expected = new URIBuilder(baseUrl).addParameter("q", query).addParameter("max", "5").build();
+        URI uri = template.expand(query, "5");
+
+        assertEquals(expected, uri);
+        assertEquals(query, new URIBuilder(uri).getQueryParams().get(0).getValue());
+    }
+
+    @Test
+    public void testExpandAppendsToExistingQuery() {
+        UriTemplate template = new UriTemplate("http://localhost:8080/details?format=json", "dpid");
+        assertEquals(URI.create("http://localhost:8080/details?format=json&dpid=1000"), template.expand("1000"));
+    }
+
+    @Test
+    public void testExpandFailsWhenUrlIsNotConfigured() {
+        try {
+            new UriTemplate(null, "q").expand("Queen");
+            fail("Expected the missing URL to be reported");
+        } catch (IllegalStateException e) {
+            assertEquals("Upstream URL is not configured", e.getMessage());
+        }
+    }
+}
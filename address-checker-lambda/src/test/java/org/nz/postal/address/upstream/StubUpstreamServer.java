@@ -0,0 +1,239 @@
+/*
+ * Copyright 2025 Samitha Chathuranga
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.nz.postal.address.upstream;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * In-process stand-in for the NZ Post token, suggest and details endpoints, with configurable latency and payload size,
+ * for measuring the upstream path offline.
+ * <ul>
+ *     <li>POST {@code /oauth/token} returns a token valid for {@link #setTokenExpiresInSeconds(long)}</li>
+ *     <li>GET {@code /suggest} returns {@link #setAddressCount(int)} addresses matching the q parameter</li>
+ *     <li>GET {@code /details} returns the details of the address with the dpid parameter</li>
+ *     <li>HEAD on any path returns 200, for connection pre-warming</li>
+ * </ul>
+ * It lives in the test sources, so it is not shipped in the Lambda jar. The benchmarks use it from the test jar, and
+ * the AppCDS training run and startup-benchmark.sh start it on its own with {@link #main(String[])}.
+ */
+public class StubUpstreamServer implements AutoCloseable {
+    public static final String TOKEN_PATH = "/oauth/token";
+    public static final String SUGGEST_PATH = "/suggest";
+    public static final String DETAILS_PATH = "/details";
+
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "stub-upstream");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicInteger tokenRequests = new AtomicInteger();
+    private final AtomicInteger suggestRequests = new AtomicInteger();
+    private final AtomicInteger detailsRequests = new AtomicInteger();
+    private volatile long latencyMillis;
+    private volatile int addressCount = 5;
+    private volatile int suggestStatus = 200;
+    private volatile long tokenExpiresInSeconds = 86400;
+    private volatile String retryAfter;
+
+    public StubUpstreamServer() throws IOException {
+        this(0);
+    }
+
+    /**
+     * @param port port to listen on, or 0 for any free port
+     */
+    public StubUpstreamServer(int port) throws IOException {
+        // Without TCP_NODELAY every response waits for the client's delayed ACK (~40 ms)
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+        server = HttpServer.create(new InetSocketAddress("localhost", port), 0);
+        server.createContext("/", this::handle);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    /**
+     * Runs the stub until the process is killed.
+     *
+     * @param args port to listen on, and optionally the latency in milliseconds
+     */
+    public static void main(String[] args) throws Exception {
+        StubUpstreamServer stub = new StubUpstreamServer(Integer.parseInt(args[0]));
+        if (args.length > 1) {
+            stub.setLatencyMillis(Long.parseLong(args[1]));
+        }
+        System.out.println("Stub NZ Post server listening on " + stub.getBaseUrl());
+        Thread.currentThread().join();
+    }
+
+    public String getBaseUrl() {
+        return "http://localhost:" + server.getAddress().getPort();
+    }
+
+    public String getTokenUrl() {
+        return getBaseUrl() + TOKEN_PATH;
+    }
+
+    public String getSuggestUrl() {
+        return getBaseUrl() + SUGGEST_PATH;
+    }
+
+    public String getDetailsUrl() {
+        return getBaseUrl() + DETAILS_PATH;
+    }
+
+    public StubUpstreamServer setLatencyMillis(long latencyMillis) {
+        this.latencyMillis = latencyMillis;
+        return this;
+    }
+
+    public StubUpstreamServer setAddressCount(int addressCount) {
+        this.addressCount = addressCount;
+        return this;
+    }
+
+    public StubUpstreamServer setSuggestStatus(int suggestStatus) {
+        this.suggestStatus = suggestStatus;
+        return this;
+    }
+
+    /**
+     * @param retryAfter Retry-After header value sent with non 200 suggest responses, or null for none
+     */
+    public StubUpstreamServer setRetryAfter(String retryAfter) {
+        this.retryAfter = retryAfter;
+        return this;
+    }
+
+    public StubUpstreamServer setTokenExpiresInSeconds(long tokenExpiresInSeconds) {
+        this.tokenExpiresInSeconds = tokenExpiresInSeconds;
+        return this;
+    }
+
+    public int getTokenRequests() {
+        return tokenRequests.get();
+    }
+
+    public int getSuggestRequests() {
+        return suggestRequests.get();
+    }
+
+    public int getDetailsRequests() {
+        return detailsRequests.get();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            String path = exchange.getRequestURI().getPath();
+            if ("HEAD".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(200, -1);
+                return;
+            }
+            sleep();
+            if (path.startsWith(TOKEN_PATH)) {
+                int count = tokenRequests.incrementAndGet();
+                send(exchange, 200, "{\"access_token\":\"stub-token-" + count + "\",\"expires_in\":\""
+                        + tokenExpiresInSeconds + "\",\"token_type\":\"Bearer\"}");
+            } else if (path.startsWith(SUGGEST_PATH)) {
+                suggestRequests.incrementAndGet();
+                int status = suggestStatus;
+                if (status != 200 && retryAfter != null) {
+                    exchange.getResponseHeaders().set("Retry-After", retryAfter);
+                }
+                send(exchange, status, status == 200 ? suggestBody(exchange.getRequestURI().getRawQuery())
+                        : "{\"success\":false}");
+            } else if (path.startsWith(DETAILS_PATH)) {
+                detailsRequests.incrementAndGet();
+                send(exchange, 200, detailsBody(getParameter(exchange.getRequestURI().getRawQuery(), "dpid")));
+            } else {
+                send(exchange, 404, "{\"error\":\"not found\"}");
+            }
+        }
+    }
+
+    private String suggestBody(String rawQuery) {
+        String query = getParameter(rawQuery, "q");
+        if (query == null) {
+            query = "stub";
+        }
+        StringBuilder body = new StringBuilder("{\"success\":true,\"addresses\":[");
+        for (int i = 0; i < addressCount; i++) {
+            if (i > 0) {
+                body.append(',');
+            }
+            body.append("{\"DPID\":").append(1000 + i)
+                    .append(",\"SourceDesc\":\"Postal\\\\Physical\",\"FullAddress\":\"")
+                    .append(query.replace("\"", "")).append(' ').append(i)
+                    .append(" Street, Auckland Central, Auckland 1010\"}");
+        }
+        return body.append("],\"status\":\"success\"}").toString();
+    }
+
+    private static String detailsBody(String dpid) {
+        String id = dpid == null ? "0" : dpid.replaceAll("\\D", "");
+        return "{\"success\":true,\"details\":[{\"DPID\":" + id + ",\"FullAddress\":\"" + id
+                + " Stub Street, Auckland Central, Auckland 1010\",\"Postcode\":\"1010\","
+                + "\"CityTown\":\"Auckland\"}],\"status\":\"success\"}";
+    }
+
+    private static String getParameter(String rawQuery, String name) {
+        if (rawQuery != null) {
+            for (String pair : rawQuery.split("&")) {
+                if (pair.startsWith(name + "=")) {
+                    return URLDecoder.decode(pair.substring(name.length() + 1), StandardCharsets.UTF_8);
+                }
+            }
+        }
+        return null;
+    }
+
+    private void send(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream outputStream = exchange.getResponseBody()) {
+            outputStream.write(bytes);
+        }
+    }
+
+    private void sleep() {
+        if (latencyMillis > 0) {
+            try {
+                Thread.sleep(latencyMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
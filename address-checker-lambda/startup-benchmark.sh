@@ -0,0 +1,52 @@
+#!/usr/bin/env bash
+# Compares the class count and startup time of the default artifact with the fast-startup one (minimized jar, with
+# and without its AppCDS archive), running FirstResponseTimer against the stub NZ Post server from the test classes.
+#   ./startup-benchmark.sh [runs]
+# Each run is a fresh JVM. Reported times are averages over the runs.
+set -euo pipefail
+
+RUNS="${1:-5}"
+# The JVM Maven runs on, which creates the AppCDS archive, as the archive only works with the JVM that created it
+JAVA="${JAVA_HOME:+${JAVA_HOME}/bin/}java"
+STUB_PORT="${STUB_PORT:-18182}"
+export NZ_POST_ADDRESS_CHECKER_SUGGEST_API_URL="http://localhost:${STUB_PORT}/suggest"
+export NZ_POST_API_OAUTH_TOKEN_URL="http://localhost:${STUB_PORT}/oauth/token"
+export NZ_POST_API_CLIENT_ID="benchmark-client"
+export NZ_POST_API_CLIENT_SECRET="benchmark-secret"
+export SECRETS_PROVIDER="environment"
+export PRIMING_MODE="off"
+export LOG_LEVEL="${LOG_LEVEL:-warn}"
+export METRICS_EMF_ENABLED="false"
+
+cd "$(dirname "$0")"
+JAR=target/NZPostAddressCheckerLambda.jar
+mkdir -p target/startup
+mvn -B -q package -DskipTests
+cp "$JAR" target/startup/default.jar
+mvn -B -q package -DskipTests -Pfast-startup -Dtraining.stub.port="${STUB_PORT}"
+
+"$JAVA" -cp target/test-classes org.nz.postal.address.upstream.StubUpstreamServer "$STUB_PORT" > /dev/null &
+STUB_PID=$!
+trap 'kill "$STUB_PID"' EXIT
+until (exec 3<> "/dev/tcp/localhost/${STUB_PORT}") 2> /dev/null; do
+    sleep 0.1
+done
+
+measure() {
+    local name="$1" jar="$2"
+    shift 2
+    local classes_in_jar
+    classes_in_jar=$(unzip -l "$jar" | grep -c '\.class$')
+    for _ in $(seq "$RUNS"); do
+        "$JAVA" "$@" -cp "$jar" org.nz.postal.address.FirstResponseTimer "1 Queen St" | grep 'First response'
+    done | awk -v name="$name" -v jarClasses="$classes_in_jar" -F'[:,]' '
+        { uptime += $4; init += $6; first += $8; loaded += $10 }
+        END { printf "%-22s %12d %14d %12d %10d %16d\n", name, jarClasses, loaded / NR, uptime / NR, init / NR,
+              first / NR }'
+}
+
+printf "%-22s %12s %14s %12s %10s %16s\n" "artifact" "jar classes" "loaded classes" "uptime (ms)" "init (ms)" \
+    "1st resp. (ms)"
+measure "default" target/startup/default.jar
+measure "minimized" "$JAR"
+measure "minimized + AppCDS" "$JAR" -XX:SharedArchiveFile=target/NZPostAddressCheckerLambda.jsa